@@ -0,0 +1,79 @@
+package jp.co.future.uroborosql.sample.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.sample.concurrent.AgentExecutor;
+
+/**
+ * Throughput of independent <code>findOne</code> units of work submitted to {@link AgentExecutor}, on platform
+ * threads and on virtual threads. Run on Java 21 or later to measure virtual threads; on older runtimes the
+ * <code>virtual</code> trial falls back to platform threads.
+ * <p>
+ * <code>concurrency</code> is the number of tasks that hold a SqlAgent at a time. It is capped by the size of the
+ * connection pool (the number of processors).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=src/jmh/resources/logback-benchmark.xml")
+public class AgentExecutorBenchmark {
+	private static final int TASKS = 1000;
+	private static final int EMPLOYEES = 10_000;
+
+	@Param({ "platform", "virtual" })
+	public String threads;
+
+	@Param({ "1", "4", "16" })
+	public int concurrency;
+
+	private BenchmarkDatabase database;
+	private AgentExecutor executor;
+	private List<Function<SqlAgent, Optional<?>>> works;
+
+	@Setup
+	public void setup() {
+		database = new BenchmarkDatabase().loadEmployees(EMPLOYEES);
+		var maxConcurrency = Math.min(concurrency, database.getDataSource().getMaxTotal());
+		executor = new AgentExecutor(database.getConfig(), maxConcurrency, "virtual".equals(threads));
+		works = new ArrayList<>(TASKS);
+		for (var i = 0; i < TASKS; i++) {
+			works.add(agent -> agent.query("employee/select_employee")
+					.param("empNo", ThreadLocalRandom.current().nextInt(EMPLOYEES) + 1)
+					.findOne());
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.close();
+		database.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TASKS)
+	public List<Optional<?>> findOne() {
+		return executor.invokeAll(works);
+	}
+}
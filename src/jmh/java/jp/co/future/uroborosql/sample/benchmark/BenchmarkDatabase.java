@@ -0,0 +1,151 @@
+package jp.co.future.uroborosql.sample.benchmark;
+
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.co.future.uroborosql.SqlAgentProviderImpl;
+import jp.co.future.uroborosql.UroboroSQL;
+import jp.co.future.uroborosql.config.SqlConfig;
+import jp.co.future.uroborosql.context.ExecutionContextProviderImpl;
+import jp.co.future.uroborosql.sample.entity.Employee;
+import jp.co.future.uroborosql.sample.pool.PooledDataSource;
+import jp.co.future.uroborosql.sample.type.Gender;
+import jp.co.future.uroborosql.store.SqlResourceManagerImpl;
+import jp.co.future.uroborosql.utils.CaseFormat;
+
+/**
+ * In-memory H2 database with a generated employee table, configured like the samples.
+ * <p>
+ * Each instance uses its own database, so benchmarks of different trials do not share data.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+	private static final String[] FIRST_NAMES = { "Bob", "Alice", "Carol", "Dave", "Eve", "Frank", "Grace",
+			"Heidi", "Ivan", "Judy" };
+	private static final String[] LAST_NAMES = { "Smith", "Johnson", "Williams", "Brown", "Jones", "Miller",
+			"Davis", "Wilson", "Moore", "Taylor" };
+	private static final Gender[] GENDERS = Gender.values();
+
+	private final PooledDataSource dataSource;
+	private final SqlConfig config;
+
+	BenchmarkDatabase() {
+		dataSource = new PooledDataSource(
+				"jdbc:h2:mem:benchmark" + SEQUENCE.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "")
+						.setMinIdle(1)
+						.setMaxIdle(4)
+						.setMaxTotal(Runtime.getRuntime().availableProcessors());
+
+		// same settings as the samples, without DumpResultEventSubscriber
+		config = UroboroSQL
+				.builder(dataSource)
+				.setExecutionContextProvider(
+						new ExecutionContextProviderImpl()
+								.setEnumConstantPackageNames(Arrays.asList(Gender.class.getPackage().getName()))
+								.setDefaultResultSetType(ResultSet.TYPE_FORWARD_ONLY)
+								.setDefaultResultSetConcurrency(ResultSet.CONCUR_READ_ONLY))
+				.setSqlAgentProvider(new SqlAgentProviderImpl()
+						.setDefaultMapKeyCaseFormat(CaseFormat.CAMEL_CASE)
+						.setForceUpdateWithinTransaction(true)
+						.setFetchSize(1000))
+				.setSqlResourceManager(new SqlResourceManagerImpl())
+				.build();
+
+		try (var agent = config.agent()) {
+			agent.required(() -> {
+				agent.update("ddl/create_tables").count();
+			});
+		}
+	}
+
+	SqlConfig getConfig() {
+		return config;
+	}
+
+	PooledDataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * Insert generated employees.
+	 *
+	 * @param size number of employees
+	 * @return BenchmarkDatabase
+	 */
+	BenchmarkDatabase loadEmployees(final int size) {
+		try (var agent = config.agent()) {
+			agent.required(() -> {
+				agent.batch("employee/insert_employee")
+						.paramStream(employeeParams(size, 1L).stream())
+						.by((ctx, row) -> ctx.batchCount() == 1000)
+						.count();
+			});
+		}
+		return this;
+	}
+
+	/**
+	 * Generate the bind parameters of <code>employee/insert_employee</code>.
+	 *
+	 * @param size number of rows
+	 * @param seed random seed
+	 * @return bind parameters
+	 */
+	static List<Map<String, Object>> employeeParams(final int size, final long seed) {
+		var random = new Random(seed);
+		List<Map<String, Object>> rows = new ArrayList<>(size);
+		for (var i = 0; i < size; i++) {
+			Map<String, Object> row = new HashMap<>();
+			row.put("firstName", FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+			row.put("lastName", LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+			row.put("birthDate", birthDate(random));
+			row.put("gender", GENDERS[random.nextInt(GENDERS.length)].toString());
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Generate employee entities without empNo.
+	 *
+	 * @param size number of entities
+	 * @param seed random seed
+	 * @return employees
+	 */
+	static List<Employee> employees(final int size, final long seed) {
+		var random = new Random(seed);
+		List<Employee> employees = new ArrayList<>(size);
+		for (var i = 0; i < size; i++) {
+			var emp = new Employee();
+			emp.setFirstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+			emp.setLastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+			emp.setBirthDate(birthDate(random));
+			emp.setGender(GENDERS[random.nextInt(GENDERS.length)]);
+			employees.add(emp);
+		}
+		return employees;
+	}
+
+	private static LocalDate birthDate(final Random random) {
+		return LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 50));
+	}
+
+	@Override
+	public void close() {
+		try (var agent = config.agent()) {
+			// release the memory of the database before the next trial
+			agent.required(() -> {
+				agent.updateWith("drop all objects").count();
+			});
+		} finally {
+			dataSource.close();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package jp.co.future.uroborosql.sample.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.expression.spel.SpelCompilerMode;
+
+import jp.co.future.uroborosql.sample.template.CompiledSpelConditionEvaluator;
+import jp.co.future.uroborosql.sample.template.ConditionEvaluator;
+import jp.co.future.uroborosql.sample.template.SpelConditionEvaluator;
+import jp.co.future.uroborosql.sample.type.Gender;
+
+/**
+ * Throughput of the <code>/*IF*&#47;</code> conditions of <code>employee/select_employee.sql</code>. The parsed
+ * expressions are cached by every evaluator.
+ * <ul>
+ * <li><code>interpreted</code>: {@link SpelConditionEvaluator}, parameters as properties of a Map root</li>
+ * <li><code>uncompiled</code>: {@link CompiledSpelConditionEvaluator} with the compiler off, parameters as
+ * variables</li>
+ * <li><code>compiled</code>: {@link CompiledSpelConditionEvaluator}</li>
+ * </ul>
+ * <code>uncompiled</code> vs <code>compiled</code> is the effect of the SpEL compiler alone.
+ * <p>
+ * One operation evaluates every condition of the SQL for one parameter combination.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConditionEvaluatorBenchmark {
+	private static final Pattern CONDITION = Pattern.compile("/\\*(?:IF|ELIF)\\s+(.+?)\\*/");
+
+	@Param({ "interpreted", "uncompiled", "compiled" })
+	public String evaluator;
+
+	private ConditionEvaluator conditionEvaluator;
+	private List<String> conditions;
+	private List<Map<String, Object>> paramsList;
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		if ("compiled".equals(evaluator)) {
+			conditionEvaluator = new CompiledSpelConditionEvaluator();
+		} else if ("uncompiled".equals(evaluator)) {
+			conditionEvaluator = new CompiledSpelConditionEvaluator(SpelCompilerMode.OFF);
+		} else {
+			conditionEvaluator = new SpelConditionEvaluator();
+		}
+
+		conditions = new ArrayList<>();
+		var matcher = CONDITION.matcher(readSql("/sql/employee/select_employee.sql"));
+		while (matcher.find()) {
+			conditions.add(matcher.group(1).trim());
+		}
+
+		// same combinations as SqlFileApiSample
+		paramsList = new ArrayList<>();
+		paramsList.add(new HashMap<>());
+		paramsList.add(new HashMap<>(Map.of("empNo", 1)));
+		paramsList.add(new HashMap<>(Map.of("firstName", "Bob", "lastName", "Smith")));
+		paramsList.add(new HashMap<>(Map.of("birthDateFrom", LocalDate.of(1990, 1, 1))));
+		paramsList.add(new HashMap<>(Map.of("birthDateFrom", LocalDate.of(1990, 1, 1),
+				"birthDateTo", LocalDate.of(2000, 1, 1))));
+		paramsList.add(new HashMap<>(Map.of("genderList", Arrays.asList(Gender.FEMALE))));
+		paramsList.add(new HashMap<>(Map.of("female", true)));
+		paramsList.add(new HashMap<>(Map.of("firstName", "Bob", "female", false)));
+	}
+
+	@Benchmark
+	public void evaluate(final Blackhole bh) {
+		var params = paramsList.get(index);
+		index = index + 1 == paramsList.size() ? 0 : index + 1;
+		for (var condition : conditions) {
+			bh.consume(conditionEvaluator.evaluate(condition, params));
+		}
+	}
+
+	private static String readSql(final String path) {
+		try (var in = ConditionEvaluatorBenchmark.class.getResourceAsStream(path)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package jp.co.future.uroborosql.sample.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.co.future.uroborosql.enums.InsertsType;
+import jp.co.future.uroborosql.sample.entity.Employee;
+import jp.co.future.uroborosql.sample.mapping.EntityRowMapper;
+
+/**
+ * Entity API paths used by <code>EntityApiSample</code>.
+ * <p>
+ * <code>size</code> is the number of rows in the employee table, and also the number of entities inserted by
+ * {@link #insertsBatch()} and {@link #insertsBulk()}. Inserted rows are rolled back so that every invocation sees
+ * the same table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=src/jmh/resources/logback-benchmark.xml")
+public class EntityApiBenchmark {
+	@Param({ "100", "10000" })
+	public int size;
+
+	private BenchmarkDatabase database;
+	private List<Employee> stored;
+	private List<Employee> inserts;
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		database = new BenchmarkDatabase().loadEmployees(size);
+		try (var agent = database.getConfig().agent()) {
+			stored = agent.query(Employee.class).collect();
+		}
+		inserts = BenchmarkDatabase.employees(size, 2L);
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.close();
+	}
+
+	@Benchmark
+	public List<Employee> query() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.query(Employee.class).collect();
+		}
+	}
+
+	@Benchmark
+	public List<Employee> queryWithRowMapper() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.queryWith("select * from employee").stream(EntityRowMapper.of(Employee.class))
+					.collect(Collectors.toList());
+		}
+	}
+
+	@Benchmark
+	public int update() {
+		// the version of the entity is incremented by the update, so the entities stay in sync with the table
+		var emp = stored.get(index);
+		index = index + 1 == stored.size() ? 0 : index + 1;
+		try (var agent = database.getConfig().agent()) {
+			return agent.required(() -> agent.update(emp));
+		}
+	}
+
+	@Benchmark
+	public int insertsBatch() {
+		return inserts(InsertsType.BATCH);
+	}
+
+	@Benchmark
+	public int insertsBulk() {
+		return inserts(InsertsType.BULK);
+	}
+
+	private int inserts(final InsertsType insertsType) {
+		// clear the ids generated by the previous invocation
+		inserts.forEach(emp -> emp.setEmpNo(0));
+		try (var agent = database.getConfig().agent()) {
+			return agent.required(() -> {
+				var count = agent.inserts(inserts.stream(), insertsType);
+				agent.setRollbackOnly();
+				return count;
+			});
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package jp.co.future.uroborosql.sample.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jp.co.future.uroborosql.sample.query.StreamingQuery;
+import jp.co.future.uroborosql.sample.template.SqlTemplateCache;
+
+/**
+ * SQL file API paths used by <code>SqlFileApiSample</code>.
+ * <p>
+ * <code>size</code> is the number of rows in the employee table, and also the number of rows inserted by
+ * {@link #batch()}. Inserted rows are rolled back so that every invocation sees the same table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=src/jmh/resources/logback-benchmark.xml")
+public class SqlFileApiBenchmark {
+	@Param({ "100", "10000" })
+	public int size;
+
+	private BenchmarkDatabase database;
+	private SqlTemplateCache templateCache;
+	private List<Map<String, Object>> insertParams;
+	private long empNo = 0;
+
+	@Setup
+	public void setup() {
+		database = new BenchmarkDatabase().loadEmployees(size);
+		insertParams = BenchmarkDatabase.employeeParams(size, 2L);
+		templateCache = new SqlTemplateCache(database.getConfig());
+	}
+
+	@TearDown
+	public void tearDown() {
+		templateCache.close();
+		database.close();
+	}
+
+	private long nextEmpNo() {
+		empNo = empNo % size + 1;
+		return empNo;
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> collect() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.query("employee/select_employee").collect();
+		}
+	}
+
+	@Benchmark
+	public void stream(final Blackhole bh) {
+		try (var agent = database.getConfig().agent();
+				var rows = agent.query("employee/select_employee").stream()) {
+			rows.forEach(bh::consume);
+		}
+	}
+
+	@Benchmark
+	public void streamForwardOnly(final Blackhole bh) {
+		try (var agent = database.getConfig().agent();
+				var rows = new StreamingQuery(agent).stream(agent.query("employee/select_employee"))) {
+			rows.forEach(bh::consume);
+		}
+	}
+
+	@Benchmark
+	public Object findFirst() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.query("employee/select_employee").findFirst();
+		}
+	}
+
+	@Benchmark
+	public Object findOne() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.query("employee/select_employee").param("empNo", nextEmpNo()).findOne();
+		}
+	}
+
+	@Benchmark
+	public Object findOneTemplateCache() {
+		try (var agent = database.getConfig().agent()) {
+			return templateCache.query(agent, "employee/select_employee", Map.of("empNo", nextEmpNo())).findOne();
+		}
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> queryWith() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.queryWith("select * from employee").collect();
+		}
+	}
+
+	@Benchmark
+	public int update() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.required(() -> agent.update("employee/update_employee")
+					.param("empNo", nextEmpNo())
+					.param("birthDate", LocalDate.of(1971, 12, 1))
+					.count());
+		}
+	}
+
+	@Benchmark
+	public int batch() {
+		try (var agent = database.getConfig().agent()) {
+			return agent.required(() -> {
+				var count = agent.batch("employee/insert_employee")
+						.paramStream(insertParams.stream())
+						.by((ctx, row) -> ctx.batchCount() == 1000)
+						.count();
+				agent.setRollbackOnly();
+				return count;
+			});
+		}
+	}
+}
@@ -2,18 +2,16 @@ package jp.co.future.uroborosql.sample;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jp.co.future.uroborosql.sample.loader.TsvReader;
+
 public class AbstractApiSample {
 
 	/** ロガー */
@@ -24,21 +22,16 @@ public class AbstractApiSample {
 	}
 
 	/**
-	 * Read TSV file data and convert to List Object.
+	 * Read TSV file data as a lazy row stream.
+	 * <p>
+	 * Rows are read one at a time, so the file is never loaded onto the heap as a whole.
 	 *
 	 * @param filePath TSV file path.
-	 * @return Data List
+	 * @return Data Stream
 	 */
 	protected Stream<Map<String, Object>> getDataByFile(final Path filePath) {
 		try {
-			List<String> lines = Files.readAllLines(filePath);
-			String[] header = lines.get(0).split("\\t");
-			return lines.stream()
-					.skip(1)
-					.map(s -> s.split("\\t"))
-					.map(data -> IntStream.range(0, header.length)
-							.<Map<String, Object>> collect(HashMap::new, (row, i) -> row.put(header[i], data[i]),
-									Map::putAll));
+			return TsvReader.stream(filePath);
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new UncheckedIOException(e);
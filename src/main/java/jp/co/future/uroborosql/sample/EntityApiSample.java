@@ -1,10 +1,17 @@
 package jp.co.future.uroborosql.sample;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 import jp.co.future.uroborosql.SqlAgentProviderImpl;
 import jp.co.future.uroborosql.UroboroSQL;
@@ -12,11 +19,26 @@ import jp.co.future.uroborosql.config.SqlConfig;
 import jp.co.future.uroborosql.context.ExecutionContextProviderImpl;
 import jp.co.future.uroborosql.enums.InsertsType;
 import jp.co.future.uroborosql.event.EventListenerHolder;
-import jp.co.future.uroborosql.event.subscriber.DumpResultEventSubscriber;
 import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+import jp.co.future.uroborosql.sample.batch.AdaptiveBatchPolicy;
+import jp.co.future.uroborosql.sample.batch.ChunkedBulkInserter;
+import jp.co.future.uroborosql.sample.batch.EntityUpserter;
+import jp.co.future.uroborosql.sample.batch.VersionedBatchUpdater;
+import jp.co.future.uroborosql.sample.cache.EntityCache;
+import jp.co.future.uroborosql.sample.concurrent.AsyncQuery;
 import jp.co.future.uroborosql.sample.entity.Department;
 import jp.co.future.uroborosql.sample.entity.DeptEmp;
 import jp.co.future.uroborosql.sample.entity.Employee;
+import jp.co.future.uroborosql.sample.event.AsyncDumpResultEventSubscriber;
+import jp.co.future.uroborosql.sample.event.SqlMetricsEventSubscriber;
+import jp.co.future.uroborosql.sample.export.ColumnarExporter;
+import jp.co.future.uroborosql.sample.export.ColumnarReader;
+import jp.co.future.uroborosql.sample.mapping.EntityRowMapper;
+import jp.co.future.uroborosql.sample.pool.PooledDataSource;
+import jp.co.future.uroborosql.sample.query.KeysetPager;
+import jp.co.future.uroborosql.sample.query.ProjectionQuery;
+import jp.co.future.uroborosql.sample.query.StreamingQuery;
+import jp.co.future.uroborosql.sample.relation.RelationLoader;
 import jp.co.future.uroborosql.sample.type.Gender;
 import jp.co.future.uroborosql.store.SqlResourceManagerImpl;
 import jp.co.future.uroborosql.utils.CaseFormat;
@@ -27,23 +49,54 @@ import jp.co.future.uroborosql.utils.CaseFormat;
  * @author H.Sugimoto
  */
 public class EntityApiSample extends AbstractApiSample {
+	private final PooledDataSource dataSource;
 	private final SqlConfig config;
+	private final AsyncDumpResultEventSubscriber dumpResult;
+	private final SqlMetricsEventSubscriber sqlMetrics;
+	private final EntityCache entityCache;
 
 	public EntityApiSample() {
+		// create connection pool : コネクションプールの作成
+		dataSource = new PooledDataSource("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1", "sa", "")
+				.setMinIdle(1)
+				.setMaxIdle(4)
+				.setMaxTotal(Runtime.getRuntime().availableProcessors())
+				.setLeakDetectionThreshold(Duration.ofSeconds(30));
+
+		// dump query results on a background thread : 検索結果のダンプをバックグラウンドスレッドで出力
+		dumpResult = new AsyncDumpResultEventSubscriber()
+				.setSamplingRate(1.0)
+				.setMaxRows(100);
+
+		// record execution time per SQL : SQL毎の実行時間を記録（JMXとPrometheus形式のファイルで公開）
+		sqlMetrics = new SqlMetricsEventSubscriber("EntityApiSample")
+				.setPrometheusFile(Paths.get("target/metrics/EntityApiSample.prom"), Duration.ofSeconds(10));
+
+		// cache entities looked up by @Id : @Idによる検索結果のエンティティをキャッシュ
+		entityCache = new EntityCache()
+				.setMaxSize(10_000)
+				.setTtl(Duration.ofMinutes(5))
+				.cache(Department.class, Employee.class);
+
 		// create SqlConfig
 		config = UroboroSQL
-				.builder("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1", "sa", "")
-				// ExecutionContextProviderの設定（Enum定数パッケージ設定の追加）
+				.builder(dataSource)
+				// ExecutionContextProviderの設定（Enum定数パッケージ設定、前方スクロールのみの結果セットの追加）
 				.setExecutionContextProvider(
 						new ExecutionContextProviderImpl()
 								.setEnumConstantPackageNames(Arrays.asList(Gender.class.getPackage().getName()))
-								.setDefaultResultSetType(ResultSet.TYPE_SCROLL_INSENSITIVE))
-				// SqlAgentProviderの設定（Queryの戻り値のMapのキー文字列のデフォルトCaseFormat設定の追加）
+								.setDefaultResultSetType(ResultSet.TYPE_FORWARD_ONLY)
+								.setDefaultResultSetConcurrency(ResultSet.CONCUR_READ_ONLY))
+				// SqlAgentProviderの設定（Queryの戻り値のMapのキー文字列のデフォルトCaseFormat設定、フェッチサイズの追加）
 				.setSqlAgentProvider(new SqlAgentProviderImpl()
 						.setDefaultMapKeyCaseFormat(CaseFormat.CAMEL_CASE)
-						.setForceUpdateWithinTransaction(true))
+						.setForceUpdateWithinTransaction(true)
+						.setFetchSize(1000))
 				.setSqlResourceManager(new SqlResourceManagerImpl())
-				.setEventListenerHolder(new EventListenerHolder().addEventSubscriber(new DumpResultEventSubscriber()))
+				.setEventListenerHolder(new EventListenerHolder()
+						.addEventSubscriber(dumpResult)
+						.addEventSubscriber(sqlMetrics)
+						.addEventSubscriber(entityCache))
 				.build();
 	}
 
@@ -59,14 +112,40 @@ public class EntityApiSample extends AbstractApiSample {
 
 		stream();
 
+		page();
+
+		aggregate();
+
 		transaction();
 
+		upsert();
+
+		batchUpdate();
+
+		bulkUpdate();
+
+		cachedFind();
+
+		relation();
+
+		publish();
+
+		export();
+
 		update();
 
 		batchInsert();
 
 		bulkInsert();
 
+		dumpResult.close();
+
+		sqlMetrics.getMetrics().forEach(m -> log("sql metrics {}", m));
+		sqlMetrics.close();
+
+		log("connection pool {}", dataSource.getMetrics());
+		dataSource.close();
+
 		log("EntityApiSample end.");
 	}
 
@@ -133,6 +212,85 @@ public class EntityApiSample extends AbstractApiSample {
 
 			// add bind list parameter : バインドパラメータ（IN句用）を指定して検索
 			agent.query(Employee.class).in("gender", Gender.FEMALE).stream().forEach(m -> log(toS(m)));
+
+			// map rows with the row mapper built once per entity class : エンティティクラス毎に生成したマッパーで行をマッピング
+			agent.query("employee/select_employee").param("female", true).stream(EntityRowMapper.of(Employee.class))
+					.forEach(m -> log(toS(m)));
+
+			// scan with another fetch size : フェッチサイズを指定した全件検索（結果セットはデフォルトで前方スクロールのみ）
+			try (var emps = new StreamingQuery(agent).setFetchSize(100).stream(Employee.class)) {
+				emps.forEach(m -> log(toS(m)));
+			}
+
+			// scan with conditions and another fetch size : 条件とフェッチサイズを指定して検索
+			try (var emps = new StreamingQuery(agent).setFetchSize(100)
+					.stream(agent.query(Employee.class).in("gender", Gender.FEMALE))) {
+				emps.forEach(m -> log(toS(m)));
+			}
+		}
+	}
+
+	/**
+	 * keyset pagination sample
+	 */
+	private void page() {
+		try (var agent = config.agent()) {
+			// read pages ordered by @Id with the token of the previous page : 前ページのトークンを指定して@Id順にページ単位で検索
+			var pager = new KeysetPager(agent);
+			String token = null;
+			do {
+				var page = pager.page(Employee.class, 2, token);
+				log("select employee data (page) token={}", token);
+				page.getItems().forEach(e -> log(toS(e)));
+				token = page.getNextToken();
+			} while (token != null);
+
+			// add conditions and sort key : 条件とソートキーを指定
+			var females = pager.page(agent.query(Employee.class).equal("gender", Gender.FEMALE), Employee.class,
+					"empNo", 2, null);
+			females.getItems().forEach(e -> log(toS(e)));
+		}
+	}
+
+	/**
+	 * aggregate and projection sample
+	 */
+	private void aggregate() {
+		try (var agent = config.agent()) {
+			// aggregate one column in the database : 1つの列をDBで集計
+			log("employee count={}, female count={}, oldest={}, youngest={}",
+					agent.query(Employee.class).count(),
+					agent.query(Employee.class).equal("gender", Gender.FEMALE).count(),
+					agent.query(Employee.class).<LocalDate> min("birthDate"),
+					agent.query(Employee.class).<LocalDate> max("birthDate"));
+
+			// count by group in the database : グループ毎の件数をDBで集計
+			log("select employee count by gender");
+			new ProjectionQuery<>(agent, Employee.class)
+					.groupBy("gender")
+					.count("count")
+					.min("birthDate", "oldest")
+					.asc("gender")
+					.collect()
+					.forEach(m -> log(toS(m)));
+
+			log("select employee count by department");
+			new ProjectionQuery<>(agent, DeptEmp.class)
+					.groupBy("deptNo")
+					.count("count")
+					.in("deptNo", Arrays.asList(1, 2, 3))
+					.desc("count")
+					.collect()
+					.forEach(m -> log(toS(m)));
+
+			// select some of the columns : 一部の列のみ検索
+			log("select employee names");
+			new ProjectionQuery<>(agent, Employee.class)
+					.select("firstName", "lastName")
+					.greaterEqual("birthDate", LocalDate.of(1980, 1, 1))
+					.asc("firstName")
+					.collect()
+					.forEach(m -> log(toS(m)));
 		}
 	}
 
@@ -161,6 +319,198 @@ public class EntityApiSample extends AbstractApiSample {
 		}
 	}
 
+	/**
+	 * upsert sample
+	 */
+	private void upsert() {
+		try (var agent = config.agent()) {
+			agent.required(() -> {
+				// a changed row, a new row and a row changed by someone else : 変更行、新規行、他で更新された行
+				var changed = agent.query(Employee.class).equal("empNo", 1).first()
+						.orElseThrow(UroborosqlRuntimeException::new);
+				changed.setLastName("Smith");
+
+				var added = new Employee();
+				added.setEmpNo(1001);
+				added.setFirstName("Alice");
+				added.setLastName("Brown");
+				added.setBirthDate(LocalDate.of(1995, 4, 1));
+				added.setGender(Gender.FEMALE);
+
+				var stale = agent.query(Employee.class).equal("empNo", 2).first()
+						.orElseThrow(UroborosqlRuntimeException::new);
+				stale.setLockVersion(stale.getLockVersion() + 1);
+
+				// the same key again in the feed. the last one wins : 同じキーの行（後の行が採用される）
+				var corrected = new Employee();
+				corrected.setEmpNo(1001);
+				corrected.setFirstName("Alice");
+				corrected.setLastName("Green");
+				corrected.setBirthDate(LocalDate.of(1995, 4, 1));
+				corrected.setGender(Gender.FEMALE);
+
+				// insert or update without selecting the rows : 検索せずに挿入または更新
+				var result = new EntityUpserter(agent).upserts(Employee.class,
+						Stream.of(changed, added, stale, corrected));
+				log("upsert employee {}", result);
+				agent.query(Employee.class).in("empNo", 1, 2, 1001).stream().forEach(e -> log(toS(e)));
+
+				// rollback upserted data. Keep the data unchanged in other tests.
+				agent.setRollbackOnly();
+			});
+		}
+	}
+
+	/**
+	 * versioned batch update sample
+	 */
+	private void batchUpdate() {
+		try (var agent = config.agent()) {
+			agent.required(() -> {
+				List<Employee> emps = new ArrayList<>(agent.query(Employee.class).asc("empNo").collect());
+				emps.forEach(e -> e.setLastName(e.getLastName().toUpperCase()));
+				// someone else has updated the first employee : 先頭の従業員は他で更新済み
+				emps.get(0).setLockVersion(emps.get(0).getLockVersion() + 1);
+
+				// update with JDBC batches and get the entities that lost the lock : JDBCバッチで更新し、楽観ロックに失敗したエンティティを取得
+				var losers = new VersionedBatchUpdater(agent).updates(Employee.class, emps.stream());
+				log("batch update employee count={}, losers={}", emps.size() - losers.size(), losers.size());
+				losers.forEach(e -> log(toS(e)));
+
+				// rollback updated data. Keep the data unchanged in other tests.
+				agent.setRollbackOnly();
+			});
+		}
+	}
+
+	/**
+	 * set-based update/delete sample
+	 */
+	private void bulkUpdate() {
+		try (var agent = config.agent()) {
+			agent.required(() -> {
+				// update by criteria with one statement : 条件に一致する行を1文で更新
+				var updateCount = agent.update(Employee.class)
+						.set("gender", Gender.OTHER)
+						.greaterEqual("birthDate", LocalDate.of(1990, 1, 1))
+						.count();
+				log("update employee count={}", updateCount);
+				agent.query(Employee.class).equal("gender", Gender.OTHER).stream().forEach(e -> log(toS(e)));
+
+				// delete by criteria with one statement : 条件に一致する行を1文で削除
+				var deleteCount = agent.delete(DeptEmp.class).in("empNo", 1, 2).count();
+				log("delete dept_emp count={}", deleteCount);
+
+				// rollback updated data. Keep the data unchanged in other tests.
+				agent.setRollbackOnly();
+			});
+		}
+	}
+
+	/**
+	 * entity cache sample
+	 */
+	private void cachedFind() {
+		try (var agent = config.agent()) {
+			// the second lookup is served from the cache : 2回目の検索はキャッシュから取得
+			log("find department data (cached) deptNo=1");
+			entityCache.find(agent, Department.class, 1L).ifPresent(e -> log(toS(e)));
+			entityCache.find(agent, Department.class, 1L).ifPresent(e -> log(toS(e)));
+
+			agent.required(() -> {
+				var dept = entityCache.find(agent, Department.class, 1L)
+						.orElseThrow(UroborosqlRuntimeException::new);
+				dept.setDeptName("sales");
+				agent.update(dept);
+
+				// the updated entity is read from the database in the transaction : 更新したトランザクション内ではDBから取得
+				entityCache.find(agent, Department.class, 1L).ifPresent(e -> log(toS(e)));
+
+				agent.setRollbackOnly();
+			});
+			entityCache.find(agent, Department.class, 1L).ifPresent(e -> log(toS(e)));
+			log("entity cache hit={}, miss={}, bypass={}, size={}", entityCache.getHitCount(),
+					entityCache.getMissCount(), entityCache.getBypassCount(), entityCache.size());
+		}
+	}
+
+	/**
+	 * relation loading sample
+	 */
+	private void relation() {
+		try (var agent = config.agent()) {
+			// load employees and departments of dept_emp rows with IN queries : dept_empに紐づく従業員と部署をIN句でまとめて取得
+			log("select dept_emp data with employee and department");
+			try (var relations = new RelationLoader(agent).setChunkSize(500)
+					.loadDeptEmps(agent.query(DeptEmp.class).stream())) {
+				relations.forEach(r -> log(toS(r)));
+			}
+		}
+	}
+
+	/**
+	 * Flow.Publisher sample
+	 */
+	private void publish() {
+		try (var async = new AsyncQuery(config, 2)) {
+			// receive entities at the requested pace : 要求した件数ずつエンティティを受け取る
+			log("publish employee data (request 1 by 1)");
+			var done = new CompletableFuture<Void>();
+			async.publish(Employee.class, q -> q.asc("empNo")).subscribe(new Flow.Subscriber<Employee>() {
+				private Flow.Subscription subscription;
+
+				@Override
+				public void onSubscribe(final Flow.Subscription subscription) {
+					this.subscription = subscription;
+					subscription.request(1);
+				}
+
+				@Override
+				public void onNext(final Employee item) {
+					log(toS(item));
+					subscription.request(1);
+				}
+
+				@Override
+				public void onError(final Throwable throwable) {
+					done.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					done.complete(null);
+				}
+			});
+			done.join();
+		}
+	}
+
+	/**
+	 * columnar export sample
+	 */
+	private void export() {
+		try (var agent = config.agent()) {
+			// write the tables to columnar files by row group : テーブルを行グループ単位で列指向ファイルに出力
+			var exporter = new ColumnarExporter(agent).setRowGroupSize(10_000);
+			var dir = Paths.get("target/export");
+			log("export employee rows={}", exporter.export(Employee.class, dir.resolve("employee.ucol")));
+			log("export department rows={}", exporter.export(Department.class, dir.resolve("department.ucol")));
+			log("export dept_emp rows={}", exporter.export(DeptEmp.class, dir.resolve("dept_emp.ucol")));
+			log("export female employee rows={}", exporter.export(
+					agent.query("employee/select_employee").param("female", true), dir.resolve("female.ucol")));
+
+			// read only the needed columns : 必要な列のみ読み込み
+			try (var reader = ColumnarReader.open(dir.resolve("employee.ucol"));
+					var rows = reader.rows("gender", "birthDate")) {
+				log("read {} rows={}, row groups={}", reader.getSchema(), reader.getRowCount(),
+						reader.getRowGroupCount());
+				rows.forEach(row -> log("gender={}, birthDate={}", row[0], row[1]));
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
 	/**
 	 * update api sample
 	 */
@@ -190,11 +540,11 @@ public class EntityApiSample extends AbstractApiSample {
 	private void batchInsert() {
 		try (var agent = config.agent()) {
 			agent.required(() -> {
-				log("delete tables with sql literal");
-				// update with sql literal
-				log("delete department count={}", agent.updateWith("delete from department").count());
-				log("delete employee count={}", agent.updateWith("delete from employee").count());
-				log("delete dept_emp count={}", agent.updateWith("delete from dept_emp").count());
+				log("delete tables with entity api");
+				// delete all rows with one statement without loading entities : エンティティを読み込まずに1文で全件削除
+				log("delete department count={}", agent.delete(Department.class).count());
+				log("delete employee count={}", agent.delete(Employee.class).count());
+				log("delete dept_emp count={}", agent.delete(DeptEmp.class).count());
 
 				agent.query(Department.class).stream().forEach(r -> log(toS(r)));
 				agent.query(Employee.class).stream().forEach(r -> log(toS(r)));
@@ -220,8 +570,10 @@ public class EntityApiSample extends AbstractApiSample {
 				dept5.setDeptName("production");
 				depts.add(dept5);
 
-				var deptCount = agent.inserts(depts.stream(), InsertsType.BATCH);
-				log("department count={}", deptCount);
+				// execute by adaptive batch size
+				var policy = new AdaptiveBatchPolicy().setTargetLatency(Duration.ofMillis(50));
+				var deptCount = agent.inserts(depts.stream(), policy::test, InsertsType.BATCH);
+				log("department count={}, batch size={}", deptCount, policy.getBatchSize());
 
 				log("employee batch insert.");
 				// employee
@@ -294,11 +646,11 @@ public class EntityApiSample extends AbstractApiSample {
 	private void bulkInsert() {
 		try (var agent = config.agent()) {
 			agent.required(() -> {
-				log("delete tables with sql literal");
-				// update with sql literal
-				log("delete department count={}", agent.updateWith("delete from department").count());
-				log("delete employee count={}", agent.updateWith("delete from employee").count());
-				log("delete dept_emp count={}", agent.updateWith("delete from dept_emp").count());
+				log("delete tables with entity api");
+				// delete all rows with one statement without loading entities : エンティティを読み込まずに1文で全件削除
+				log("delete department count={}", agent.delete(Department.class).count());
+				log("delete employee count={}", agent.delete(Employee.class).count());
+				log("delete dept_emp count={}", agent.delete(DeptEmp.class).count());
 
 				agent.query(Department.class).stream().forEach(r -> log(toS(r)));
 				agent.query(Employee.class).stream().forEach(r -> log(toS(r)));
@@ -381,6 +733,14 @@ public class EntityApiSample extends AbstractApiSample {
 				var deptEmpCount = agent.inserts(deptEmps.stream());
 				log("dept_emp count={}", deptEmpCount);
 
+				// bulk insert split into statements within the bind parameter limit of the database,
+				// and the statements are executed as JDBC batch.
+				log("employee chunked bulk insert.");
+				var inserter = new ChunkedBulkInserter(agent);
+				var chunkedCount = inserter.inserts(Employee.class, emps.stream());
+				log("employee count={}, rows per statement={}", chunkedCount,
+						inserter.getRowsPerStatement(Employee.class));
+
 				agent.query(Department.class).stream().forEach(r -> log(toS(r)));
 				agent.query(Employee.class).stream().forEach(r -> log(toS(r)));
 				agent.query(DeptEmp.class).stream().forEach(r -> log(toS(r)));
@@ -2,16 +2,34 @@ package jp.co.future.uroborosql.sample;
 
 import java.nio.file.Paths;
 import java.sql.ResultSet;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
+import jp.co.future.uroborosql.SqlAgent;
 import jp.co.future.uroborosql.SqlAgentProviderImpl;
 import jp.co.future.uroborosql.UroboroSQL;
 import jp.co.future.uroborosql.config.SqlConfig;
 import jp.co.future.uroborosql.context.ExecutionContextProviderImpl;
 import jp.co.future.uroborosql.event.EventListenerHolder;
-import jp.co.future.uroborosql.event.subscriber.DumpResultEventSubscriber;
 import jp.co.future.uroborosql.exception.DataNonUniqueException;
+import jp.co.future.uroborosql.sample.batch.AdaptiveBatchPolicy;
+import jp.co.future.uroborosql.sample.cache.QueryResultCache;
+import jp.co.future.uroborosql.sample.concurrent.AgentExecutor;
+import jp.co.future.uroborosql.sample.concurrent.AsyncQuery;
+import jp.co.future.uroborosql.sample.event.AsyncDumpResultEventSubscriber;
+import jp.co.future.uroborosql.sample.event.SlowQueryEventSubscriber;
+import jp.co.future.uroborosql.sample.event.SqlMetricsEventSubscriber;
+import jp.co.future.uroborosql.sample.loader.ParallelTsvLoader;
+import jp.co.future.uroborosql.sample.pool.PooledDataSource;
+import jp.co.future.uroborosql.sample.query.KeysetPager;
+import jp.co.future.uroborosql.sample.query.StreamingQuery;
+import jp.co.future.uroborosql.sample.routing.ReadWriteSqlConfig;
+import jp.co.future.uroborosql.sample.template.SqlTemplateCache;
 import jp.co.future.uroborosql.sample.type.Gender;
 import jp.co.future.uroborosql.store.SqlResourceManagerImpl;
 import jp.co.future.uroborosql.utils.CaseFormat;
@@ -22,24 +40,66 @@ import jp.co.future.uroborosql.utils.CaseFormat;
  * @author H.Sugimoto
  */
 public class SqlFileApiSample extends AbstractApiSample {
+	private final PooledDataSource dataSource;
 	private final SqlConfig config;
+	private final AsyncDumpResultEventSubscriber dumpResult;
+	private final SqlMetricsEventSubscriber sqlMetrics;
+	private final SlowQueryEventSubscriber slowQuery;
+	private final QueryResultCache resultCache;
+	private final SqlTemplateCache templateCache;
 
 	public SqlFileApiSample() {
+		// create connection pool : コネクションプールの作成
+		dataSource = new PooledDataSource("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1", "sa", "")
+				.setMinIdle(1)
+				.setMaxIdle(4)
+				.setMaxTotal(Runtime.getRuntime().availableProcessors())
+				.setLeakDetectionThreshold(Duration.ofSeconds(30));
+
+		// dump query results on a background thread : 検索結果のダンプをバックグラウンドスレッドで出力
+		dumpResult = new AsyncDumpResultEventSubscriber()
+				.setSamplingRate(1.0)
+				.setMaxRows(100);
+
+		// record execution time per SQL : SQL毎の実行時間を記録（JMXとPrometheus形式のファイルで公開）
+		sqlMetrics = new SqlMetricsEventSubscriber("SqlFileApiSample")
+				.setPrometheusFile(Paths.get("target/metrics/SqlFileApiSample.prom"), Duration.ofSeconds(10));
+
+		// capture the execution plan of slow queries : 遅いSQLの実行計画を取得（target/slow-query.logに出力）
+		slowQuery = new SlowQueryEventSubscriber(dataSource)
+				.setDefaultThreshold(Duration.ofSeconds(1))
+				.setThreshold("employee/select_employee", Duration.ofMillis(200))
+				.setCaptureInterval(Duration.ofMinutes(10));
+
+		// cache query results of reference data : 参照データの検索結果をキャッシュ（更新したテーブルのコミットで破棄）
+		resultCache = new QueryResultCache()
+				.setMaxBytes(16L * 1024 * 1024)
+				.cache("department/select_department", "relation/select_dept_emp");
+
 		// create SqlConfig
 		config = UroboroSQL
-				.builder("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1", "sa", "")
-				// ExecutionContextProviderの設定（Enum定数パッケージ設定の追加）
+				.builder(dataSource)
+				// ExecutionContextProviderの設定（Enum定数パッケージ設定、前方スクロールのみの結果セットの追加）
 				.setExecutionContextProvider(
 						new ExecutionContextProviderImpl()
 								.setEnumConstantPackageNames(Arrays.asList(Gender.class.getPackage().getName()))
-								.setDefaultResultSetType(ResultSet.TYPE_SCROLL_INSENSITIVE))
-				// SqlAgentProviderの設定（Queryの戻り値のMapのキー文字列のデフォルトCaseFormat設定の追加）
+								.setDefaultResultSetType(ResultSet.TYPE_FORWARD_ONLY)
+								.setDefaultResultSetConcurrency(ResultSet.CONCUR_READ_ONLY))
+				// SqlAgentProviderの設定（Queryの戻り値のMapのキー文字列のデフォルトCaseFormat設定、フェッチサイズの追加）
 				.setSqlAgentProvider(new SqlAgentProviderImpl()
 						.setDefaultMapKeyCaseFormat(CaseFormat.CAMEL_CASE)
-						.setForceUpdateWithinTransaction(true))
+						.setForceUpdateWithinTransaction(true)
+						.setFetchSize(1000))
 				.setSqlResourceManager(new SqlResourceManagerImpl())
-				.setEventListenerHolder(new EventListenerHolder().addEventSubscriber(new DumpResultEventSubscriber()))
+				.setEventListenerHolder(new EventListenerHolder()
+						.addEventSubscriber(dumpResult)
+						.addEventSubscriber(sqlMetrics)
+						.addEventSubscriber(slowQuery)
+						.addEventSubscriber(resultCache))
 				.build();
+
+		// cache of the SQL files with resolved IF/BEGIN nodes. reloaded when a SQL file is changed.
+		templateCache = new SqlTemplateCache(config).watch(Paths.get("src/main/resources/sql"));
 	}
 
 	public void run() throws Exception {
@@ -58,6 +118,18 @@ public class SqlFileApiSample extends AbstractApiSample {
 
 		queryWith();
 
+		page();
+
+		concurrent();
+
+		async();
+
+		cachedQuery();
+
+		cachedResult();
+
+		readWriteSplit();
+
 		transaction();
 
 		update();
@@ -66,6 +138,20 @@ public class SqlFileApiSample extends AbstractApiSample {
 
 		batchInsert();
 
+		parallelBatchInsert();
+
+		templateCache.close();
+
+		dumpResult.close();
+
+		slowQuery.close();
+
+		sqlMetrics.getMetrics().forEach(m -> log("sql metrics {}", m));
+		sqlMetrics.close();
+
+		log("connection pool {}", dataSource.getMetrics());
+		dataSource.close();
+
 		log("SqlFileApiSample end.");
 	}
 
@@ -153,6 +239,12 @@ public class SqlFileApiSample extends AbstractApiSample {
 
 			// use sql enum constant : SQL上でEnum定数を使用した検索
 			agent.query("employee/select_employee").param("female", true).stream().forEach(m -> log(toS(m)));
+
+			// stream with another fetch size : フェッチサイズを指定して検索（結果セットはデフォルトで前方スクロールのみ）
+			try (var emps = new StreamingQuery(agent).setFetchSize(100)
+					.stream(agent.query("employee/select_employee"))) {
+				emps.forEach(m -> log(toS(m)));
+			}
 		}
 	}
 
@@ -171,6 +263,170 @@ public class SqlFileApiSample extends AbstractApiSample {
 		}
 	}
 
+	/**
+	 * keyset pagination sample
+	 */
+	private void page() {
+		try (var agent = config.agent()) {
+			// read pages ordered by emp_no with the token of the previous page : 前ページのトークンを指定してemp_no順にページ単位で検索
+			var pager = new KeysetPager(agent);
+			String token = null;
+			do {
+				var page = pager.page("employee/select_employee_page", Map.of(), "empNo", 2, token);
+				log("select employee data (page) token={}", token);
+				page.getItems().forEach(m -> log(toS(m)));
+				token = page.getNextToken();
+			} while (token != null);
+		}
+	}
+
+	/**
+	 * AgentExecutor sample
+	 */
+	private void concurrent() {
+		// run independent queries concurrently, each with its own SqlAgent : 独立した検索をそれぞれのSqlAgentで並行実行
+		try (var executor = new AgentExecutor(config, dataSource.getMaxTotal())) {
+			log("run queries concurrently. virtual threads={}", executor.isVirtual());
+			List<Function<SqlAgent, Object>> works = Arrays.asList(
+					agent -> agent.query("department/select_department").collect(),
+					agent -> agent.query("employee/select_employee").findFirst(),
+					agent -> agent.query("employee/select_employee").param("empNo", 1).findOne(),
+					agent -> agent.query("employee/select_employee").stream().count());
+			executor.invokeAll(works).forEach(result -> log(toS(result)));
+		}
+	}
+
+	/**
+	 * AsyncQuery sample
+	 */
+	private void async() {
+		try (var async = new AsyncQuery(config, 2)) {
+			// get the result as CompletableFuture : 検索結果をCompletableFutureで取得
+			var deps = async.collect("department/select_department", Map.of())
+					.thenApply(rows -> rows.size());
+			var emp = async.collect("employee/select_employee", Map.of("empNo", 1));
+			log("async department count={}, employee={}", deps.join(), toS(emp.join()));
+		}
+	}
+
+	/**
+	 * SqlTemplateCache sample
+	 */
+	private void cachedQuery() {
+		try (var agent = config.agent()) {
+			// the SQL is rendered once for each combination of the specified conditions.
+			// empNo=1 and empNo=2 share the same rendered SQL.
+			List<Map<String, Object>> paramsList = Arrays.asList(
+					Map.of(),
+					Map.of("empNo", 1),
+					Map.of("empNo", 2),
+					Map.of("birthDateFrom", LocalDate.of(1990, 1, 1)),
+					Map.of("genderList", Arrays.asList(Gender.FEMALE)),
+					Map.of("female", true),
+					Map.of("firstName", "Bob", "female", false));
+			for (var i = 0; i < 2; i++) {
+				for (var params : paramsList) {
+					log("select employee data (cached) params={}", params);
+					templateCache.query(agent, "employee/select_employee", new HashMap<>(params)).stream()
+							.forEach(m -> log(toS(m)));
+				}
+			}
+			log("sql template cache hit={}, miss={}, bypass={}, size={}", templateCache.getHitCount(),
+					templateCache.getMissCount(), templateCache.getBypassCount(), templateCache.size());
+		}
+	}
+
+	/**
+	 * query result cache sample
+	 */
+	private void cachedResult() {
+		try (var agent = config.agent()) {
+			// the second query is served from the cache : 2回目の検索はキャッシュから取得
+			log("select department data (cached result)");
+			resultCache.query(agent, "department/select_department", Map.of()).forEach(m -> log(toS(m)));
+			resultCache.query(agent, "department/select_department", Map.of()).forEach(m -> log(toS(m)));
+			resultCache.query(agent, "relation/select_dept_emp", Map.of("deptNo", 1)).forEach(m -> log(toS(m)));
+
+			agent.required(() -> {
+				agent.update("department/insert_department")
+						.param("deptName", "production")
+						.count();
+
+				// the inserting transaction reads the table : 更新中のトランザクションはDBから取得
+				resultCache.query(agent, "department/select_department", Map.of()).forEach(m -> log(toS(m)));
+
+				// rollback evicts nothing : ロールバックではキャッシュを破棄しない
+				agent.setRollbackOnly();
+			});
+			resultCache.query(agent, "department/select_department", Map.of()).forEach(m -> log(toS(m)));
+			log("query result cache hit ratio={}, size={}, bytes={}", resultCache.getHitRatio(), resultCache.size(),
+					resultCache.getEstimatedBytes());
+		}
+	}
+
+	/**
+	 * ReadWriteSqlConfig sample
+	 */
+	private void readWriteSplit() {
+		// two in-memory databases stand in for the read replicas : 2つのインメモリDBをリードレプリカとして使用
+		List<PooledDataSource> replicaDataSources = Arrays.asList(
+				new PooledDataSource("jdbc:h2:mem:replica1;DB_CLOSE_DELAY=-1", "sa", "").setMaxTotal(2),
+				new PooledDataSource("jdbc:h2:mem:replica2;DB_CLOSE_DELAY=-1", "sa", "").setMaxTotal(2));
+		try {
+			var routing = new ReadWriteSqlConfig(config)
+					.setBalancing(ReadWriteSqlConfig.Balancing.LEAST_LOADED)
+					.setStickyWindow(Duration.ofMillis(500));
+			for (var replicaDataSource : replicaDataSources) {
+				var replicaConfig = UroboroSQL.builder(replicaDataSource)
+						.setExecutionContextProvider(new ExecutionContextProviderImpl()
+								.setEnumConstantPackageNames(Arrays.asList(Gender.class.getPackage().getName())))
+						.setSqlAgentProvider(new SqlAgentProviderImpl()
+								.setDefaultMapKeyCaseFormat(CaseFormat.CAMEL_CASE))
+						.build();
+				// copy the data as replication would : レプリケーションの代わりにデータを作成
+				try (var agent = replicaConfig.agent()) {
+					agent.required(() -> {
+						agent.update("ddl/create_tables").count();
+						agent.update("setup/insert_data").count();
+					});
+				}
+				routing.addReplica(replicaConfig);
+			}
+
+			// reads outside a transaction go to a replica : トランザクション外の検索はレプリカで実行
+			for (var i = 0; i < 4; i++) {
+				try (var agent = routing.agent()) {
+					log("select department data (replica) count={}",
+							agent.query("department/select_department").collect().size());
+				}
+			}
+
+			try (var agent = routing.agent()) {
+				agent.required(() -> {
+					// writes and reads in a transaction go to the primary : 更新とトランザクション内の検索はプライマリで実行
+					agent.update("department/insert_department")
+							.param("deptName", "production")
+							.count();
+					log("select department data (primary) count={}",
+							agent.query("department/select_department").collect().size());
+
+					// rollback insert data. Keep the data unchanged in other tests.
+					agent.setRollbackOnly();
+				});
+			}
+
+			// reads right after a write stay on the primary : 更新直後の検索はプライマリで実行（read your writes）
+			try (var agent = routing.agent()) {
+				log("select department data (sticky) count={}",
+						agent.query("department/select_department").collect().size());
+			}
+			log("read/write split primary reads={}, replica reads={}", routing.getPrimaryReadCount(),
+					routing.getReplicaReadCounts());
+		} finally {
+			replicaDataSources.forEach(PooledDataSource::close);
+		}
+	}
+
 	/**
 	 * transaction api sample
 	 */
@@ -259,9 +515,12 @@ public class SqlFileApiSample extends AbstractApiSample {
 				// batch insert (since v0.5.0)
 				log("department/insert_department batch insert.");
 				// department
+				// execute by adaptive batch size
+				var policy = new AdaptiveBatchPolicy().setTargetLatency(Duration.ofMillis(50));
 				var deptCount = agent.batch("department/insert_department")
-						.paramStream(getDataByFile(Paths.get("src/main/resources/data/department.tsv"))).count();
-				log("department/insert_department count={}", deptCount);
+						.paramStream(getDataByFile(Paths.get("src/main/resources/data/department.tsv")))
+						.by(policy::test).count();
+				log("department/insert_department count={}, batch size={}", deptCount, policy.getBatchSize());
 
 				log("employee/insert_employee batch insert.");
 				// employee
@@ -290,4 +549,43 @@ public class SqlFileApiSample extends AbstractApiSample {
 		}
 	}
 
+	/**
+	 * parallel batch insert sample
+	 */
+	private void parallelBatchInsert() {
+		try (var agent = config.agent()) {
+			agent.required(() -> {
+				log("delete tables with sql literal");
+				log("delete department count={}", agent.updateWith("delete from department").count());
+				log("delete employee count={}", agent.updateWith("delete from employee").count());
+				log("delete dept_emp count={}", agent.updateWith("delete from dept_emp").count());
+			});
+		}
+
+		// department and employee are loaded at the same time, dept_emp is loaded after them.
+		// each partition of the files is committed by its own worker.
+		var report = new ParallelTsvLoader(config)
+				.setWorkerCount(Runtime.getRuntime().availableProcessors())
+				.addStage(
+						new ParallelTsvLoader.Target("department", "department/insert_department",
+								Paths.get("src/main/resources/data/department.tsv")),
+						new ParallelTsvLoader.Target("employee", "employee/insert_employee",
+								Paths.get("src/main/resources/data/employee.tsv")))
+				.addStage(
+						new ParallelTsvLoader.Target("dept_emp", "relation/insert_dept_emp",
+								Paths.get("src/main/resources/data/dept_emp.tsv")))
+				.load();
+		report.getTables().forEach(t -> log("table {}", t));
+		report.getWorkers().forEach(w -> log("worker {}", w));
+
+		try (var agent = config.agent()) {
+			agent.query("department/select_department").stream().forEach(r -> log(toS(r)));
+			agent.query("employee/select_employee").stream().forEach(r -> log(toS(r)));
+			agent.query("relation/select_dept_emp").stream().forEach(r -> log(toS(r)));
+		}
+
+		// the loaded data is committed. restore the initial data.
+		setupTableAndData();
+	}
+
 }
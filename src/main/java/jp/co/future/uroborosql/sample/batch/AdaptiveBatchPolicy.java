@@ -0,0 +1,304 @@
+package jp.co.future.uroborosql.sample.batch;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import jp.co.future.uroborosql.context.ExecutionContext;
+
+/**
+ * Flush condition whose batch size follows the measured flush latency.
+ * <p>
+ * The policy can be passed where a fixed flush condition is passed today.
+ *
+ * <pre>
+ * var policy = new AdaptiveBatchPolicy().setTargetLatency(Duration.ofMillis(50));
+ * agent.batch("employee/insert_employee").paramStream(rows).by(policy::test).count();
+ * agent.inserts(employees, policy::test, InsertsType.BATCH);
+ * </pre>
+ *
+ * The batch size starts small. After each flush it is scaled by <code>target latency / measured latency</code>
+ * (at most doubled or halved at a time), and a growth that lowered rows per second is taken back.
+ * The size is also capped so that the estimated size of the pending rows stays within the memory budget.
+ * <p>
+ * A flush is timed from the condition returning <code>true</code> to the next call of the condition,
+ * which includes reading the next row from the source stream.
+ * The last flush of the stream is not measured.
+ * <p>
+ * The policy keeps the state of one batch run. It is not thread safe, so create one per batch or inserts call.
+ */
+public class AdaptiveBatchPolicy {
+	/** rows between two row size samples */
+	private static final int SAMPLING_INTERVAL = 16;
+
+	private static final ClassValue<Field[]> FIELDS = new ClassValue<>() {
+		@Override
+		protected Field[] computeValue(final Class<?> type) {
+			List<Field> fields = new ArrayList<>();
+			for (var t = type; t != null && t != Object.class; t = t.getSuperclass()) {
+				for (var field : t.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && field.trySetAccessible()) {
+						fields.add(field);
+					}
+				}
+			}
+			return fields.toArray(new Field[0]);
+		}
+	};
+
+	private int initialBatchSize = 16;
+	private int minBatchSize = 1;
+	private int maxBatchSize = 10_000;
+	private long targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(100);
+	private long maxMemoryBytes = 16L * 1024L * 1024L;
+	private ToLongFunction<Object> rowSizeEstimator = AdaptiveBatchPolicy::estimateRowSize;
+
+	private int batchSize = -1;
+	private int previousBatchSize;
+	private double previousRowsPerSecond;
+	private long flushStartNanos = -1L;
+	private int flushRows;
+	private long sampledRows;
+	private double averageRowBytes;
+
+	private long flushCount;
+	private long flushedRows;
+	private long flushNanos;
+
+	/**
+	 * Flush condition for <code>SqlBatch#by</code>.
+	 *
+	 * @param context ExecutionContext
+	 * @param row added row
+	 * @return <code>true</code> when the batch should be executed
+	 */
+	public boolean test(final ExecutionContext context, final Map<String, Object> row) {
+		return shouldFlush(context.batchCount(), row);
+	}
+
+	/**
+	 * Flush condition for <code>SqlAgent#inserts</code>.
+	 *
+	 * @param <E> entity type
+	 * @param context ExecutionContext
+	 * @param count number of pending rows
+	 * @param row added row
+	 * @return <code>true</code> when the batch should be executed
+	 */
+	public <E> boolean test(final ExecutionContext context, final int count, final E row) {
+		return shouldFlush(count, row);
+	}
+
+	private boolean shouldFlush(final int count, final Object row) {
+		if (batchSize < 0) {
+			batchSize = clamp(initialBatchSize);
+		}
+		if (flushStartNanos >= 0L) {
+			// the previous call returned true, so the batch has been executed since then
+			flushed(flushRows, System.nanoTime() - flushStartNanos);
+			flushStartNanos = -1L;
+		}
+		if (sampledRows == 0 || count % SAMPLING_INTERVAL == 0) {
+			var size = Math.max(1L, rowSizeEstimator.applyAsLong(row));
+			sampledRows++;
+			averageRowBytes += (size - averageRowBytes) / Math.min(sampledRows, 64L);
+		}
+
+		if (count >= getBatchSize()) {
+			flushRows = count;
+			flushStartNanos = System.nanoTime();
+			return true;
+		}
+		return false;
+	}
+
+	private void flushed(final int rows, final long elapsedNanos) {
+		var nanos = Math.max(1L, elapsedNanos);
+		flushCount++;
+		flushedRows += rows;
+		flushNanos += nanos;
+
+		var rowsPerSecond = rows * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+		var current = batchSize;
+		int next;
+		if (current > previousBatchSize && previousBatchSize > 0 && rowsPerSecond < previousRowsPerSecond * 0.9) {
+			// growing made the throughput worse
+			next = previousBatchSize;
+		} else {
+			var ratio = Math.max(0.5, Math.min(2.0, (double) targetLatencyNanos / nanos));
+			next = (int) Math.round(current * ratio);
+		}
+		previousBatchSize = current;
+		previousRowsPerSecond = rowsPerSecond;
+		batchSize = clamp(next);
+	}
+
+	private int clamp(final int size) {
+		return Math.max(minBatchSize, Math.min(maxBatchSize, size));
+	}
+
+	/**
+	 * Current batch size, including the memory budget cap.
+	 *
+	 * @return current batch size
+	 */
+	public int getBatchSize() {
+		var size = batchSize < 0 ? clamp(initialBatchSize) : batchSize;
+		if (averageRowBytes > 0) {
+			var byMemory = (long) (maxMemoryBytes / averageRowBytes);
+			size = (int) Math.max(minBatchSize, Math.min(size, byMemory));
+		}
+		return size;
+	}
+
+	/**
+	 * Number of measured flushes.
+	 *
+	 * @return number of measured flushes
+	 */
+	public long getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * Average latency of the measured flushes.
+	 *
+	 * @return average latency in milliseconds
+	 */
+	public double getAverageLatencyMillis() {
+		return flushCount > 0 ? flushNanos / (double) flushCount / TimeUnit.MILLISECONDS.toNanos(1) : 0.0;
+	}
+
+	/**
+	 * Rows per second of the measured flushes.
+	 *
+	 * @return rows per second
+	 */
+	public double getRowsPerSecond() {
+		return flushNanos > 0 ? flushedRows * (double) TimeUnit.SECONDS.toNanos(1) / flushNanos : 0.0;
+	}
+
+	/**
+	 * Set the batch size of the first flush. default is 16.
+	 *
+	 * @param initialBatchSize initial batch size
+	 * @return AdaptiveBatchPolicy
+	 */
+	public AdaptiveBatchPolicy setInitialBatchSize(final int initialBatchSize) {
+		this.initialBatchSize = initialBatchSize;
+		return this;
+	}
+
+	/**
+	 * Set the lower limit of the batch size. default is 1.
+	 *
+	 * @param minBatchSize minimum batch size
+	 * @return AdaptiveBatchPolicy
+	 */
+	public AdaptiveBatchPolicy setMinBatchSize(final int minBatchSize) {
+		if (minBatchSize < 1) {
+			throw new IllegalArgumentException("minBatchSize must be positive. minBatchSize=" + minBatchSize);
+		}
+		this.minBatchSize = minBatchSize;
+		return this;
+	}
+
+	/**
+	 * Set the upper limit of the batch size. default is 10000.
+	 *
+	 * @param maxBatchSize maximum batch size
+	 * @return AdaptiveBatchPolicy
+	 */
+	public AdaptiveBatchPolicy setMaxBatchSize(final int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be positive. maxBatchSize=" + maxBatchSize);
+		}
+		this.maxBatchSize = maxBatchSize;
+		return this;
+	}
+
+	/**
+	 * Set the latency a flush should take. default is 100ms.
+	 *
+	 * @param targetLatency target latency per flush
+	 * @return AdaptiveBatchPolicy
+	 */
+	public AdaptiveBatchPolicy setTargetLatency(final Duration targetLatency) {
+		if (targetLatency.isNegative() || targetLatency.isZero()) {
+			throw new IllegalArgumentException("targetLatency must be positive. targetLatency=" + targetLatency);
+		}
+		this.targetLatencyNanos = targetLatency.toNanos();
+		return this;
+	}
+
+	/**
+	 * Set the estimated memory the pending rows of a batch may use. default is 16MB.
+	 *
+	 * @param maxMemoryBytes memory budget in bytes
+	 * @return AdaptiveBatchPolicy
+	 */
+	public AdaptiveBatchPolicy setMaxMemoryBytes(final long maxMemoryBytes) {
+		if (maxMemoryBytes < 1) {
+			throw new IllegalArgumentException("maxMemoryBytes must be positive. maxMemoryBytes=" + maxMemoryBytes);
+		}
+		this.maxMemoryBytes = maxMemoryBytes;
+		return this;
+	}
+
+	/**
+	 * Set the function that estimates the size of a row in bytes.
+	 * The default estimates Map rows from their values and other rows from their fields.
+	 *
+	 * @param rowSizeEstimator row size estimator
+	 * @return AdaptiveBatchPolicy
+	 */
+	public AdaptiveBatchPolicy setRowSizeEstimator(final ToLongFunction<Object> rowSizeEstimator) {
+		this.rowSizeEstimator = rowSizeEstimator;
+		return this;
+	}
+
+	private static long estimateRowSize(final Object row) {
+		if (row instanceof Map) {
+			var size = 48L;
+			for (var value : ((Map<?, ?>) row).values()) {
+				size += 32L + estimateValueSize(value);
+			}
+			return size;
+		}
+		if (row == null) {
+			return 0L;
+		}
+		var size = 16L;
+		for (var field : FIELDS.get(row.getClass())) {
+			try {
+				size += 8L + estimateValueSize(field.get(row));
+			} catch (IllegalAccessException ex) {
+				size += 16L;
+			}
+		}
+		return size;
+	}
+
+	private static long estimateValueSize(final Object value) {
+		if (value == null || value instanceof Enum) {
+			return 0L;
+		} else if (value instanceof CharSequence) {
+			return 40L + 2L * ((CharSequence) value).length();
+		} else if (value instanceof byte[]) {
+			return 16L + ((byte[]) value).length;
+		} else if (value instanceof Collection) {
+			return 32L + 16L * ((Collection<?>) value).size();
+		} else if (value instanceof Temporal) {
+			return 24L;
+		} else {
+			return 16L;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package jp.co.future.uroborosql.sample.batch;
+
+import java.util.Locale;
+
+import jp.co.future.uroborosql.dialect.Dialect;
+
+/**
+ * Maximum number of bind parameters in one statement, per database.
+ * <p>
+ * The values are the smaller of the driver limit and the database limit, rounded down to stay on the safe side.
+ */
+public final class BindParameterLimits {
+	/** limit used for databases not listed here */
+	public static final int DEFAULT_LIMIT = 999;
+
+	private BindParameterLimits() {
+	}
+
+	/**
+	 * Get the bind parameter limit of the dialect.
+	 *
+	 * @param dialect Dialect
+	 * @return maximum number of bind parameters per statement
+	 */
+	public static int of(final Dialect dialect) {
+		var name = dialect.getDatabaseName();
+		if (name == null) {
+			return DEFAULT_LIMIT;
+		}
+		name = name.toLowerCase(Locale.ROOT);
+		if (name.startsWith("h2")) {
+			return 32_767;
+		} else if (name.startsWith("postgresql")) {
+			// the driver sends the parameter count as a 16 bit value
+			return 32_767;
+		} else if (name.startsWith("oracle")) {
+			return 65_535;
+		} else if (name.startsWith("mysql") || name.startsWith("mariadb")) {
+			return 65_535;
+		} else if (name.startsWith("microsoft sql server")) {
+			return 2_099;
+		} else if (name.startsWith("sqlite")) {
+			return 999;
+		} else {
+			return DEFAULT_LIMIT;
+		}
+	}
+}
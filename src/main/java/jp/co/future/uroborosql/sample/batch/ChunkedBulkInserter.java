@@ -0,0 +1,203 @@
+package jp.co.future.uroborosql.sample.batch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+
+/**
+ * Insert that combines multi-row <code>VALUES</code> (BULK) with JDBC batches (BATCH).
+ * <p>
+ * The number of rows per statement is worked out from the column count of the entity and
+ * the bind parameter limit of the database ({@link BindParameterLimits}), so a statement never exceeds the limit.
+ * Full chunks all share the same SQL, so they are executed as a JDBC batch on one prepared statement.
+ * The rows left over at the end are inserted by one more statement.
+ * <p>
+ * Key values generated by the database are not set back to the entities.
+ *
+ * <pre>
+ * var count = new ChunkedBulkInserter(agent).inserts(Employee.class, employees);
+ * </pre>
+ */
+public class ChunkedBulkInserter {
+	private final SqlAgent agent;
+	private int parameterLimit;
+	private int maxRowsPerStatement = 1000;
+	private int chunksPerBatch = 10;
+
+	public ChunkedBulkInserter(final SqlAgent agent) {
+		this.agent = agent;
+		this.parameterLimit = BindParameterLimits.of(agent.getSqlConfig().getDialect());
+	}
+
+	/**
+	 * Override the bind parameter limit of the database.
+	 *
+	 * @param parameterLimit maximum number of bind parameters per statement
+	 * @return ChunkedBulkInserter
+	 */
+	public ChunkedBulkInserter setParameterLimit(final int parameterLimit) {
+		if (parameterLimit < 1) {
+			throw new IllegalArgumentException("parameterLimit must be positive. parameterLimit=" + parameterLimit);
+		}
+		this.parameterLimit = parameterLimit;
+		return this;
+	}
+
+	/**
+	 * Set the upper limit of rows per statement. default is 1000.
+	 *
+	 * @param maxRowsPerStatement maximum rows per statement
+	 * @return ChunkedBulkInserter
+	 */
+	public ChunkedBulkInserter setMaxRowsPerStatement(final int maxRowsPerStatement) {
+		if (maxRowsPerStatement < 1) {
+			throw new IllegalArgumentException(
+					"maxRowsPerStatement must be positive. maxRowsPerStatement=" + maxRowsPerStatement);
+		}
+		this.maxRowsPerStatement = maxRowsPerStatement;
+		return this;
+	}
+
+	/**
+	 * Set the number of chunks executed in one JDBC batch. default is 10.
+	 *
+	 * @param chunksPerBatch chunks per JDBC batch
+	 * @return ChunkedBulkInserter
+	 */
+	public ChunkedBulkInserter setChunksPerBatch(final int chunksPerBatch) {
+		if (chunksPerBatch < 1) {
+			throw new IllegalArgumentException("chunksPerBatch must be positive. chunksPerBatch=" + chunksPerBatch);
+		}
+		this.chunksPerBatch = chunksPerBatch;
+		return this;
+	}
+
+	/**
+	 * Rows per statement for the entity.
+	 *
+	 * @param entityType entity class
+	 * @return rows per statement
+	 */
+	public int getRowsPerStatement(final Class<?> entityType) {
+		var columnCount = EntityMetadata.of(entityType).getInsertColumns().size();
+		return Math.max(1, Math.min(maxRowsPerStatement, parameterLimit / Math.max(1, columnCount)));
+	}
+
+	/**
+	 * Insert entities.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param entities entities to insert
+	 * @return inserted row count
+	 */
+	public <E> int inserts(final Class<E> entityType, final Stream<E> entities) {
+		var metadata = EntityMetadata.of(entityType);
+		var rowsPerStatement = getRowsPerStatement(entityType);
+		var chunks = new ChunkIterator<>(metadata, entities.iterator(), rowsPerStatement);
+
+		var count = agent.batchWith(buildSql(metadata, rowsPerStatement))
+				.paramStream(StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED),
+						false))
+				.by((ctx, row) -> ctx.batchCount() == chunksPerBatch)
+				.count();
+
+		var rest = chunks.getRest();
+		if (!rest.isEmpty()) {
+			count += agent.updateWith(buildSql(metadata, rest.size()))
+					.paramMap(toParams(metadata, rest))
+					.count();
+		}
+		return count;
+	}
+
+	private static String buildSql(final EntityMetadata<?> metadata, final int rows) {
+		var columns = metadata.getInsertColumns();
+		var sql = new StringBuilder("insert into ").append(metadata.getTableName()).append(" (");
+		for (var i = 0; i < columns.size(); i++) {
+			sql.append(i == 0 ? "" : ", ").append(columns.get(i).getColumnName());
+		}
+		sql.append(") values ");
+		for (var r = 0; r < rows; r++) {
+			sql.append(r == 0 ? "(" : ", (");
+			for (var i = 0; i < columns.size(); i++) {
+				sql.append(i == 0 ? "" : ", ")
+						.append("/*").append(paramName(r, columns.get(i).getName())).append("*/''");
+			}
+			sql.append(")");
+		}
+		return sql.toString();
+	}
+
+	private static String paramName(final int row, final String name) {
+		return "r" + row + "_" + name;
+	}
+
+	private static Map<String, Object> toParams(final EntityMetadata<?> metadata, final List<?> rows) {
+		var columns = metadata.getInsertColumns();
+		Map<String, Object> params = new HashMap<>(rows.size() * columns.size() * 4 / 3 + 1);
+		for (var r = 0; r < rows.size(); r++) {
+			for (var column : columns) {
+				params.put(paramName(r, column.getName()), column.getValue(rows.get(r)));
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Groups entities into the parameters of full chunks, and keeps the last partial chunk.
+	 */
+	private static final class ChunkIterator<E> implements Iterator<Map<String, Object>> {
+		private final EntityMetadata<E> metadata;
+		private final Iterator<E> entities;
+		private final int size;
+		private List<E> buffer;
+		private List<E> rest = new ArrayList<>();
+
+		private ChunkIterator(final EntityMetadata<E> metadata, final Iterator<E> entities, final int size) {
+			this.metadata = metadata;
+			this.entities = entities;
+			this.size = size;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (buffer == null) {
+				List<E> chunk = new ArrayList<>(size);
+				while (chunk.size() < size && entities.hasNext()) {
+					chunk.add(entities.next());
+				}
+				if (chunk.size() == size) {
+					buffer = chunk;
+				} else {
+					rest = chunk;
+				}
+			}
+			return buffer != null;
+		}
+
+		@Override
+		public Map<String, Object> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			var params = toParams(metadata, buffer);
+			buffer = null;
+			return params;
+		}
+
+		private List<E> getRest() {
+			return rest;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package jp.co.future.uroborosql.sample.batch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+
+/**
+ * Insert or update entities by their <code>@Id</code> without reading the rows first.
+ * <p>
+ * The entities are split into chunks (the chunk size is worked out like {@link ChunkedBulkInserter}), and two
+ * statements are executed per chunk.
+ * <ol>
+ * <li>a JDBC batch of <code>UPDATE ... WHERE id = ? AND version = ?</code> that also increments the
+ * <code>@Version</code> column. the update count is the number of updated rows.</li>
+ * <li>one multi-row insert that skips the existing rows, <code>MERGE INTO ... USING (VALUES ...) WHEN NOT MATCHED
+ * THEN INSERT</code> on H2 and <code>INSERT ... VALUES ... ON CONFLICT (id) DO NOTHING</code> on PostgreSQL. the
+ * update count is the number of inserted rows.</li>
+ * </ol>
+ * The rest of the chunk are the rows that exist with another <code>@Version</code> value (conflicts). They are left
+ * as they are. Entities without a <code>@Version</code> field are updated unconditionally.
+ * <p>
+ * When several entities of a chunk have the same <code>@Id</code>, the last one is upserted and the others are
+ * dropped ({@link UpsertResult#getDuplicateCount()}), since one multi-row statement cannot insert the same key twice.
+ * An entity of a later chunk updates the row of an earlier one like any other existing row.
+ * <p>
+ * The <code>@Id</code> values must be set, including the generated ones (the sequence of the database is not
+ * advanced by the inserted keys). The entities are not modified: their <code>@Version</code> value is not
+ * incremented.
+ *
+ * <pre>
+ * var result = new EntityUpserter(agent).upserts(Employee.class, employees);
+ * </pre>
+ */
+public class EntityUpserter {
+	private final SqlAgent agent;
+	private int parameterLimit;
+	private int maxRowsPerStatement = 1000;
+
+	public EntityUpserter(final SqlAgent agent) {
+		this.agent = agent;
+		this.parameterLimit = BindParameterLimits.of(agent.getSqlConfig().getDialect());
+	}
+
+	/**
+	 * Override the bind parameter limit of the database.
+	 *
+	 * @param parameterLimit maximum number of bind parameters per statement
+	 * @return EntityUpserter
+	 */
+	public EntityUpserter setParameterLimit(final int parameterLimit) {
+		if (parameterLimit < 1) {
+			throw new IllegalArgumentException("parameterLimit must be positive. parameterLimit=" + parameterLimit);
+		}
+		this.parameterLimit = parameterLimit;
+		return this;
+	}
+
+	/**
+	 * Set the upper limit of rows per chunk. default is 1000.
+	 *
+	 * @param maxRowsPerStatement maximum rows per chunk
+	 * @return EntityUpserter
+	 */
+	public EntityUpserter setMaxRowsPerStatement(final int maxRowsPerStatement) {
+		if (maxRowsPerStatement < 1) {
+			throw new IllegalArgumentException(
+					"maxRowsPerStatement must be positive. maxRowsPerStatement=" + maxRowsPerStatement);
+		}
+		this.maxRowsPerStatement = maxRowsPerStatement;
+		return this;
+	}
+
+	/**
+	 * Rows per chunk for the entity.
+	 *
+	 * @param entityType entity class
+	 * @return rows per chunk
+	 */
+	public int getRowsPerStatement(final Class<?> entityType) {
+		var columnCount = EntityMetadata.of(entityType).getColumns().size();
+		return Math.max(1, Math.min(maxRowsPerStatement, parameterLimit / Math.max(1, columnCount)));
+	}
+
+	/**
+	 * Insert the entities whose row does not exist and update the others.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param entities entities to upsert
+	 * @return inserted, updated and conflict counts
+	 */
+	public <E> UpsertResult upserts(final Class<E> entityType, final Stream<E> entities) {
+		var metadata = EntityMetadata.of(entityType);
+		if (metadata.getIdColumns().isEmpty()) {
+			throw new IllegalArgumentException("Entity must have @Id columns. entityType=" + entityType.getName());
+		}
+		var database = agent.getSqlConfig().getDialect().getDatabaseName();
+		var merge = database != null && database.toLowerCase(Locale.ROOT).startsWith("h2");
+		if (!merge && (database == null || !database.toLowerCase(Locale.ROOT).startsWith("postgresql"))) {
+			throw new UroborosqlRuntimeException("Upsert is not supported. database=" + database);
+		}
+
+		var updateSql = buildUpdateSql(metadata);
+		var rowsPerStatement = getRowsPerStatement(entityType);
+		var result = new UpsertResult(0, 0, 0);
+		// entities of the chunk by their @Id values. a later entity replaces an earlier one with the same @Id.
+		Map<List<Object>, E> chunk = new LinkedHashMap<>(rowsPerStatement * 4 / 3 + 1);
+		var duplicates = 0L;
+		var it = entities.iterator();
+		while (it.hasNext()) {
+			var entity = it.next();
+			List<Object> key = new ArrayList<>(metadata.getIdColumns().size());
+			for (var id : metadata.getIdColumns()) {
+				var value = id.getValue(entity);
+				if (value == null) {
+					throw new IllegalArgumentException("@Id must be set. entity=" + entity);
+				}
+				key.add(value);
+			}
+			if (chunk.put(key, entity) != null) {
+				duplicates++;
+			}
+			if (chunk.size() == rowsPerStatement) {
+				result = result.plus(upsertChunk(metadata, updateSql, merge, new ArrayList<>(chunk.values()),
+						duplicates));
+				chunk.clear();
+				duplicates = 0L;
+			}
+		}
+		if (!chunk.isEmpty()) {
+			result = result.plus(upsertChunk(metadata, updateSql, merge, new ArrayList<>(chunk.values()),
+					duplicates));
+		}
+		return result;
+	}
+
+	private <E> UpsertResult upsertChunk(final EntityMetadata<E> metadata, final String updateSql,
+			final boolean merge, final List<E> chunk, final long duplicates) {
+		// update first, so that the rows inserted by this chunk are not updated again
+		var updated = agent.batchWith(updateSql)
+				.paramStream(chunk.stream().map(entity -> toUpdateParams(metadata, entity)))
+				.count();
+		var inserted = agent.updateWith(merge ? buildMergeSql(metadata, chunk.size())
+				: buildInsertOnConflictSql(metadata, chunk.size()))
+				.paramMap(toParams(metadata, chunk))
+				.count();
+		return new UpsertResult(inserted, updated, chunk.size() - inserted - updated, duplicates);
+	}
+
+	/**
+	 * <code>UPDATE</code> of one entity by its <code>@Id</code> and <code>@Version</code>, which increments the
+	 * <code>@Version</code> column. The parameters are the property values
+	 * ({@link #toUpdateParams(EntityMetadata, Object)}).
+	 *
+	 * @param metadata entity metadata
+	 * @return 2-way SQL
+	 */
+	static String buildUpdateSql(final EntityMetadata<?> metadata) {
+		var version = metadata.getVersionColumn();
+		var sets = metadata.getColumns().stream()
+				.filter(c -> !c.isId() && !c.isVersion())
+				.map(c -> c.getColumnName() + " = /*" + c.getName() + "*/''")
+				.collect(Collectors.toList());
+		version.ifPresent(v -> sets.add(v.getColumnName() + " = " + v.getColumnName() + " + 1"));
+		if (sets.isEmpty()) {
+			// key only table. an existing row counts as updated.
+			var id = metadata.getIdColumns().get(0).getColumnName();
+			sets.add(id + " = " + id);
+		}
+		var sql = new StringBuilder("update ").append(metadata.getTableName()).append(" set ")
+				.append(String.join(", ", sets)).append(" where ");
+		var ids = metadata.getIdColumns();
+		for (var i = 0; i < ids.size(); i++) {
+			sql.append(i == 0 ? "" : " and ").append(ids.get(i).getColumnName())
+					.append(" = /*").append(ids.get(i).getName()).append("*/''");
+		}
+		version.ifPresent(v -> sql.append(" and ").append(v.getColumnName())
+				.append(" = /*").append(v.getName()).append("*/''"));
+		return sql.toString();
+	}
+
+	private static String buildMergeSql(final EntityMetadata<?> metadata, final int rows) {
+		var names = columnNames(metadata, "");
+		var sql = new StringBuilder("merge into ").append(metadata.getTableName()).append(" t using (");
+		appendValues(sql, metadata, rows);
+		sql.append(") s (").append(names).append(") on (");
+		var ids = metadata.getIdColumns();
+		for (var i = 0; i < ids.size(); i++) {
+			var name = ids.get(i).getColumnName();
+			sql.append(i == 0 ? "" : " and ").append("t.").append(name).append(" = s.").append(name);
+		}
+		sql.append(") when not matched then insert (").append(names).append(") values (")
+				.append(columnNames(metadata, "s.")).append(")");
+		return sql.toString();
+	}
+
+	private static String buildInsertOnConflictSql(final EntityMetadata<?> metadata, final int rows) {
+		var sql = new StringBuilder("insert into ").append(metadata.getTableName()).append(" (")
+				.append(columnNames(metadata, "")).append(") ");
+		appendValues(sql, metadata, rows);
+		sql.append(" on conflict (").append(metadata.getIdColumns().stream()
+				.map(EntityMetadata.Column::getColumnName)
+				.collect(Collectors.joining(", "))).append(") do nothing");
+		return sql.toString();
+	}
+
+	private static String columnNames(final EntityMetadata<?> metadata, final String prefix) {
+		return metadata.getColumns().stream()
+				.map(c -> prefix + c.getColumnName())
+				.collect(Collectors.joining(", "));
+	}
+
+	private static void appendValues(final StringBuilder sql, final EntityMetadata<?> metadata, final int rows) {
+		var columns = metadata.getColumns();
+		sql.append("values ");
+		for (var r = 0; r < rows; r++) {
+			sql.append(r == 0 ? "(" : ", (");
+			for (var i = 0; i < columns.size(); i++) {
+				sql.append(i == 0 ? "" : ", ")
+						.append("/*").append(paramName(r, columns.get(i).getName())).append("*/''");
+			}
+			sql.append(")");
+		}
+	}
+
+	/**
+	 * Property values of the entity by property name.
+	 *
+	 * @param metadata entity metadata
+	 * @param entity entity
+	 * @return parameters
+	 */
+	static Map<String, Object> toUpdateParams(final EntityMetadata<?> metadata, final Object entity) {
+		var columns = metadata.getColumns();
+		Map<String, Object> params = new HashMap<>(columns.size() * 4 / 3 + 1);
+		columns.forEach(column -> params.put(column.getName(), column.getValue(entity)));
+		return params;
+	}
+
+	private static String paramName(final int row, final String name) {
+		return "r" + row + "_" + name;
+	}
+
+	private static Map<String, Object> toParams(final EntityMetadata<?> metadata, final List<?> rows) {
+		var columns = metadata.getColumns();
+		Map<String, Object> params = new HashMap<>(rows.size() * columns.size() * 4 / 3 + 1);
+		for (var r = 0; r < rows.size(); r++) {
+			for (var column : columns) {
+				params.put(paramName(r, column.getName()), column.getValue(rows.get(r)));
+			}
+		}
+		return params;
+	}
+}
@@ -0,0 +1,57 @@
+package jp.co.future.uroborosql.sample.batch;
+
+/**
+ * Row counts of an upsert.
+ */
+public class UpsertResult {
+	private final long insertedCount;
+	private final long updatedCount;
+	private final long conflictCount;
+	private final long duplicateCount;
+
+	public UpsertResult(final long insertedCount, final long updatedCount, final long conflictCount) {
+		this(insertedCount, updatedCount, conflictCount, 0L);
+	}
+
+	public UpsertResult(final long insertedCount, final long updatedCount, final long conflictCount,
+			final long duplicateCount) {
+		this.insertedCount = insertedCount;
+		this.updatedCount = updatedCount;
+		this.conflictCount = conflictCount;
+		this.duplicateCount = duplicateCount;
+	}
+
+	public long getInsertedCount() {
+		return insertedCount;
+	}
+
+	public long getUpdatedCount() {
+		return updatedCount;
+	}
+
+	/**
+	 * @return number of the entities whose row exists with another <code>@Version</code> value. they are neither
+	 *         inserted nor updated.
+	 */
+	public long getConflictCount() {
+		return conflictCount;
+	}
+
+	/**
+	 * @return number of the entities dropped because a later entity of the same chunk has the same <code>@Id</code>
+	 */
+	public long getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	UpsertResult plus(final UpsertResult other) {
+		return new UpsertResult(insertedCount + other.insertedCount, updatedCount + other.updatedCount,
+				conflictCount + other.conflictCount, duplicateCount + other.duplicateCount);
+	}
+
+	@Override
+	public String toString() {
+		return "UpsertResult [inserted=" + insertedCount + ", updated=" + updatedCount + ", conflict="
+				+ conflictCount + ", duplicate=" + duplicateCount + "]";
+	}
+}
@@ -0,0 +1,131 @@
+package jp.co.future.uroborosql.sample.batch;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+import jp.co.future.uroborosql.exception.UroborosqlSQLException;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+
+/**
+ * Optimistic locking updates of many entities executed as JDBC batches.
+ * <p>
+ * <code>agent.update(entity)</code> executes one <code>UPDATE ... WHERE id = ? AND version = ?</code> per entity.
+ * This class executes the same statement as one JDBC batch per chunk of entities, and maps the update count of each
+ * statement back to its entity: the entities whose statement updated no row (the row is gone or has another
+ * <code>@Version</code> value) are reported as the losers instead of failing, and the <code>@Version</code> value of
+ * the others is incremented like <code>agent.update(entity)</code>. An entity with a <code>@Version</code> listed twice
+ * loses the second time.
+ * <p>
+ * The entity must have one <code>@Id</code> field. The JDBC driver must report the update count of each statement of
+ * a batch; a driver that returns <code>Statement.SUCCESS_NO_INFO</code> is rejected.
+ *
+ * <pre>
+ * agent.required(() -&gt; {
+ * 	var losers = new VersionedBatchUpdater(agent).updates(Employee.class, employees);
+ * });
+ * </pre>
+ */
+public class VersionedBatchUpdater {
+	private final SqlAgent agent;
+	private int chunkSize = 1000;
+
+	public VersionedBatchUpdater(final SqlAgent agent) {
+		this.agent = agent;
+	}
+
+	/**
+	 * Set the max number of entities per JDBC batch. default is 1000.
+	 *
+	 * @param chunkSize entities per chunk
+	 * @return VersionedBatchUpdater
+	 */
+	public VersionedBatchUpdater setChunkSize(final int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive. chunkSize=" + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Update the entities by their <code>@Id</code> and <code>@Version</code>.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param entities entities to update
+	 * @return entities that were not updated because their row is gone or was updated by others
+	 */
+	public <E> List<E> updates(final Class<E> entityType, final Stream<E> entities) {
+		var metadata = EntityMetadata.of(entityType);
+		var ids = metadata.getIdColumns();
+		if (ids.size() != 1) {
+			throw new IllegalArgumentException("Entity must have one @Id column. entityType=" + entityType.getName());
+		}
+		var updateSql = EntityUpserter.buildUpdateSql(metadata);
+
+		List<E> losers = new ArrayList<>();
+		List<E> chunk = new ArrayList<>(chunkSize);
+		var it = entities.iterator();
+		while (it.hasNext()) {
+			chunk.add(it.next());
+			if (chunk.size() == chunkSize) {
+				updateChunk(metadata, updateSql, chunk, losers);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			updateChunk(metadata, updateSql, chunk, losers);
+		}
+		return losers;
+	}
+
+	private <E> void updateChunk(final EntityMetadata<E> metadata, final String updateSql, final List<E> chunk,
+			final List<E> losers) {
+		var ctx = agent.contextWith(updateSql);
+		chunk.forEach(entity -> ctx.paramMap(EntityUpserter.toUpdateParams(metadata, entity)).addBatch());
+		int[] counts;
+		try {
+			counts = agent.batch(ctx);
+		} catch (SQLException ex) {
+			throw new UroborosqlSQLException(ex);
+		}
+		if (counts.length != chunk.size()) {
+			throw new UroborosqlRuntimeException("Unexpected number of update counts. expected=" + chunk.size()
+					+ ", actual=" + counts.length + ", table=" + metadata.getTableName());
+		}
+
+		for (var count : counts) {
+			if (count < 0) {
+				// Statement.SUCCESS_NO_INFO
+				throw new UroborosqlRuntimeException("The update count of each statement is not reported. table="
+						+ metadata.getTableName());
+			}
+		}
+
+		var version = metadata.getVersionColumn();
+		for (var i = 0; i < counts.length; i++) {
+			var entity = chunk.get(i);
+			if (counts[i] == 0) {
+				losers.add(entity);
+			} else {
+				version.ifPresent(v -> v.setValue(entity, increment(v.getValue(entity))));
+			}
+		}
+	}
+
+	private static Object increment(final Object version) {
+		if (version instanceof Integer) {
+			return (Integer) version + 1;
+		} else if (version instanceof Long) {
+			return (Long) version + 1L;
+		} else if (version instanceof Short) {
+			return (short) ((Short) version + 1);
+		}
+		throw new UroborosqlRuntimeException("Unsupported @Version type. type="
+				+ (version != null ? version.getClass().getName() : null));
+	}
+}
@@ -0,0 +1,406 @@
+package jp.co.future.uroborosql.sample.cache;
+
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.context.ExecutionContext;
+import jp.co.future.uroborosql.event.EntityEvent;
+import jp.co.future.uroborosql.event.subscriber.EventSubscriber;
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+import jp.co.future.uroborosql.sample.sql.SqlTables;
+
+/**
+ * Read-through cache of entities looked up by their {@link jp.co.future.uroborosql.mapping.annotations.Id}.
+ * <p>
+ * {@link #find(SqlAgent, Class, Object)} returns a copy of the cached entity, or executes
+ * <code>agent.query(entityType).equal(id, value).first()</code> and caches a copy of the result. Only the entity types
+ * passed to {@link #cache(Class...)} are cached. Entries are evicted in LRU order over <code>maxSize</code> and expire
+ * after <code>ttl</code>.
+ * <p>
+ * The cache is registered to the <code>EventListenerHolder</code> of the SqlConfig and is invalidated as follows.
+ * <ul>
+ * <li><code>agent.update(entity)</code> and <code>agent.delete(entity)</code> remove the entity, when it is executed
+ * and again when the transaction ends. The <code>@Version</code> value of the updated entity is kept as a fence, and a
+ * loaded entity with an older version is not cached.</li>
+ * <li>Update, delete, merge and batch statements on the table of a cached type (SQL file, <code>updateWith</code>,
+ * <code>update(Class)</code>, ...) remove all entities of the type.</li>
+ * <li>A load that overlaps an invalidation of the same type is returned but not cached.</li>
+ * </ul>
+ * While a transaction of the current thread has written an entity type, lookups of the type bypass the cache so that
+ * the transaction reads its own changes. The written types are cleared on commit or rollback.
+ *
+ * <pre>
+ * var cache = new EntityCache().setMaxSize(10_000).setTtl(Duration.ofMinutes(5)).cache(Department.class);
+ * config = UroboroSQL.builder(dataSource).setEventListenerHolder(new EventListenerHolder().addEventSubscriber(cache))...
+ * cache.find(agent, Department.class, 1L).ifPresent(...);
+ * </pre>
+ */
+public class EntityCache extends EventSubscriber {
+	private final Map<Class<?>, CachedType> types = new ConcurrentHashMap<>();
+	private final Map<String, CachedType> typesByTable = new ConcurrentHashMap<>();
+	private final Map<Key, CacheEntry> entries;
+	private final ThreadLocal<Set<Key>> writtenKeys = ThreadLocal.withInitial(HashSet::new);
+	private final ThreadLocal<Set<CachedType>> writtenTypes = ThreadLocal.withInitial(HashSet::new);
+
+	private int maxSize = 10_000;
+	private long ttlNanos = TimeUnit.MINUTES.toNanos(5);
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder bypassCount = new LongAdder();
+
+	public EntityCache() {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, CacheEntry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	@Override
+	public void initialize() {
+		afterEntityUpdateListener(evt -> afterEntityWrite(evt, true));
+		afterEntityDeleteListener(evt -> afterEntityWrite(evt, false));
+		afterEntityInsertListener(evt -> markWritten(types.get(evt.getEntityType())));
+		afterSqlUpdateListener(evt -> afterSqlWrite(evt.getExecutionContext()));
+		afterSqlBatchListener(evt -> afterSqlWrite(evt.getExecutionContext()));
+		afterCommitListener(evt -> endTransaction());
+		afterRollbackListener(evt -> endTransaction());
+	}
+
+	/**
+	 * Set the max number of entities kept in the cache. default is 10000.
+	 *
+	 * @param maxSize max number of entities
+	 * @return EntityCache
+	 */
+	public EntityCache setMaxSize(final int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be greater than 0.");
+		}
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * Set the time an entity is kept after it is loaded. default is 5 minutes.
+	 *
+	 * @param ttl time to live
+	 * @return EntityCache
+	 */
+	public EntityCache setTtl(final Duration ttl) {
+		this.ttlNanos = ttl.toNanos();
+		return this;
+	}
+
+	/**
+	 * Enable the cache for the entity types. Each type must have exactly one <code>@Id</code> column.
+	 *
+	 * @param entityTypes entity classes
+	 * @return EntityCache
+	 */
+	public EntityCache cache(final Class<?>... entityTypes) {
+		for (var entityType : entityTypes) {
+			var type = new CachedType(EntityMetadata.of(entityType));
+			types.put(entityType, type);
+			typesByTable.put(type.metadata.getTableName().toLowerCase(Locale.ROOT), type);
+		}
+		return this;
+	}
+
+	/**
+	 * Find the entity by its id.
+	 *
+	 * @param <E> entity type
+	 * @param agent SqlAgent used when the entity is not cached
+	 * @param entityType entity class
+	 * @param id value of the <code>@Id</code> column
+	 * @return copy of the entity
+	 */
+	public <E> Optional<E> find(final SqlAgent agent, final Class<E> entityType, final Object id) {
+		var type = types.get(entityType);
+		if (type == null || writtenTypes.get().contains(type)) {
+			bypassCount.increment();
+			return agent.query(entityType).equal(type != null ? type.id.getName() : idName(entityType), id).first();
+		}
+		var key = new Key(entityType, type.normalize(id));
+		var now = System.nanoTime();
+		CacheEntry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null && entry.entity != null && now - entry.loadedNanos < ttlNanos) {
+			hitCount.increment();
+			return Optional.of(entityType.cast(type.copy(entry.entity)));
+		}
+
+		missCount.increment();
+		var generation = type.generation.get();
+		var loaded = agent.query(entityType).equal(type.id.getName(), id).first();
+		loaded.ifPresent(entity -> {
+			var version = type.versionOf(entity);
+			synchronized (entries) {
+				var fence = entries.get(key);
+				// skip when the type was invalidated during the load or a newer version has been written
+				if (type.generation.get() == generation && (fence == null || version >= fence.version)) {
+					entries.put(key, new CacheEntry(type.copy(entity), version, System.nanoTime()));
+				}
+			}
+		});
+		return loaded;
+	}
+
+	/**
+	 * Remove the entity.
+	 *
+	 * @param entityType entity class
+	 * @param id value of the <code>@Id</code> column
+	 */
+	public void invalidate(final Class<?> entityType, final Object id) {
+		var type = types.get(entityType);
+		if (type != null) {
+			invalidate(type, new Key(entityType, type.normalize(id)), Long.MIN_VALUE);
+		}
+	}
+
+	/**
+	 * Remove all entities of the type.
+	 *
+	 * @param entityType entity class
+	 */
+	public void invalidateAll(final Class<?> entityType) {
+		var type = types.get(entityType);
+		if (type != null) {
+			invalidateAll(type);
+		}
+	}
+
+	/**
+	 * @return number of lookups served by the cache
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return number of lookups that queried the database
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return number of lookups of types not cached or written in the current transaction
+	 */
+	public long getBypassCount() {
+		return bypassCount.sum();
+	}
+
+	/**
+	 * @return number of entries (including version fences) in the cache
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	private void afterEntityWrite(final EntityEvent evt, final boolean fence) {
+		var type = types.get(evt.getEntityType());
+		if (type == null) {
+			return;
+		}
+		var entity = evt.getEntity();
+		var key = new Key(type.metadata.getEntityType(), type.normalize(type.id.getValue(entity)));
+		// a deleted id may be inserted again with the initial version, so it is not fenced
+		invalidate(type, key, fence ? type.versionOf(entity) : Long.MIN_VALUE);
+		markWritten(type);
+		writtenKeys.get().add(key);
+	}
+
+	private void afterSqlWrite(final ExecutionContext ctx) {
+		var sql = ctx.getSql();
+		if (sql == null || "insert".equals(SqlTables.operation(sql))) {
+			// an insert does not change the rows already cached
+			return;
+		}
+		for (var table : SqlTables.tables(sql)) {
+			var type = typesByTable.get(table);
+			if (type != null) {
+				invalidateAll(type);
+				markWritten(type);
+			}
+		}
+	}
+
+	private void markWritten(final CachedType type) {
+		if (type != null) {
+			writtenTypes.get().add(type);
+		}
+	}
+
+	/**
+	 * Invalidate the written entities again, so that a load committed by another thread between the write and the
+	 * end of the transaction is not kept.
+	 */
+	private void endTransaction() {
+		var keys = writtenKeys.get();
+		for (var key : keys) {
+			var type = types.get(key.entityType);
+			invalidate(type, key, Long.MIN_VALUE);
+		}
+		keys.clear();
+		writtenTypes.get().clear();
+	}
+
+	private void invalidate(final CachedType type, final Key key, final long version) {
+		type.generation.incrementAndGet();
+		synchronized (entries) {
+			var current = entries.get(key);
+			var fence = Math.max(version, current != null ? current.fenceVersion() : Long.MIN_VALUE);
+			if (fence == Long.MIN_VALUE) {
+				entries.remove(key);
+			} else {
+				entries.put(key, new CacheEntry(null, fence, System.nanoTime()));
+			}
+		}
+	}
+
+	private void invalidateAll(final CachedType type) {
+		type.generation.incrementAndGet();
+		var entityType = type.metadata.getEntityType();
+		synchronized (entries) {
+			entries.entrySet().removeIf(e -> e.getKey().entityType == entityType && e.getValue().entity != null);
+		}
+	}
+
+	private static String idName(final Class<?> entityType) {
+		var ids = EntityMetadata.of(entityType).getIdColumns();
+		if (ids.size() != 1) {
+			throw new IllegalArgumentException("Entity must have one @Id column. entityType=" + entityType.getName());
+		}
+		return ids.get(0).getName();
+	}
+
+	/**
+	 * Entity type enabled for the cache.
+	 */
+	private static final class CachedType {
+		private final EntityMetadata<?> metadata;
+		private final EntityMetadata.Column id;
+		private final EntityMetadata.Column version;
+		/** incremented on every invalidation of the type */
+		private final AtomicLong generation = new AtomicLong();
+
+		private CachedType(final EntityMetadata<?> metadata) {
+			this.metadata = metadata;
+			this.id = metadata.getColumn(idName(metadata.getEntityType())).orElseThrow();
+			this.version = metadata.getVersionColumn().orElse(null);
+		}
+
+		/**
+		 * Convert the id to the type of the field, so that <code>1</code> and <code>1L</code> are the same key.
+		 */
+		private Object normalize(final Object value) {
+			var type = id.getType();
+			if (value instanceof Number) {
+				var number = (Number) value;
+				if (type == long.class || type == Long.class) {
+					return number.longValue();
+				} else if (type == int.class || type == Integer.class) {
+					return number.intValue();
+				}
+			}
+			return value;
+		}
+
+		private long versionOf(final Object entity) {
+			if (version == null) {
+				return Long.MIN_VALUE;
+			}
+			var value = version.getValue(entity);
+			return value instanceof Number ? ((Number) value).longValue() : Long.MIN_VALUE;
+		}
+
+		/**
+		 * Shallow copy of the mapped fields, so that a caller modifying its entity does not modify the cache.
+		 */
+		private Object copy(final Object entity) {
+			try {
+				var copy = metadata.getEntityType().getDeclaredConstructor().newInstance();
+				for (var column : metadata.getColumns()) {
+					column.setValue(copy, column.getValue(entity));
+				}
+				return copy;
+			} catch (InstantiationException | IllegalAccessException | InvocationTargetException
+					| NoSuchMethodException ex) {
+				throw new UroborosqlRuntimeException(ex);
+			}
+		}
+	}
+
+	/**
+	 * Entity type and normalized id.
+	 */
+	private static final class Key {
+		private final Class<?> entityType;
+		private final Object id;
+
+		private Key(final Class<?> entityType, final Object id) {
+			this.entityType = entityType;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * entityType.hashCode() + Objects.hashCode(id);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			var other = (Key) obj;
+			return entityType == other.entityType && Objects.equals(id, other.id);
+		}
+	}
+
+	/**
+	 * Cached entity, or a version fence of a written entity when <code>entity</code> is <code>null</code>.
+	 */
+	private static final class CacheEntry {
+		private final Object entity;
+		private final long version;
+		private final long loadedNanos;
+
+		private CacheEntry(final Object entity, final long version, final long loadedNanos) {
+			this.entity = entity;
+			this.version = version;
+			this.loadedNanos = loadedNanos;
+		}
+
+		private long fenceVersion() {
+			return entity == null ? version : Long.MIN_VALUE;
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package jp.co.future.uroborosql.sample.cache;
+
+import java.sql.SQLException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.event.ExecutionEvent;
+import jp.co.future.uroborosql.event.subscriber.EventSubscriber;
+import jp.co.future.uroborosql.sample.sql.SqlTables;
+
+/**
+ * Cache of query results of SQL files, keyed by the SQL name and the bind parameters.
+ * <p>
+ * Only the SQL names passed to {@link #cache(String...)} are cached. The tables referenced by a SQL file are read
+ * from the SQL with {@link SqlTables}. The cache is registered to the <code>EventListenerHolder</code> of the
+ * SqlConfig, and collects the tables written by <code>update</code>, <code>updateWith</code> and <code>batch</code>
+ * statements of each thread:
+ * <ul>
+ * <li>When the transaction commits, the results that reference one of the written tables are evicted. A rolled back
+ * transaction evicts nothing.</li>
+ * <li>A statement executed in auto-commit mode evicts the results immediately.</li>
+ * <li>While the transaction of the current thread has written one of the tables of a SQL, the SQL is executed
+ * without the cache, so that the transaction reads its own changes.</li>
+ * <li>A result loaded while one of its tables was evicted is returned but not cached.</li>
+ * </ul>
+ * The results are kept in LRU order while their estimated size is under <code>maxBytes</code>. A result larger than a
+ * quarter of <code>maxBytes</code> is not cached.
+ *
+ * <pre>
+ * var cache = new QueryResultCache().setMaxBytes(16 * 1024 * 1024).cache("department/select_department");
+ * config = UroboroSQL.builder(dataSource).setEventListenerHolder(new EventListenerHolder().addEventSubscriber(cache))...
+ * cache.query(agent, "department/select_department", Map.of("deptNo", 1));
+ * </pre>
+ */
+public class QueryResultCache extends EventSubscriber {
+	private static final Logger LOG = LoggerFactory.getLogger(QueryResultCache.class);
+
+	private final Map<String, Set<String>> tablesBySqlName = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> tableGenerations = new ConcurrentHashMap<>();
+	private final LinkedHashMap<Key, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+	private final ThreadLocal<Set<String>> writtenTables = ThreadLocal.withInitial(HashSet::new);
+
+	private long maxBytes = 16L * 1024 * 1024;
+	private long totalBytes = 0L;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder bypassCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	@Override
+	public void initialize() {
+		afterSqlUpdateListener(this::afterSqlWrite);
+		afterSqlBatchListener(this::afterSqlWrite);
+		afterCommitListener(evt -> {
+			var tables = writtenTables.get();
+			evict(tables);
+			tables.clear();
+		});
+		afterRollbackListener(evt -> writtenTables.get().clear());
+	}
+
+	/**
+	 * Set the max estimated size of the cached results in bytes. default is 16MB.
+	 *
+	 * @param maxBytes max bytes
+	 * @return QueryResultCache
+	 */
+	public QueryResultCache setMaxBytes(final long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be greater than 0.");
+		}
+		this.maxBytes = maxBytes;
+		return this;
+	}
+
+	/**
+	 * Enable the cache for the SQL names.
+	 *
+	 * @param sqlNames SQL names (e.g. <code>department/select_department</code>)
+	 * @return QueryResultCache
+	 */
+	public QueryResultCache cache(final String... sqlNames) {
+		for (var sqlName : sqlNames) {
+			// the tables are resolved when the SQL is executed first, with the SqlConfig of the agent
+			tablesBySqlName.putIfAbsent(sqlName, Collections.emptySet());
+		}
+		return this;
+	}
+
+	/**
+	 * Execute the query or get its cached result.
+	 *
+	 * @param agent SqlAgent
+	 * @param sqlName SQL name
+	 * @param params bind parameters
+	 * @return unmodifiable rows
+	 */
+	public List<Map<String, Object>> query(final SqlAgent agent, final String sqlName,
+			final Map<String, Object> params) {
+		var tables = tablesOf(agent, sqlName);
+		if (tables == null || !Collections.disjoint(tables, writtenTables.get())) {
+			bypassCount.increment();
+			return agent.query(sqlName).paramMap(params).collect();
+		}
+		var key = new Key(sqlName, params);
+		synchronized (results) {
+			var result = results.get(key);
+			if (result != null) {
+				hitCount.increment();
+				return result.rows;
+			}
+		}
+
+		missCount.increment();
+		var generations = generationsOf(tables);
+		var rows = freeze(agent.query(sqlName).paramMap(params).collect());
+		var bytes = estimate(rows);
+		if (bytes <= maxBytes / 4) {
+			synchronized (results) {
+				// skip when one of the tables was evicted during the load
+				if (generations.equals(generationsOf(tables))) {
+					var previous = results.put(key, new Result(tables, rows, bytes));
+					totalBytes += bytes - (previous != null ? previous.bytes : 0L);
+					removeEldest();
+				}
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Evict all results.
+	 */
+	public void invalidateAll() {
+		tableGenerations.values().forEach(AtomicLong::incrementAndGet);
+		synchronized (results) {
+			evictionCount.add(results.size());
+			results.clear();
+			totalBytes = 0L;
+		}
+	}
+
+	/**
+	 * @return number of queries served by the cache
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return number of cached queries that were executed
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return number of queries executed without the cache
+	 */
+	public long getBypassCount() {
+		return bypassCount.sum();
+	}
+
+	/**
+	 * @return number of results evicted by the writes or by the size limit
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * @return ratio of the queries served by the cache to all queries of the cached SQL names
+	 */
+	public double getHitRatio() {
+		var hit = hitCount.sum();
+		var total = hit + missCount.sum() + bypassCount.sum();
+		return total == 0 ? 0.0 : (double) hit / total;
+	}
+
+	/**
+	 * @return estimated size of the cached results in bytes
+	 */
+	public long getEstimatedBytes() {
+		synchronized (results) {
+			return totalBytes;
+		}
+	}
+
+	/**
+	 * @return number of cached results
+	 */
+	public int size() {
+		synchronized (results) {
+			return results.size();
+		}
+	}
+
+	private Set<String> tablesOf(final SqlAgent agent, final String sqlName) {
+		var tables = tablesBySqlName.get(sqlName);
+		if (tables == null || !tables.isEmpty()) {
+			return tables;
+		}
+		var sql = agent.getSqlConfig().getSqlResourceManager().getSql(sqlName);
+		if (sql == null) {
+			return null;
+		}
+		tables = SqlTables.tables(sql);
+		tablesBySqlName.put(sqlName, tables);
+		return tables;
+	}
+
+	private void afterSqlWrite(final ExecutionEvent evt) {
+		var sql = evt.getExecutionContext().getSql();
+		if (sql == null) {
+			return;
+		}
+		var tables = SqlTables.tables(sql);
+		try {
+			if (evt.getConnection().getAutoCommit()) {
+				evict(tables);
+				return;
+			}
+		} catch (SQLException ex) {
+			LOG.debug("Failed to get the auto-commit mode.", ex);
+		}
+		writtenTables.get().addAll(tables);
+	}
+
+	private void evict(final Collection<String> tables) {
+		if (tables.isEmpty()) {
+			return;
+		}
+		for (var table : tables) {
+			tableGenerations.computeIfAbsent(table, t -> new AtomicLong()).incrementAndGet();
+		}
+		synchronized (results) {
+			var it = results.values().iterator();
+			while (it.hasNext()) {
+				var result = it.next();
+				if (!Collections.disjoint(result.tables, tables)) {
+					it.remove();
+					totalBytes -= result.bytes;
+					evictionCount.increment();
+				}
+			}
+		}
+	}
+
+	private void removeEldest() {
+		var it = results.values().iterator();
+		while (totalBytes > maxBytes && it.hasNext()) {
+			totalBytes -= it.next().bytes;
+			it.remove();
+			evictionCount.increment();
+		}
+	}
+
+	private List<Long> generationsOf(final Set<String> tables) {
+		List<Long> generations = new ArrayList<>(tables.size());
+		for (var table : tables) {
+			generations.add(tableGenerations.computeIfAbsent(table, t -> new AtomicLong()).get());
+		}
+		return generations;
+	}
+
+	private static List<Map<String, Object>> freeze(final List<Map<String, Object>> rows) {
+		List<Map<String, Object>> frozen = new ArrayList<>(rows.size());
+		for (var row : rows) {
+			frozen.add(Collections.unmodifiableMap(row));
+		}
+		return Collections.unmodifiableList(frozen);
+	}
+
+	/**
+	 * Rough size of the rows: the objects of the list and the maps, and the values by their type.
+	 */
+	private static long estimate(final List<Map<String, Object>> rows) {
+		var bytes = 64L + 8L * rows.size();
+		for (var row : rows) {
+			bytes += 64L;
+			for (var entry : row.entrySet()) {
+				// the keys are shared by the rows of a result, only the map entry is counted
+				bytes += 40L + estimate(entry.getValue());
+			}
+		}
+		return bytes;
+	}
+
+	private static long estimate(final Object value) {
+		if (value == null) {
+			return 0L;
+		} else if (value instanceof CharSequence) {
+			return 40L + ((CharSequence) value).length() * 2L;
+		} else if (value instanceof byte[]) {
+			return 16L + ((byte[]) value).length;
+		} else if (value instanceof Number || value instanceof Boolean || value instanceof TemporalAccessor) {
+			return 24L;
+		}
+		return 64L;
+	}
+
+	/**
+	 * SQL name and a copy of the bind parameters.
+	 */
+	private static final class Key {
+		private final String sqlName;
+		private final Map<String, Object> params;
+
+		private Key(final String sqlName, final Map<String, Object> params) {
+			this.sqlName = sqlName;
+			this.params = params != null ? new HashMap<>(params) : Collections.emptyMap();
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * sqlName.hashCode() + params.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			var other = (Key) obj;
+			return sqlName.equals(other.sqlName) && Objects.equals(params, other.params);
+		}
+	}
+
+	/**
+	 * Cached rows.
+	 */
+	private static final class Result {
+		private final Set<String> tables;
+		private final List<Map<String, Object>> rows;
+		private final long bytes;
+
+		private Result(final Set<String> tables, final List<Map<String, Object>> rows, final long bytes) {
+			this.tables = tables;
+			this.rows = rows;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package jp.co.future.uroborosql.sample.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.config.SqlConfig;
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+
+/**
+ * Runs independent units of work, each with its own SqlAgent, concurrently.
+ * <p>
+ * Each task opens a SqlAgent on the thread that runs it and closes it when the task ends, so a transaction started
+ * by the task (<code>agent.required(...)</code>) is confined to that thread. The SqlAgent must not be passed to other
+ * threads or kept after the task.
+ * <p>
+ * Tasks run on virtual threads when the runtime supports them (Java 21 or later) and on a fixed pool of platform
+ * threads otherwise. At most <code>maxConcurrency</code> tasks hold a SqlAgent at a time, which should be the max
+ * number of connections of the pool (e.g. {@link jp.co.future.uroborosql.sample.pool.PooledDataSource#getMaxTotal()}),
+ * so that waiting tasks park on the executor instead of timing out on the pool.
+ *
+ * <pre>
+ * try (var executor = new AgentExecutor(config, dataSource.getMaxTotal())) {
+ * 	var future = executor.submit(agent -&gt; agent.query("employee/select_employee").collect());
+ * }
+ * </pre>
+ */
+public class AgentExecutor implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(AgentExecutor.class);
+
+	private final SqlConfig config;
+	private final Semaphore permits;
+	private final ExecutorService executor;
+	private final boolean virtual;
+
+	/**
+	 * Create an executor that uses virtual threads when they are supported.
+	 *
+	 * @param config SqlConfig
+	 * @param maxConcurrency max number of tasks that hold a SqlAgent at a time
+	 */
+	public AgentExecutor(final SqlConfig config, final int maxConcurrency) {
+		this(config, maxConcurrency, true);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config SqlConfig
+	 * @param maxConcurrency max number of tasks that hold a SqlAgent at a time
+	 * @param preferVirtualThreads use virtual threads when they are supported
+	 */
+	public AgentExecutor(final SqlConfig config, final int maxConcurrency, final boolean preferVirtualThreads) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be positive. maxConcurrency=" + maxConcurrency);
+		}
+		this.config = config;
+		this.permits = new Semaphore(maxConcurrency, true);
+		var virtualExecutor = preferVirtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+		if (virtualExecutor != null) {
+			this.executor = virtualExecutor;
+			this.virtual = true;
+		} else {
+			this.executor = Executors.newFixedThreadPool(maxConcurrency, platformThreadFactory());
+			this.virtual = false;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> when the runtime supports virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> when the tasks run on virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Submit a unit of work.
+	 *
+	 * @param <T> result type
+	 * @param work work that uses the SqlAgent of the task
+	 * @return result
+	 */
+	public <T> Future<T> submit(final Function<SqlAgent, T> work) {
+		return executor.submit(() -> call(work));
+	}
+
+	/**
+	 * Submit a unit of work and get its result as a CompletableFuture.
+	 *
+	 * @param <T> result type
+	 * @param work work that uses the SqlAgent of the task
+	 * @return result. completed exceptionally with the exception thrown by the work.
+	 */
+	public <T> CompletableFuture<T> supplyAsync(final Function<SqlAgent, T> work) {
+		var future = new CompletableFuture<T>();
+		executor.execute(() -> {
+			try {
+				future.complete(call(work));
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				future.completeExceptionally(ex);
+			} catch (RuntimeException | Error ex) {
+				future.completeExceptionally(ex);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Submit a unit of work without result.
+	 *
+	 * @param work work that uses the SqlAgent of the task
+	 * @return completion
+	 */
+	public Future<?> execute(final Consumer<SqlAgent> work) {
+		return submit(agent -> {
+			work.accept(agent);
+			return null;
+		});
+	}
+
+	/**
+	 * Run the units of work concurrently and wait for all of them.
+	 *
+	 * @param <T> result type
+	 * @param works works that use the SqlAgent of their task
+	 * @return results in the order of the works
+	 */
+	public <T> List<T> invokeAll(final List<? extends Function<SqlAgent, T>> works) {
+		List<Future<T>> futures = new ArrayList<>(works.size());
+		for (var work : works) {
+			futures.add(submit(work));
+		}
+		List<T> results = new ArrayList<>(futures.size());
+		try {
+			for (var future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException ex) {
+			futures.forEach(f -> f.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new UroborosqlRuntimeException(ex);
+		} catch (ExecutionException ex) {
+			futures.forEach(f -> f.cancel(true));
+			var cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new UroborosqlRuntimeException(cause);
+		}
+		return results;
+	}
+
+	/**
+	 * @return number of tasks waiting for a permit
+	 */
+	public int getWaitingCount() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * Wait for the submitted tasks and stop the executor.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+				LOG.warn("Tasks did not finish in time.");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException ex) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private <T> T call(final Function<SqlAgent, T> work) throws InterruptedException {
+		permits.acquire();
+		try (var agent = config.agent()) {
+			return work.apply(agent);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * <code>Executors.newVirtualThreadPerTaskExecutor()</code> of Java 21, called by reflection because this project
+	 * is compiled for Java 11.
+	 *
+	 * @return executor. <code>null</code> when virtual threads are not supported.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException ex) {
+			LOG.debug("Virtual threads are not supported. Use platform threads.");
+			return null;
+		} catch (IllegalAccessException | InvocationTargetException ex) {
+			LOG.warn("Failed to create a virtual thread executor. Use platform threads.", ex);
+			return null;
+		}
+	}
+
+	private static ThreadFactory platformThreadFactory() {
+		var sequence = new AtomicInteger();
+		return r -> {
+			var thread = new Thread(r, "agent-executor-" + sequence.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,280 @@
+package jp.co.future.uroborosql.sample.concurrent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.config.SqlConfig;
+import jp.co.future.uroborosql.fluent.SqlEntityQuery;
+import jp.co.future.uroborosql.sample.query.StreamingQuery;
+
+/**
+ * Non-blocking variants of the query API.
+ * <p>
+ * The JDBC work runs on a dedicated {@link AgentExecutor} of platform threads, at most <code>maxConcurrency</code>
+ * queries at a time, and the callers get a {@link CompletableFuture} or a {@link Flow.Publisher}.
+ * <ul>
+ * <li><code>collect()</code> completes the future with all rows.</li>
+ * <li><code>publish()</code> of a SQL file or an entity streams the rows with a forward-only ResultSet and a fetch
+ * size ({@link StreamingQuery}), and emits only as many rows as the subscriber requested. The executor thread waits
+ * for the demand, so the rows are read from the database at the pace of the subscriber. The connection is held until
+ * the publisher completes or the subscription is cancelled. <code>publish(Function)</code> emits the stream opened by
+ * the caller as it is, so it is only bounded when that stream is opened with {@link StreamingQuery} too.</li>
+ * </ul>
+ *
+ * <pre>
+ * try (var async = new AsyncQuery(config, 4)) {
+ * 	async.collect("department/select_department", Map.of()).thenAccept(rows -&gt; ...);
+ * 	async.publish(Employee.class, q -&gt; q.equal("gender", Gender.FEMALE)).subscribe(subscriber);
+ * }
+ * </pre>
+ */
+public class AsyncQuery implements AutoCloseable {
+	private final AgentExecutor executor;
+	private int fetchSize = 1000;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config SqlConfig
+	 * @param maxConcurrency max number of queries executed at a time
+	 */
+	public AsyncQuery(final SqlConfig config, final int maxConcurrency) {
+		this.executor = new AgentExecutor(config, maxConcurrency, false);
+	}
+
+	/**
+	 * Set the fetch size of the published queries. default is 1000.
+	 *
+	 * @param fetchSize fetch size
+	 * @return AsyncQuery
+	 */
+	public AsyncQuery setFetchSize(final int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("fetchSize must be greater than 0.");
+		}
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Run a unit of work with its own SqlAgent.
+	 *
+	 * @param <T> result type
+	 * @param work work
+	 * @return result
+	 */
+	public <T> CompletableFuture<T> supply(final Function<SqlAgent, T> work) {
+		return executor.supplyAsync(work);
+	}
+
+	/**
+	 * Collect the rows of the SQL file.
+	 *
+	 * @param sqlName SQL name
+	 * @param params bind parameters
+	 * @return rows
+	 */
+	public CompletableFuture<List<Map<String, Object>>> collect(final String sqlName,
+			final Map<String, Object> params) {
+		return supply(agent -> agent.query(sqlName).paramMap(params).collect());
+	}
+
+	/**
+	 * Collect the entities.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param conditions adds the conditions to the query (e.g. <code>q -&gt; q.equal("empNo", 1)</code>)
+	 * @return entities
+	 */
+	public <E> CompletableFuture<List<E>> collect(final Class<E> entityType,
+			final UnaryOperator<SqlEntityQuery<E>> conditions) {
+		return supply(agent -> conditions.apply(agent.query(entityType)).collect());
+	}
+
+	/**
+	 * Publish the rows of the SQL file.
+	 *
+	 * @param sqlName SQL name
+	 * @param params bind parameters
+	 * @return publisher. each subscription executes the query.
+	 */
+	public Flow.Publisher<Map<String, Object>> publish(final String sqlName, final Map<String, Object> params) {
+		return publish(agent -> new StreamingQuery(agent).setFetchSize(fetchSize)
+				.stream(agent.query(sqlName).paramMap(params)));
+	}
+
+	/**
+	 * Publish the entities.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param conditions adds the conditions to the query
+	 * @return publisher. each subscription executes the query with a forward-only ResultSet.
+	 */
+	public <E> Flow.Publisher<E> publish(final Class<E> entityType,
+			final UnaryOperator<SqlEntityQuery<E>> conditions) {
+		return publish(agent -> new StreamingQuery(agent).setFetchSize(fetchSize)
+				.stream(conditions.apply(agent.query(entityType))));
+	}
+
+	/**
+	 * Publish the elements of the stream opened by the query.
+	 *
+	 * @param <T> element type
+	 * @param query opens the stream with the SqlAgent of the subscription
+	 * @return publisher. each subscription executes the query.
+	 */
+	public <T> Flow.Publisher<T> publish(final Function<SqlAgent, Stream<T>> query) {
+		return subscriber -> {
+			var subscription = new StreamSubscription<T>(subscriber);
+			subscriber.onSubscribe(subscription);
+			executor.supplyAsync(agent -> {
+				subscription.run(agent, query);
+				return null;
+			}).exceptionally(ex -> {
+				// e.g. interrupted while waiting for a connection
+				subscription.fail(ex);
+				return null;
+			});
+		};
+	}
+
+	/**
+	 * Wait for the running queries and stop the executor.
+	 */
+	@Override
+	public void close() {
+		executor.close();
+	}
+
+	/**
+	 * Emits the elements of a stream on the executor thread as they are requested.
+	 */
+	private static final class StreamSubscription<T> implements Flow.Subscription {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition demanded = lock.newCondition();
+		private long demand = 0L;
+		private boolean cancelled = false;
+		private Throwable invalidRequest;
+		private boolean done = false;
+
+		private StreamSubscription(final Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			lock.lock();
+			try {
+				if (n <= 0) {
+					invalidRequest = new IllegalArgumentException("non-positive request. n=" + n);
+				} else {
+					// saturate at Long.MAX_VALUE (unbounded)
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+				demanded.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			lock.lock();
+			try {
+				cancelled = true;
+				demanded.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void run(final SqlAgent agent, final Function<SqlAgent, Stream<T>> query) {
+			try (var stream = query.apply(agent)) {
+				var it = stream.iterator();
+				// the end of the rows is signaled without waiting for the demand
+				while (it.hasNext()) {
+					if (!awaitDemand()) {
+						terminate(null, false);
+						return;
+					}
+					subscriber.onNext(it.next());
+				}
+			} catch (RuntimeException ex) {
+				terminate(ex, false);
+				return;
+			}
+			terminate(null, true);
+		}
+
+		private void fail(final Throwable ex) {
+			terminate(ex, false);
+		}
+
+		/**
+		 * Consume one unit of demand, waiting for it. An interrupt (e.g. <code>shutdownNow()</code> of the executor)
+		 * cancels the subscription, so a subscriber that never requests does not pin the thread and its connection.
+		 *
+		 * @return <code>false</code> when the subscription is cancelled or the request was invalid
+		 */
+		private boolean awaitDemand() {
+			lock.lock();
+			try {
+				while (demand == 0L && !cancelled && invalidRequest == null) {
+					try {
+						demanded.await();
+					} catch (InterruptedException ex) {
+						cancelled = true;
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				if (cancelled || invalidRequest != null) {
+					return false;
+				}
+				if (demand != Long.MAX_VALUE) {
+					demand--;
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Signal the end to the subscriber once, unless the subscription is cancelled.
+		 *
+		 * @param error error to signal
+		 * @param complete signal the completion when there is no error
+		 */
+		private void terminate(final Throwable error, final boolean complete) {
+			Throwable signal;
+			lock.lock();
+			try {
+				if (done || cancelled) {
+					done = true;
+					return;
+				}
+				done = true;
+				signal = error != null ? error : invalidRequest;
+			} finally {
+				lock.unlock();
+			}
+			if (signal != null) {
+				subscriber.onError(signal);
+			} else if (complete) {
+				subscriber.onComplete();
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package jp.co.future.uroborosql.sample.event;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.co.future.uroborosql.event.AfterSqlQueryEvent;
+import jp.co.future.uroborosql.event.subscriber.EventSubscriber;
+
+/**
+ * Result dump subscriber that formats and writes the dump on a background thread.
+ * <p>
+ * On the query thread, the values of at most <code>maxRows</code> rows of the sampled queries are copied as the caller
+ * reads them, so forward-only ResultSets are dumped too. The dump is put into a bounded queue when the caller reaches
+ * the end of the rows or closes the ResultSet. A dump that does not fit in the queue is dropped and counted instead of
+ * blocking the query.
+ * <p>
+ * Nothing is copied when the DEBUG level of the logger is disabled.
+ */
+public class AsyncDumpResultEventSubscriber extends EventSubscriber implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncDumpResultEventSubscriber.class);
+	private static final Dump END = new Dump(null, null, null, false, true);
+
+	private double samplingRate = 1.0;
+	private int maxRows = 100;
+	private int queueCapacity = 1024;
+
+	private BlockingQueue<Dump> queue;
+	private Thread writer;
+
+	private final LongAdder dumpedCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+
+	@Override
+	public void initialize() {
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		writer = new Thread(this::writeLoop, "dump-result-writer");
+		writer.setDaemon(true);
+		writer.start();
+		afterSqlQueryListener(this::afterSqlQuery);
+	}
+
+	/**
+	 * Set the ratio of the queries to dump. default is 1.0 (all queries).
+	 *
+	 * @param samplingRate sampling rate (0.0 - 1.0)
+	 * @return AsyncDumpResultEventSubscriber
+	 */
+	public AsyncDumpResultEventSubscriber setSamplingRate(final double samplingRate) {
+		if (samplingRate < 0.0 || samplingRate > 1.0) {
+			throw new IllegalArgumentException("samplingRate must be between 0.0 and 1.0.");
+		}
+		this.samplingRate = samplingRate;
+		return this;
+	}
+
+	/**
+	 * Set the max number of rows dumped per query. default is 100.
+	 *
+	 * @param maxRows max number of rows
+	 * @return AsyncDumpResultEventSubscriber
+	 */
+	public AsyncDumpResultEventSubscriber setMaxRows(final int maxRows) {
+		this.maxRows = maxRows;
+		return this;
+	}
+
+	/**
+	 * Set the number of dumps waiting for the writer. default is 1024. Must be set before initialization.
+	 *
+	 * @param queueCapacity queue capacity
+	 * @return AsyncDumpResultEventSubscriber
+	 */
+	public AsyncDumpResultEventSubscriber setQueueCapacity(final int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+	/**
+	 * @return number of dumps written
+	 */
+	public long getDumpedCount() {
+		return dumpedCount.sum();
+	}
+
+	/**
+	 * @return number of dumps dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	private void afterSqlQuery(final AfterSqlQueryEvent evt) {
+		if (!LOG.isDebugEnabled() || samplingRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+			return;
+		}
+		var rs = evt.getResultSet();
+		String[] labels;
+		try {
+			var meta = rs.getMetaData();
+			labels = new String[meta.getColumnCount()];
+			for (var i = 0; i < labels.length; i++) {
+				labels[i] = meta.getColumnLabel(i + 1);
+			}
+		} catch (SQLException ex) {
+			LOG.warn("Failed to read the metadata of the result set.", ex);
+			return;
+		}
+		var ctx = evt.getExecutionContext();
+		var name = ctx.getSqlName() != null ? ctx.getSqlName() : ctx.getSqlId();
+		evt.setResultSet((ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, new CopyingHandler(rs, name, labels)));
+	}
+
+	private void writeLoop() {
+		try {
+			while (true) {
+				var dump = queue.take();
+				if (dump == END) {
+					return;
+				}
+				LOG.debug("{}", dump.format());
+				dumpedCount.increment();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Write the queued dumps and stop the writer thread.
+	 */
+	@Override
+	public void close() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			if (!queue.offer(END, 10, TimeUnit.SECONDS)) {
+				writer.interrupt();
+			}
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (droppedCount.sum() > 0) {
+			LOG.info("dump result dropped={}", droppedCount.sum());
+		}
+	}
+
+	/**
+	 * Copies the rows read by the caller, and queues the dump once at the end of the rows or on close.
+	 */
+	private final class CopyingHandler implements InvocationHandler {
+		private final ResultSet rs;
+		private final String name;
+		private final String[] labels;
+		private final List<Object[]> rows = new ArrayList<>();
+		private boolean truncated = false;
+		private boolean queued = false;
+
+		private CopyingHandler(final ResultSet rs, final String name, final String[] labels) {
+			this.rs = rs;
+			this.name = name;
+			this.labels = labels;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			var methodName = method.getName();
+			if ("close".equals(methodName)) {
+				queue(false);
+			}
+			Object result;
+			try {
+				result = method.invoke(rs, args);
+			} catch (InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+			if ("next".equals(methodName) && !queued) {
+				if (!(Boolean) result) {
+					queue(true);
+				} else if (rows.size() < maxRows) {
+					var row = new Object[labels.length];
+					for (var i = 0; i < labels.length; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					rows.add(row);
+				} else {
+					truncated = true;
+				}
+			}
+			return result;
+		}
+
+		private void queue(final boolean complete) {
+			if (queued) {
+				return;
+			}
+			queued = true;
+			if (!queue.offer(new Dump(name, labels, rows, truncated, complete))) {
+				droppedCount.increment();
+			}
+		}
+	}
+
+	/**
+	 * Copied rows of a query.
+	 */
+	private static final class Dump {
+		private final String name;
+		private final String[] labels;
+		private final List<Object[]> rows;
+		private final boolean truncated;
+		private final boolean complete;
+
+		private Dump(final String name, final String[] labels, final List<Object[]> rows, final boolean truncated,
+				final boolean complete) {
+			this.name = name;
+			this.labels = labels;
+			this.rows = rows;
+			this.truncated = truncated;
+			this.complete = complete;
+		}
+
+		private String format() {
+			var widths = new int[labels.length];
+			for (var i = 0; i < labels.length; i++) {
+				widths[i] = labels[i].length();
+			}
+			List<String[]> values = new ArrayList<>(rows.size());
+			for (var row : rows) {
+				var strs = new String[row.length];
+				for (var i = 0; i < row.length; i++) {
+					strs[i] = String.valueOf(row[i]);
+					widths[i] = Math.max(widths[i], strs[i].length());
+				}
+				values.add(strs);
+			}
+
+			var sb = new StringBuilder();
+			sb.append(name).append(System.lineSeparator());
+			appendLine(sb, labels, widths);
+			for (var strs : values) {
+				appendLine(sb, strs, widths);
+			}
+			if (truncated) {
+				sb.append("(more than ").append(rows.size()).append(" rows)");
+			} else if (!complete) {
+				// closed before the end of the rows (e.g. findFirst)
+				sb.append('(').append(rows.size()).append(" rows read)");
+			} else {
+				sb.append('(').append(rows.size()).append(" rows)");
+			}
+			return sb.toString();
+		}
+
+		private static void appendLine(final StringBuilder sb, final String[] values, final int[] widths) {
+			sb.append('|');
+			for (var i = 0; i < values.length; i++) {
+				sb.append(' ').append(values[i]);
+				for (var pad = values[i].length(); pad < widths[i]; pad++) {
+					sb.append(' ');
+				}
+				sb.append(" |");
+			}
+			sb.append(System.lineSeparator());
+		}
+	}
+}
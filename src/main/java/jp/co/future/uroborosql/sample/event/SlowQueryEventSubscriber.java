@@ -0,0 +1,372 @@
+package jp.co.future.uroborosql.sample.event;
+
+import java.lang.reflect.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.co.future.uroborosql.context.ExecutionContext;
+import jp.co.future.uroborosql.event.AfterCreatePreparedStatementEvent;
+import jp.co.future.uroborosql.event.AfterSqlQueryEvent;
+import jp.co.future.uroborosql.event.subscriber.EventSubscriber;
+import jp.co.future.uroborosql.sample.sql.SqlTables;
+
+/**
+ * Detects slow queries and captures their execution plan.
+ * <p>
+ * The execution time of a query is measured from the creation of the PreparedStatement to the end of its execution.
+ * When it exceeds the threshold of the SQL (set per SQL name or SQL ID, or the default threshold), the executed SQL
+ * is explained on a connection borrowed from the DataSource, with the same bind values, on a background thread. The
+ * plan, the bind values and the execution time are written to the <code>jp.co.future.uroborosql.sample.slowquery</code>
+ * logger.
+ * <p>
+ * A plan is captured at most once per SQL in the capture interval, so a plan regression of a frequently executed
+ * SQL does not add an EXPLAIN per execution. Slow executions within the interval are only counted and reported with
+ * the next capture.
+ */
+public class SlowQueryEventSubscriber extends EventSubscriber implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(SlowQueryEventSubscriber.class);
+	private static final Logger SLOW_QUERY_LOG = LoggerFactory.getLogger("jp.co.future.uroborosql.sample.slowquery");
+
+	private final DataSource dataSource;
+	private final Map<String, Long> thresholds = new ConcurrentHashMap<>();
+	private final Map<String, Long> capturedNanos = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> suppressedCounts = new ConcurrentHashMap<>();
+	private final ThreadLocal<Timer> timers = ThreadLocal.withInitial(Timer::new);
+
+	private long defaultThresholdNanos = TimeUnit.SECONDS.toNanos(1);
+	private long captureIntervalNanos = TimeUnit.MINUTES.toNanos(10);
+	private String explainPrefix = "EXPLAIN ";
+	private int explainTimeoutSeconds = 10;
+	private int queueCapacity = 16;
+
+	private ThreadPoolExecutor explainer;
+
+	private final LongAdder slowCount = new LongAdder();
+	private final LongAdder capturedCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dataSource DataSource that provides the connection for EXPLAIN
+	 */
+	public SlowQueryEventSubscriber(final DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public void initialize() {
+		explainer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), r -> {
+					var thread = new Thread(r, "slow-query-explainer");
+					thread.setDaemon(true);
+					return thread;
+				}, (r, executor) -> droppedCount.increment());
+		afterCreatePreparedStatementListener(this::afterCreatePreparedStatement);
+		afterSqlQueryListener(this::afterSqlQuery);
+	}
+
+	/**
+	 * Set the threshold of the SQLs without their own threshold. default is 1 second.
+	 *
+	 * @param threshold threshold
+	 * @return SlowQueryEventSubscriber
+	 */
+	public SlowQueryEventSubscriber setDefaultThreshold(final Duration threshold) {
+		this.defaultThresholdNanos = threshold.toNanos();
+		return this;
+	}
+
+	/**
+	 * Set the threshold of the SQL.
+	 *
+	 * @param sqlNameOrId SQL name (e.g. <code>employee/select_employee</code>) or SQL ID
+	 * @param threshold threshold
+	 * @return SlowQueryEventSubscriber
+	 */
+	public SlowQueryEventSubscriber setThreshold(final String sqlNameOrId, final Duration threshold) {
+		thresholds.put(sqlNameOrId, threshold.toNanos());
+		return this;
+	}
+
+	/**
+	 * Set the minimum interval between two plan captures of the same SQL. default is 10 minutes.
+	 *
+	 * @param captureInterval capture interval
+	 * @return SlowQueryEventSubscriber
+	 */
+	public SlowQueryEventSubscriber setCaptureInterval(final Duration captureInterval) {
+		this.captureIntervalNanos = captureInterval.toNanos();
+		return this;
+	}
+
+	/**
+	 * Set the prefix that turns the SQL into the plan query. default is <code>EXPLAIN </code>.
+	 *
+	 * @param explainPrefix prefix (e.g. <code>EXPLAIN (FORMAT TEXT) </code>)
+	 * @return SlowQueryEventSubscriber
+	 */
+	public SlowQueryEventSubscriber setExplainPrefix(final String explainPrefix) {
+		this.explainPrefix = explainPrefix;
+		return this;
+	}
+
+	/**
+	 * Set the query timeout of EXPLAIN. default is 10 seconds.
+	 *
+	 * @param explainTimeoutSeconds timeout in seconds
+	 * @return SlowQueryEventSubscriber
+	 */
+	public SlowQueryEventSubscriber setExplainTimeoutSeconds(final int explainTimeoutSeconds) {
+		this.explainTimeoutSeconds = explainTimeoutSeconds;
+		return this;
+	}
+
+	/**
+	 * Set the number of captures waiting for EXPLAIN. default is 16. Must be set before initialization.
+	 *
+	 * @param queueCapacity queue capacity
+	 * @return SlowQueryEventSubscriber
+	 */
+	public SlowQueryEventSubscriber setQueueCapacity(final int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+	/**
+	 * @return number of queries that exceeded their threshold
+	 */
+	public long getSlowCount() {
+		return slowCount.sum();
+	}
+
+	/**
+	 * @return number of captured plans
+	 */
+	public long getCapturedCount() {
+		return capturedCount.sum();
+	}
+
+	/**
+	 * @return number of captures dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	private void afterCreatePreparedStatement(final AfterCreatePreparedStatementEvent evt) {
+		var timer = timers.get();
+		timer.context = evt.getExecutionContext();
+		timer.createdNanos = System.nanoTime();
+	}
+
+	private void afterSqlQuery(final AfterSqlQueryEvent evt) {
+		var ctx = evt.getExecutionContext();
+		var timer = timers.get();
+		if (timer.context != ctx) {
+			return;
+		}
+		timer.context = null;
+		var elapsedNanos = System.nanoTime() - timer.createdNanos;
+		var threshold = thresholdOf(ctx);
+		if (elapsedNanos < threshold) {
+			return;
+		}
+		slowCount.increment();
+		var key = keyOf(ctx);
+		if (!tryAcquireCapture(key)) {
+			suppressedCounts.computeIfAbsent(key, k -> new LongAdder()).increment();
+			return;
+		}
+		// copy the bind values on the query thread. the ExecutionContext may be changed after this event.
+		List<Object> binds = new ArrayList<>();
+		for (var name : ctx.getBindNames()) {
+			var param = ctx.getParam(name);
+			binds.add(param != null ? param.getValue() : null);
+		}
+		var capture = new Capture(key, ctx.getExecutableSql(), ctx.getBindNames(), binds, elapsedNanos, threshold);
+		explainer.execute(() -> explain(capture));
+	}
+
+	private static String keyOf(final ExecutionContext ctx) {
+		if (ctx.getSqlName() != null) {
+			return ctx.getSqlName();
+		} else if (ctx.getSqlId() != null) {
+			return ctx.getSqlId();
+		}
+		var sql = ctx.getSql();
+		if (sql == null) {
+			return "unknown";
+		}
+		var tables = SqlTables.tables(sql);
+		return SqlTables.operation(sql) + ":" + (tables.isEmpty() ? "" : tables.iterator().next());
+	}
+
+	private long thresholdOf(final ExecutionContext ctx) {
+		Long threshold = null;
+		if (ctx.getSqlName() != null) {
+			threshold = thresholds.get(ctx.getSqlName());
+		}
+		if (threshold == null && ctx.getSqlId() != null) {
+			threshold = thresholds.get(ctx.getSqlId());
+		}
+		return threshold != null ? threshold : defaultThresholdNanos;
+	}
+
+	private boolean tryAcquireCapture(final String key) {
+		var now = System.nanoTime();
+		var acquired = new boolean[1];
+		capturedNanos.compute(key, (k, last) -> {
+			if (last == null || now - last >= captureIntervalNanos) {
+				acquired[0] = true;
+				return now;
+			}
+			return last;
+		});
+		return acquired[0];
+	}
+
+	private void explain(final Capture capture) {
+		var suppressed = suppressedCounts.remove(capture.key);
+		List<String> plan = new ArrayList<>();
+		// only the plan is requested (not EXPLAIN ANALYZE), so the slow query is not executed again
+		try (var conn = dataSource.getConnection();
+				var stmt = conn.prepareStatement(explainPrefix + capture.sql)) {
+			stmt.setQueryTimeout(explainTimeoutSeconds);
+			bind(stmt, capture.binds);
+			try (var rs = stmt.executeQuery()) {
+				var columnCount = rs.getMetaData().getColumnCount();
+				while (rs.next()) {
+					var line = new StringBuilder();
+					for (var i = 1; i <= columnCount; i++) {
+						if (i > 1) {
+							line.append('\t');
+						}
+						line.append(rs.getString(i));
+					}
+					plan.add(line.toString());
+				}
+			}
+		} catch (SQLException ex) {
+			LOG.warn("Failed to explain the slow query. sql={}", capture.key, ex);
+			plan.add("(EXPLAIN failed: " + ex.getMessage() + ")");
+		}
+		capturedCount.increment();
+
+		var nl = System.lineSeparator();
+		var sb = new StringBuilder();
+		sb.append("slow query ").append(capture.key)
+				.append(" elapsed=").append(TimeUnit.NANOSECONDS.toMillis(capture.elapsedNanos)).append("ms")
+				.append(" threshold=").append(TimeUnit.NANOSECONDS.toMillis(capture.thresholdNanos)).append("ms")
+				.append(" suppressed=").append(suppressed != null ? suppressed.sum() : 0L).append(nl);
+		sb.append("sql:").append(nl).append(capture.sql.strip()).append(nl);
+		sb.append("binds:");
+		for (var i = 0; i < capture.binds.size(); i++) {
+			sb.append(i == 0 ? " " : ", ").append(capture.bindNames.get(i)).append('=')
+					.append(toJdbcValue(capture.binds.get(i)));
+		}
+		sb.append(nl);
+		sb.append("plan:");
+		plan.forEach(line -> sb.append(nl).append(line));
+		SLOW_QUERY_LOG.info("{}", sb);
+	}
+
+	/**
+	 * Bind the values in the order of the placeholders. Collections and arrays bound to an IN clause are expanded.
+	 */
+	private static void bind(final PreparedStatement stmt, final List<Object> binds) throws SQLException {
+		var index = 1;
+		for (var value : binds) {
+			if (value instanceof Iterable) {
+				for (var element : (Iterable<?>) value) {
+					stmt.setObject(index++, toJdbcValue(element));
+				}
+			} else if (value != null && value.getClass().isArray() && !(value instanceof byte[])) {
+				for (var i = 0; i < Array.getLength(value); i++) {
+					stmt.setObject(index++, toJdbcValue(Array.get(value, i)));
+				}
+			} else {
+				stmt.setObject(index++, toJdbcValue(value));
+			}
+		}
+	}
+
+	/**
+	 * Convert the values that uroboroSQL binds through its parameter mappers.
+	 */
+	private static Object toJdbcValue(final Object value) {
+		if (value instanceof Optional) {
+			return toJdbcValue(((Optional<?>) value).orElse(null));
+		} else if (value instanceof Enum) {
+			return value.toString();
+		}
+		return value;
+	}
+
+	/**
+	 * Write the pending captures and stop the explainer thread.
+	 */
+	@Override
+	public void close() {
+		if (explainer == null) {
+			return;
+		}
+		explainer.shutdown();
+		try {
+			if (!explainer.awaitTermination(30, TimeUnit.SECONDS)) {
+				explainer.shutdownNow();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (slowCount.sum() > 0) {
+			LOG.info("slow query slow={}, captured={}, dropped={}", slowCount.sum(), capturedCount.sum(),
+					droppedCount.sum());
+		}
+	}
+
+	/**
+	 * Last PreparedStatement created on the thread.
+	 */
+	private static final class Timer {
+		private ExecutionContext context;
+		private long createdNanos;
+	}
+
+	/**
+	 * Slow query waiting for EXPLAIN.
+	 */
+	private static final class Capture {
+		private final String key;
+		private final String sql;
+		private final List<String> bindNames;
+		private final List<Object> binds;
+		private final long elapsedNanos;
+		private final long thresholdNanos;
+
+		private Capture(final String key, final String sql, final List<String> bindNames, final List<Object> binds,
+				final long elapsedNanos, final long thresholdNanos) {
+			this.key = key;
+			this.sql = sql;
+			this.bindNames = List.copyOf(bindNames);
+			this.binds = binds;
+			this.elapsedNanos = elapsedNanos;
+			this.thresholdNanos = thresholdNanos;
+		}
+	}
+}
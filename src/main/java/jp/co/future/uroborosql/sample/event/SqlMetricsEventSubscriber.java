@@ -0,0 +1,411 @@
+package jp.co.future.uroborosql.sample.event;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.co.future.uroborosql.context.ExecutionContext;
+import jp.co.future.uroborosql.event.AfterCreatePreparedStatementEvent;
+import jp.co.future.uroborosql.event.AfterSqlBatchEvent;
+import jp.co.future.uroborosql.event.AfterSqlQueryEvent;
+import jp.co.future.uroborosql.event.AfterSqlUpdateEvent;
+import jp.co.future.uroborosql.event.EntityEvent;
+import jp.co.future.uroborosql.event.subscriber.EventSubscriber;
+import jp.co.future.uroborosql.sample.metrics.LogLinearHistogram;
+import jp.co.future.uroborosql.sample.metrics.SqlMetrics;
+import jp.co.future.uroborosql.sample.sql.SqlTables;
+
+/**
+ * Records execution time, rows and batch sizes per SQL.
+ * <p>
+ * The execution time is measured from the creation of the PreparedStatement to the end of its execution. Metrics are
+ * grouped by the SQL name, the SQL ID, or <code>operation:table</code> for SQL without them (entity API and
+ * <code>queryWith</code>). Entity operations are also recorded as <code>entity:operation:EntityType</code>.
+ * <p>
+ * The rows returned are counted while the caller reads the ResultSet, and recorded when the last row has been read or
+ * the ResultSet is closed. The ResultSet is never moved by this subscriber, so counting costs nothing more than the
+ * reads the caller makes anyway.
+ * <p>
+ * Each SQL is registered as an MXBean
+ * (<code>jp.co.future.uroborosql.sample:type=SqlMetrics,subscriber=...,sql=...</code>), and all metrics can be written
+ * in the Prometheus text format, periodically to a file with {@link #setPrometheusFile(Path, Duration)}.
+ */
+public class SqlMetricsEventSubscriber extends EventSubscriber implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(SqlMetricsEventSubscriber.class);
+	private static final String JMX_DOMAIN = "jp.co.future.uroborosql.sample";
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+	private static final int MAX_CACHED_KEYS = 1024;
+
+	private final String subscriberName;
+	private final Map<String, SqlMetrics> metrics = new ConcurrentHashMap<>();
+	private final Map<String, String> keysBySql = new ConcurrentHashMap<>();
+	private final ThreadLocal<Timer> timers = ThreadLocal.withInitial(Timer::new);
+
+	private boolean jmxEnabled = true;
+	private Path prometheusFile;
+	private ScheduledExecutorService writer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param subscriberName name that distinguishes the MXBeans of this subscriber from the other subscribers
+	 */
+	public SqlMetricsEventSubscriber(final String subscriberName) {
+		this.subscriberName = subscriberName;
+	}
+
+	@Override
+	public void initialize() {
+		afterCreatePreparedStatementListener(this::afterCreatePreparedStatement);
+		afterSqlQueryListener(this::afterSqlQuery);
+		afterSqlUpdateListener(this::afterSqlUpdate);
+		afterSqlBatchListener(this::afterSqlBatch);
+		afterEntityInsertListener(evt -> afterEntity("insert", evt));
+		afterEntityUpdateListener(evt -> afterEntity("update", evt));
+		afterEntityDeleteListener(evt -> afterEntity("delete", evt));
+	}
+
+	/**
+	 * Set whether the metrics are registered as MXBeans. default is <code>true</code>.
+	 *
+	 * @param jmxEnabled register MXBeans
+	 * @return SqlMetricsEventSubscriber
+	 */
+	public SqlMetricsEventSubscriber setJmxEnabled(final boolean jmxEnabled) {
+		this.jmxEnabled = jmxEnabled;
+		return this;
+	}
+
+	/**
+	 * Write the metrics to the file in the Prometheus text format at the interval, and when this subscriber is
+	 * closed. The file is replaced atomically so that a scraper never reads a partial file.
+	 *
+	 * @param prometheusFile output file
+	 * @param interval write interval
+	 * @return SqlMetricsEventSubscriber
+	 */
+	public SqlMetricsEventSubscriber setPrometheusFile(final Path prometheusFile, final Duration interval) {
+		this.prometheusFile = prometheusFile;
+		this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			var thread = new Thread(r, "sql-metrics-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		var millis = interval.toMillis();
+		writer.scheduleWithFixedDelay(this::writePrometheusFile, millis, millis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * @return metrics of each SQL
+	 */
+	public Collection<SqlMetrics> getMetrics() {
+		return Collections.unmodifiableCollection(new TreeMap<>(metrics).values());
+	}
+
+	/**
+	 * Write the metrics in the Prometheus text format.
+	 *
+	 * @param out output
+	 * @throws IOException write error
+	 */
+	public void writePrometheus(final Appendable out) throws IOException {
+		var sorted = new TreeMap<>(metrics);
+		writeSummary(out, sorted, "uroborosql_sql_duration_seconds",
+				"SQL execution time from statement creation to execution.", SqlMetrics::getLatency, 1e-9);
+		writeCounter(out, sorted, "uroborosql_sql_rows_returned_total", "Rows read from the result sets.",
+				SqlMetrics::getRowsReturnedHistogram);
+		writeCounter(out, sorted, "uroborosql_sql_rows_affected_total", "Rows inserted, updated or deleted.",
+				SqlMetrics::getRowsAffectedHistogram);
+		writeSummary(out, sorted, "uroborosql_sql_batch_size", "Statements per executed batch.",
+				SqlMetrics::getBatchSizeHistogram, 1.0);
+	}
+
+	@Override
+	public void close() {
+		if (writer != null) {
+			writer.shutdownNow();
+			writePrometheusFile();
+		}
+		if (jmxEnabled) {
+			var server = ManagementFactory.getPlatformMBeanServer();
+			for (var key : metrics.keySet()) {
+				try {
+					var name = objectName(key);
+					if (server.isRegistered(name)) {
+						server.unregisterMBean(name);
+					}
+				} catch (JMException ex) {
+					LOG.debug("Failed to unregister MXBean. sql={}", key, ex);
+				}
+			}
+		}
+	}
+
+	private void afterCreatePreparedStatement(final AfterCreatePreparedStatementEvent evt) {
+		var timer = timers.get();
+		timer.context = evt.getExecutionContext();
+		timer.createdNanos = System.nanoTime();
+		timer.lastNanos = timer.createdNanos;
+	}
+
+	private void afterSqlQuery(final AfterSqlQueryEvent evt) {
+		var ctx = evt.getExecutionContext();
+		var m = record(ctx);
+		timers.get().context = null;
+		var rs = evt.getResultSet();
+		evt.setResultSet((ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, new RowCountingHandler(rs, m)));
+	}
+
+	private void afterSqlUpdate(final AfterSqlUpdateEvent evt) {
+		record(evt.getExecutionContext()).getRowsAffectedHistogram().record(evt.getCount());
+	}
+
+	private void afterSqlBatch(final AfterSqlBatchEvent evt) {
+		var m = record(evt.getExecutionContext());
+		var counts = evt.getCounts();
+		var affected = 0L;
+		for (var count : counts) {
+			// Statement.SUCCESS_NO_INFO is negative
+			affected += Math.max(count, 0);
+		}
+		m.getRowsAffectedHistogram().record(affected);
+		m.getBatchSizeHistogram().record(counts.length);
+	}
+
+	private void afterEntity(final String operation, final EntityEvent evt) {
+		var m = metrics("entity:" + operation + ":" + evt.getEntityType().getSimpleName());
+		var timer = timers.get();
+		// the latency is only known when the last statement created on this thread is the one of the operation
+		if (timer.context != null && timer.context == evt.getExecutionContext()) {
+			m.getLatency().record(System.nanoTime() - timer.createdNanos);
+		}
+		timer.context = null;
+		m.getRowsAffectedHistogram().record(evt.getCount());
+	}
+
+	private SqlMetrics record(final ExecutionContext ctx) {
+		var m = metrics(keyOf(ctx));
+		var timer = timers.get();
+		if (timer.context == ctx) {
+			// a batch statement is executed several times. each execution is measured from the previous one.
+			var now = System.nanoTime();
+			m.getLatency().record(now - timer.lastNanos);
+			timer.lastNanos = now;
+		}
+		return m;
+	}
+
+	private String keyOf(final ExecutionContext ctx) {
+		if (ctx.getSqlName() != null) {
+			return ctx.getSqlName();
+		} else if (ctx.getSqlId() != null) {
+			return ctx.getSqlId();
+		}
+		var sql = ctx.getSql();
+		if (sql == null) {
+			return "unknown";
+		}
+		var key = keysBySql.get(sql);
+		if (key == null) {
+			var tables = SqlTables.tables(sql);
+			key = SqlTables.operation(sql) + ":" + (tables.isEmpty() ? "" : tables.iterator().next());
+			if (keysBySql.size() < MAX_CACHED_KEYS) {
+				keysBySql.put(sql, key);
+			}
+		}
+		return key;
+	}
+
+	private SqlMetrics metrics(final String key) {
+		var m = metrics.get(key);
+		if (m == null) {
+			m = metrics.computeIfAbsent(key, k -> {
+				var created = new SqlMetrics(k);
+				register(created);
+				return created;
+			});
+		}
+		return m;
+	}
+
+	private void register(final SqlMetrics m) {
+		if (!jmxEnabled) {
+			return;
+		}
+		try {
+			var server = ManagementFactory.getPlatformMBeanServer();
+			var name = objectName(m.getName());
+			if (!server.isRegistered(name)) {
+				server.registerMBean(m, name);
+			}
+		} catch (JMException ex) {
+			LOG.warn("Failed to register MXBean. sql={}", m.getName(), ex);
+		}
+	}
+
+	private ObjectName objectName(final String key) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=SqlMetrics,subscriber=" + ObjectName.quote(subscriberName)
+				+ ",sql=" + ObjectName.quote(key));
+	}
+
+	private void writePrometheusFile() {
+		try {
+			var sb = new StringBuilder();
+			writePrometheus(sb);
+			var tmp = prometheusFile.resolveSibling(prometheusFile.getFileName() + ".tmp");
+			if (prometheusFile.getParent() != null) {
+				Files.createDirectories(prometheusFile.getParent());
+			}
+			Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+			Files.move(tmp, prometheusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | UncheckedIOException ex) {
+			LOG.warn("Failed to write metrics. file={}", prometheusFile, ex);
+		}
+	}
+
+	private static void writeSummary(final Appendable out, final Map<String, SqlMetrics> sorted, final String name,
+			final String help, final Function<SqlMetrics, LogLinearHistogram> histogram,
+			final double scale) throws IOException {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" summary\n");
+		for (var entry : sorted.entrySet()) {
+			var h = histogram.apply(entry.getValue());
+			if (h.getCount() == 0) {
+				continue;
+			}
+			var label = "sql=\"" + escape(entry.getKey()) + "\"";
+			for (var q : QUANTILES) {
+				out.append(name).append('{').append(label).append(",quantile=\"").append(String.valueOf(q))
+						.append("\"} ").append(format(h.getValueAtPercentile(q * 100.0) * scale)).append('\n');
+			}
+			out.append(name).append("_sum{").append(label).append("} ").append(format(h.getSum() * scale))
+					.append('\n');
+			out.append(name).append("_count{").append(label).append("} ").append(String.valueOf(h.getCount()))
+					.append('\n');
+		}
+	}
+
+	private static void writeCounter(final Appendable out, final Map<String, SqlMetrics> sorted, final String name,
+			final String help, final Function<SqlMetrics, LogLinearHistogram> histogram)
+			throws IOException {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		for (var entry : sorted.entrySet()) {
+			var h = histogram.apply(entry.getValue());
+			if (h.getCount() == 0) {
+				continue;
+			}
+			out.append(name).append("{sql=\"").append(escape(entry.getKey())).append("\"} ")
+					.append(String.valueOf(h.getSum())).append('\n');
+		}
+	}
+
+	private static String escape(final String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String format(final double value) {
+		return String.format(Locale.ROOT, "%.9g", value);
+	}
+
+	/**
+	 * Counts the rows read by the caller. A scrollable ResultSet may be read again from the start (e.g. after
+	 * <code>beforeFirst()</code>), so the highest row reached is recorded, once.
+	 */
+	private static final class RowCountingHandler implements InvocationHandler {
+		private final ResultSet rs;
+		private final SqlMetrics metrics;
+		private long row = 0L;
+		private long maxRow = 0L;
+		private boolean recorded = false;
+
+		private RowCountingHandler(final ResultSet rs, final SqlMetrics metrics) {
+			this.rs = rs;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			var name = method.getName();
+			if ("close".equals(name)) {
+				recordRows();
+			}
+			Object result;
+			try {
+				result = method.invoke(rs, args);
+			} catch (InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+			switch (name) {
+			case "next":
+				if ((Boolean) result) {
+					row++;
+					maxRow = Math.max(maxRow, row);
+				} else {
+					recordRows();
+				}
+				break;
+			case "beforeFirst":
+				row = 0L;
+				break;
+			case "first":
+			case "last":
+			case "absolute":
+			case "relative":
+			case "previous":
+			case "afterLast":
+				// the caller moved the cursor itself, so the position is known without moving it again
+				row = Math.max(rs.getRow(), 0);
+				maxRow = Math.max(maxRow, row);
+				break;
+			default:
+				break;
+			}
+			return result;
+		}
+
+		private void recordRows() {
+			if (!recorded) {
+				recorded = true;
+				metrics.getRowsReturnedHistogram().record(maxRow);
+			}
+		}
+	}
+
+	/**
+	 * Last PreparedStatement created on the thread.
+	 */
+	private static final class Timer {
+		private ExecutionContext context;
+		private long createdNanos;
+		private long lastNanos;
+	}
+}
@@ -0,0 +1,38 @@
+package jp.co.future.uroborosql.sample.export;
+
+/**
+ * Type of a column of the columnar file.
+ */
+public enum ColumnType {
+	/** integral numbers. delta and zigzag varint encoded. */
+	LONG(1),
+	/** floating point numbers. 8 bytes per value. */
+	DOUBLE(2),
+	/** booleans. 1 bit per value. */
+	BOOLEAN(3),
+	/** strings. dictionary encoded when it is smaller (e.g. codes and enums), plain UTF-8 otherwise. */
+	STRING(4),
+	/** {@link java.time.LocalDate}. the epoch day is delta and zigzag varint encoded. */
+	DATE(5),
+	/** {@link java.time.LocalDateTime}. microseconds from 1970-01-01T00:00, delta and zigzag varint encoded. */
+	TIMESTAMP(6);
+
+	private final int id;
+
+	ColumnType(final int id) {
+		this.id = id;
+	}
+
+	int getId() {
+		return id;
+	}
+
+	static ColumnType of(final int id) {
+		for (var type : values()) {
+			if (type.id == id) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unknown column type. id=" + id);
+	}
+}
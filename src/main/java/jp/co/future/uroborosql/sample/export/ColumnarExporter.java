@@ -0,0 +1,204 @@
+package jp.co.future.uroborosql.sample.export;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.exception.UroborosqlSQLException;
+import jp.co.future.uroborosql.fluent.SqlQuery;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+import jp.co.future.uroborosql.sample.query.StreamingQuery;
+
+/**
+ * Exports query results to columnar files ({@link ColumnarWriter}).
+ * <p>
+ * The rows are read with a forward-only ResultSet ({@link StreamingQuery}) and written by row groups, so the memory
+ * used does not depend on the number of rows. The values are taken from the ResultSet or the entity fields as they
+ * are and encoded by type, without formatting them as text.
+ * <p>
+ * The files are written in the UCOL format of this sample ({@link ColumnarWriter}), which is only read by
+ * {@link ColumnarReader}; Parquet or Arrow tools can not open them. Use a Parquet or Arrow writer instead for dumps
+ * that are loaded into analytics tools.
+ *
+ * <pre>
+ * var exporter = new ColumnarExporter(agent);
+ * exporter.export(Employee.class, Paths.get("target/export/employee.ucol"));
+ * var female = agent.query("employee/select_employee").param("female", true);
+ * exporter.export(female, Paths.get("target/export/female.ucol"));
+ * </pre>
+ */
+public class ColumnarExporter {
+	private final SqlAgent agent;
+	private int rowGroupSize = 65_536;
+	private int fetchSize = 1000;
+	private boolean compression = true;
+
+	public ColumnarExporter(final SqlAgent agent) {
+		this.agent = agent;
+	}
+
+	/**
+	 * Set the number of rows per row group. default is 65536.
+	 *
+	 * @param rowGroupSize rows per row group
+	 * @return ColumnarExporter
+	 */
+	public ColumnarExporter setRowGroupSize(final int rowGroupSize) {
+		if (rowGroupSize < 1) {
+			throw new IllegalArgumentException("rowGroupSize must be positive. rowGroupSize=" + rowGroupSize);
+		}
+		this.rowGroupSize = rowGroupSize;
+		return this;
+	}
+
+	/**
+	 * Set the fetch size of the queries. default is 1000.
+	 *
+	 * @param fetchSize fetch size
+	 * @return ColumnarExporter
+	 */
+	public ColumnarExporter setFetchSize(final int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("fetchSize must be greater than 0.");
+		}
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Set whether the chunks are deflated. default is <code>true</code>.
+	 *
+	 * @param compression deflate the chunks when that makes them smaller
+	 * @return ColumnarExporter
+	 */
+	public ColumnarExporter setCompression(final boolean compression) {
+		this.compression = compression;
+		return this;
+	}
+
+	/**
+	 * Export the rows of the query. The columns are named by their labels in camel case and typed by the
+	 * ResultSetMetaData (see {@link ColumnarSchema#of(java.sql.ResultSetMetaData)}), also when the query returns no
+	 * rows.
+	 *
+	 * @param query query (e.g. <code>agent.query("employee/select_employee")</code>)
+	 * @param file file to write
+	 * @return number of rows
+	 */
+	public long export(final SqlQuery query, final Path file) {
+		try (var rs = new StreamingQuery(agent).setFetchSize(fetchSize).resultSet(query)) {
+			// the schema is read before the first row, so a query without rows is exported with its columns
+			var reader = new RowReader(ColumnarSchema.of(rs.getMetaData()));
+			try (var writer = open(file, reader.schema)) {
+				while (rs.next()) {
+					writer.write(reader.read(rs));
+				}
+				return writer.getRowCount();
+			}
+		} catch (SQLException ex) {
+			throw new UroborosqlSQLException(ex);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Export all rows of the entity table.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param file file to write
+	 * @return number of rows
+	 */
+	public <E> long export(final Class<E> entityType, final Path file) {
+		try (var entities = new StreamingQuery(agent).setFetchSize(fetchSize).stream(entityType)) {
+			return export(entityType, entities, file);
+		}
+	}
+
+	/**
+	 * Export the entities. The columns are named by the property names (see {@link ColumnarSchema#of(Class)}).
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param entities entities (e.g. <code>agent.query(Employee.class).equal(...).stream()</code>)
+	 * @param file file to write
+	 * @return number of rows
+	 */
+	public <E> long export(final Class<E> entityType, final Stream<E> entities, final Path file) {
+		var columns = EntityMetadata.of(entityType).getColumns();
+		try (var writer = open(file, ColumnarSchema.of(entityType))) {
+			var it = entities.iterator();
+			var values = new Object[columns.size()];
+			while (it.hasNext()) {
+				var entity = it.next();
+				for (var i = 0; i < values.length; i++) {
+					values[i] = columns.get(i).getValue(entity);
+				}
+				writer.write(values);
+			}
+			return writer.getRowCount();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private ColumnarWriter open(final Path file, final ColumnarSchema schema) throws IOException {
+		var parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		return new ColumnarWriter(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024), schema,
+				rowGroupSize, compression);
+	}
+
+	/**
+	 * Reads the values of a row with the getter of the column type.
+	 */
+	private static final class RowReader {
+		private final ColumnarSchema schema;
+
+		private RowReader(final ColumnarSchema schema) {
+			this.schema = schema;
+		}
+
+		private Object[] read(final ResultSet rs) throws SQLException {
+			var values = new Object[schema.size()];
+			for (var i = 0; i < values.length; i++) {
+				var column = i + 1;
+				switch (schema.getType(i)) {
+				case LONG:
+					var longValue = rs.getLong(column);
+					values[i] = rs.wasNull() ? null : longValue;
+					break;
+				case DOUBLE:
+					var doubleValue = rs.getDouble(column);
+					values[i] = rs.wasNull() ? null : doubleValue;
+					break;
+				case BOOLEAN:
+					var booleanValue = rs.getBoolean(column);
+					values[i] = rs.wasNull() ? null : booleanValue;
+					break;
+				case DATE:
+					values[i] = rs.getObject(column, LocalDate.class);
+					break;
+				case TIMESTAMP:
+					values[i] = rs.getObject(column, LocalDateTime.class);
+					break;
+				default:
+					values[i] = rs.getString(column);
+					break;
+				}
+			}
+			return values;
+		}
+	}
+}
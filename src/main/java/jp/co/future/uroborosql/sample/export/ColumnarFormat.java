@@ -0,0 +1,164 @@
+package jp.co.future.uroborosql.sample.export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Constants and primitive encodings of the columnar file, shared by {@link ColumnarWriter} and
+ * {@link ColumnarReader}.
+ */
+final class ColumnarFormat {
+	static final byte[] MAGIC = "UCOL".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+
+	/** values one after another */
+	static final int ENCODING_PLAIN = 0;
+	/** zigzag varint of the difference from the previous value */
+	static final int ENCODING_DELTA = 1;
+	/** distinct values followed by the varint index of each value */
+	static final int ENCODING_DICTIONARY = 2;
+
+	/** the chunk is deflated */
+	static final int FLAG_DEFLATED = 1;
+
+	private ColumnarFormat() {
+	}
+
+	static long zigzag(final long value) {
+		return value << 1 ^ value >> 63;
+	}
+
+	static long unzigzag(final long value) {
+		return value >>> 1 ^ -(value & 1);
+	}
+
+	static int varLongSize(final long value) {
+		var size = 1;
+		var v = value;
+		while ((v & ~0x7FL) != 0) {
+			v >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Growable byte array.
+	 */
+	static final class Output {
+		private byte[] bytes;
+		private int size = 0;
+
+		Output(final int capacity) {
+			this.bytes = new byte[Math.max(16, capacity)];
+		}
+
+		void write(final int b) {
+			ensure(1);
+			bytes[size++] = (byte) b;
+		}
+
+		void write(final byte[] b, final int offset, final int length) {
+			ensure(length);
+			System.arraycopy(b, offset, bytes, size, length);
+			size += length;
+		}
+
+		void writeVarLong(final long value) {
+			ensure(10);
+			var v = value;
+			while ((v & ~0x7FL) != 0) {
+				bytes[size++] = (byte) (v & 0x7F | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		void writeLong(final long value) {
+			ensure(8);
+			for (var shift = 56; shift >= 0; shift -= 8) {
+				bytes[size++] = (byte) (value >>> shift);
+			}
+		}
+
+		void writeBytes(final byte[] b) {
+			writeVarLong(b.length);
+			write(b, 0, b.length);
+		}
+
+		byte[] array() {
+			return bytes;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void reset() {
+			size = 0;
+		}
+
+		private void ensure(final int length) {
+			if (size + length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+			}
+		}
+	}
+
+	/**
+	 * Reads a byte array.
+	 */
+	static final class Input {
+		private final byte[] bytes;
+		private int position = 0;
+
+		Input(final byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		int read() {
+			if (position >= bytes.length) {
+				throw new IllegalStateException("Unexpected end of data.");
+			}
+			return bytes[position++] & 0xFF;
+		}
+
+		long readVarLong() {
+			var value = 0L;
+			for (var shift = 0; shift < 64; shift += 7) {
+				var b = read();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalStateException("Malformed varint.");
+		}
+
+		int readVarInt() {
+			return Math.toIntExact(readVarLong());
+		}
+
+		long readLong() {
+			var value = 0L;
+			for (var i = 0; i < 8; i++) {
+				value = value << 8 | read();
+			}
+			return value;
+		}
+
+		byte[] readBytes() {
+			var length = readVarInt();
+			if (length > bytes.length - position) {
+				throw new IllegalStateException("Unexpected end of data.");
+			}
+			var b = Arrays.copyOfRange(bytes, position, position + length);
+			position += length;
+			return b;
+		}
+
+		String readString() {
+			return new String(readBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package jp.co.future.uroborosql.sample.export;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import jp.co.future.uroborosql.sample.export.ColumnarFormat.Input;
+
+/**
+ * Reads a file written by {@link ColumnarWriter}.
+ * <p>
+ * The footer is read when the file is opened. The rows are read one row group at a time, and only the chunks of the
+ * requested columns are read from the file.
+ *
+ * <pre>
+ * try (var reader = ColumnarReader.open(file); var rows = reader.rows("gender")) {
+ * 	rows.forEach(row -&gt; ...); // row[0] is the gender
+ * }
+ * </pre>
+ */
+public class ColumnarReader implements AutoCloseable {
+	private final FileChannel channel;
+	private final ColumnarSchema schema;
+	/** rowCount, then offset and length of each chunk, per row group */
+	private final List<long[]> rowGroups;
+
+	private ColumnarReader(final FileChannel channel, final ColumnarSchema schema, final List<long[]> rowGroups) {
+		this.channel = channel;
+		this.schema = schema;
+		this.rowGroups = rowGroups;
+	}
+
+	/**
+	 * Open the file and read its footer.
+	 *
+	 * @param file columnar file
+	 * @return ColumnarReader
+	 * @throws IOException I/O error or not a columnar file
+	 */
+	public static ColumnarReader open(final Path file) throws IOException {
+		var channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			var magicLength = ColumnarFormat.MAGIC.length;
+			var size = channel.size();
+			if (size < magicLength * 2 + 5) {
+				throw new IOException("Not a columnar file. file=" + file);
+			}
+			var head = read(channel, 0, magicLength + 1);
+			var tail = read(channel, size - magicLength - 4, magicLength + 4);
+			if (!Arrays.equals(Arrays.copyOf(head, magicLength), ColumnarFormat.MAGIC)
+					|| !Arrays.equals(Arrays.copyOfRange(tail, 4, 4 + magicLength), ColumnarFormat.MAGIC)) {
+				throw new IOException("Not a columnar file. file=" + file);
+			}
+			if (head[magicLength] != ColumnarFormat.VERSION) {
+				throw new IOException("Unsupported version. version=" + head[magicLength] + ", file=" + file);
+			}
+			var footerLength = ByteBuffer.wrap(tail, 0, 4).getInt();
+			var footer = new Input(read(channel, size - magicLength - 4 - footerLength, footerLength));
+
+			var schema = new ColumnarSchema();
+			var columnCount = footer.readVarInt();
+			for (var i = 0; i < columnCount; i++) {
+				schema.add(footer.readString(), ColumnType.of(footer.read()));
+			}
+			var groupCount = footer.readVarInt();
+			List<long[]> rowGroups = new ArrayList<>(groupCount);
+			for (var g = 0; g < groupCount; g++) {
+				var group = new long[1 + columnCount * 2];
+				for (var i = 0; i < group.length; i++) {
+					group[i] = footer.readVarLong();
+				}
+				rowGroups.add(group);
+			}
+			return new ColumnarReader(channel, schema, Collections.unmodifiableList(rowGroups));
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	public ColumnarSchema getSchema() {
+		return schema;
+	}
+
+	public int getRowGroupCount() {
+		return rowGroups.size();
+	}
+
+	/**
+	 * @return number of rows
+	 */
+	public long getRowCount() {
+		return rowGroups.stream().mapToLong(g -> g[0]).sum();
+	}
+
+	/**
+	 * Stream the rows.
+	 *
+	 * @param columnNames columns to read. all columns when none are specified.
+	 * @return rows with the values of the columns in the order of <code>columnNames</code>.
+	 *         <code>Long</code>, <code>Double</code>, <code>Boolean</code>, <code>String</code>,
+	 *         <code>LocalDate</code> or <code>LocalDateTime</code> by the column type.
+	 */
+	public Stream<Object[]> rows(final String... columnNames) {
+		var names = columnNames.length == 0 ? schema.getNames() : Arrays.asList(columnNames);
+		var indexes = new int[names.size()];
+		for (var i = 0; i < indexes.length; i++) {
+			indexes[i] = schema.getNames().indexOf(names.get(i));
+			if (indexes[i] < 0) {
+				throw new IllegalArgumentException("Unknown column. column=" + names.get(i));
+			}
+		}
+		var iterator = new Iterator<Object[]>() {
+			private int group = 0;
+			private Object[][] values;
+			private int row = 0;
+			private int rows = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (row == rows && group < rowGroups.size()) {
+					values = readRowGroup(rowGroups.get(group++), indexes);
+					rows = values.length == 0 ? 0 : values[0].length;
+					row = 0;
+				}
+				return row < rows;
+			}
+
+			@Override
+			public Object[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				var result = new Object[values.length];
+				for (var i = 0; i < values.length; i++) {
+					result[i] = values[i][row];
+				}
+				row++;
+				return result;
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private Object[][] readRowGroup(final long[] group, final int[] indexes) {
+		var rows = Math.toIntExact(group[0]);
+		var values = new Object[indexes.length][];
+		try {
+			for (var i = 0; i < indexes.length; i++) {
+				var column = indexes[i];
+				var chunk = read(channel, group[1 + column * 2], Math.toIntExact(group[2 + column * 2]));
+				values[i] = decode(chunk, schema.getType(column), rows);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return values;
+	}
+
+	private static Object[] decode(final byte[] chunk, final ColumnType type, final int rows) throws IOException {
+		var header = new Input(chunk);
+		var encoding = header.read();
+		var flags = header.read();
+		var rawLength = header.readVarInt();
+		var storedLength = header.readVarInt();
+		var data = Arrays.copyOfRange(chunk, chunk.length - storedLength, chunk.length);
+		if ((flags & ColumnarFormat.FLAG_DEFLATED) != 0) {
+			data = inflate(data, rawLength);
+		}
+
+		var in = new Input(data);
+		var nulls = in.read() == 1 ? readBitmap(in, rows) : new boolean[rows];
+		var values = new Object[rows];
+		switch (type) {
+		case LONG:
+		case DATE:
+		case TIMESTAMP:
+			var previous = 0L;
+			for (var i = 0; i < rows; i++) {
+				if (!nulls[i]) {
+					previous += ColumnarFormat.unzigzag(in.readVarLong());
+					values[i] = toValue(type, previous);
+				}
+			}
+			break;
+		case DOUBLE:
+			for (var i = 0; i < rows; i++) {
+				if (!nulls[i]) {
+					values[i] = Double.longBitsToDouble(in.readLong());
+				}
+			}
+			break;
+		case BOOLEAN:
+			var count = 0;
+			for (var isNull : nulls) {
+				count += isNull ? 0 : 1;
+			}
+			var bits = readBitmap(in, count);
+			for (int i = 0, j = 0; i < rows; i++) {
+				if (!nulls[i]) {
+					values[i] = bits[j++];
+				}
+			}
+			break;
+		default:
+			String[] dictionary = null;
+			if (encoding == ColumnarFormat.ENCODING_DICTIONARY) {
+				dictionary = new String[in.readVarInt()];
+				for (var i = 0; i < dictionary.length; i++) {
+					dictionary[i] = in.readString();
+				}
+			}
+			for (var i = 0; i < rows; i++) {
+				if (!nulls[i]) {
+					values[i] = dictionary != null ? dictionary[in.readVarInt()] : in.readString();
+				}
+			}
+			break;
+		}
+		return values;
+	}
+
+	private static Object toValue(final ColumnType type, final long value) {
+		switch (type) {
+		case DATE:
+			return LocalDate.ofEpochDay(value);
+		case TIMESTAMP:
+			return LocalDateTime.ofEpochSecond(Math.floorDiv(value, 1_000_000L),
+					(int) Math.floorMod(value, 1_000_000L) * 1_000, ZoneOffset.UTC);
+		default:
+			return value;
+		}
+	}
+
+	private static boolean[] readBitmap(final Input in, final int length) {
+		var bits = new boolean[length];
+		for (var i = 0; i < length; i += 8) {
+			var b = in.read();
+			for (var j = 0; j < 8 && i + j < length; j++) {
+				bits[i + j] = (b & 1 << j) != 0;
+			}
+		}
+		return bits;
+	}
+
+	private static byte[] inflate(final byte[] data, final int length) throws IOException {
+		var inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			var result = new byte[length];
+			var size = 0;
+			while (size < length && !inflater.finished()) {
+				var n = inflater.inflate(result, size, length - size);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				size += n;
+			}
+			if (size != length) {
+				throw new IOException("Corrupted chunk. expected=" + length + ", actual=" + size);
+			}
+			return result;
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupted chunk.", ex);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static byte[] read(final FileChannel channel, final long position, final int length) throws IOException {
+		var buffer = ByteBuffer.allocate(length);
+		var offset = position;
+		while (buffer.hasRemaining()) {
+			var n = channel.read(buffer, offset);
+			if (n < 0) {
+				throw new IOException("Unexpected end of file.");
+			}
+			offset += n;
+		}
+		return buffer.array();
+	}
+}
@@ -0,0 +1,147 @@
+package jp.co.future.uroborosql.sample.export;
+
+import java.math.BigDecimal;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+import jp.co.future.uroborosql.utils.CaseFormat;
+
+/**
+ * Names and types of the columns of a columnar file.
+ */
+public class ColumnarSchema {
+	private final List<String> names = new ArrayList<>();
+	private final List<ColumnType> types = new ArrayList<>();
+
+	/**
+	 * Schema of the mapped fields of the entity, named by their property names.
+	 * <ul>
+	 * <li>integral numbers: {@link ColumnType#LONG}</li>
+	 * <li><code>float</code> and <code>double</code>: {@link ColumnType#DOUBLE}</li>
+	 * <li><code>boolean</code>: {@link ColumnType#BOOLEAN}</li>
+	 * <li>{@link LocalDate}: {@link ColumnType#DATE}, {@link LocalDateTime}: {@link ColumnType#TIMESTAMP}</li>
+	 * <li>others, including enums (by name) and {@link BigDecimal}: {@link ColumnType#STRING}</li>
+	 * </ul>
+	 *
+	 * @param entityType entity class
+	 * @return schema
+	 */
+	public static ColumnarSchema of(final Class<?> entityType) {
+		var schema = new ColumnarSchema();
+		for (var column : EntityMetadata.of(entityType).getColumns()) {
+			schema.add(column.getName(), typeOf(column.getType()));
+		}
+		return schema;
+	}
+
+	/**
+	 * Schema of the columns of a ResultSet, named by their labels in camel case.
+	 *
+	 * @param metaData ResultSetMetaData
+	 * @return schema
+	 * @throws SQLException SQL error
+	 */
+	public static ColumnarSchema of(final ResultSetMetaData metaData) throws SQLException {
+		var schema = new ColumnarSchema();
+		for (var i = 1; i <= metaData.getColumnCount(); i++) {
+			schema.add(CaseFormat.CAMEL_CASE.convert(metaData.getColumnLabel(i)), typeOf(metaData, i));
+		}
+		return schema;
+	}
+
+	/**
+	 * Add a column.
+	 *
+	 * @param name column name
+	 * @param type column type
+	 * @return ColumnarSchema
+	 */
+	public ColumnarSchema add(final String name, final ColumnType type) {
+		if (name == null || name.isEmpty() || type == null) {
+			throw new IllegalArgumentException("name and type must be specified. name=" + name + ", type=" + type);
+		}
+		if (names.contains(name)) {
+			throw new IllegalArgumentException("Duplicate column name. name=" + name);
+		}
+		names.add(name);
+		types.add(type);
+		return this;
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	public List<String> getNames() {
+		return Collections.unmodifiableList(names);
+	}
+
+	public String getName(final int index) {
+		return names.get(index);
+	}
+
+	public ColumnType getType(final int index) {
+		return types.get(index);
+	}
+
+	@Override
+	public String toString() {
+		var text = new StringBuilder("ColumnarSchema [");
+		for (var i = 0; i < names.size(); i++) {
+			text.append(i == 0 ? "" : ", ").append(names.get(i)).append(":").append(types.get(i));
+		}
+		return text.append("]").toString();
+	}
+
+	private static ColumnType typeOf(final Class<?> type) {
+		if (type == long.class || type == int.class || type == short.class || type == byte.class
+				|| type == Long.class || type == Integer.class || type == Short.class || type == Byte.class) {
+			return ColumnType.LONG;
+		} else if (type == double.class || type == float.class || type == Double.class || type == Float.class) {
+			return ColumnType.DOUBLE;
+		} else if (type == boolean.class || type == Boolean.class) {
+			return ColumnType.BOOLEAN;
+		} else if (type == LocalDate.class) {
+			return ColumnType.DATE;
+		} else if (type == LocalDateTime.class) {
+			return ColumnType.TIMESTAMP;
+		} else {
+			return ColumnType.STRING;
+		}
+	}
+
+	private static ColumnType typeOf(final ResultSetMetaData metaData, final int column) throws SQLException {
+		switch (metaData.getColumnType(column)) {
+		case Types.BIGINT:
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return ColumnType.LONG;
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			// exact decimals are kept as text
+			return metaData.getScale(column) == 0 && metaData.getPrecision(column) <= 18 ? ColumnType.LONG
+					: ColumnType.STRING;
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+			return ColumnType.DOUBLE;
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return ColumnType.BOOLEAN;
+		case Types.DATE:
+			return ColumnType.DATE;
+		case Types.TIMESTAMP:
+			return ColumnType.TIMESTAMP;
+		default:
+			return ColumnType.STRING;
+		}
+	}
+}
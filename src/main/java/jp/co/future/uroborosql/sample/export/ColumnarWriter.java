@@ -0,0 +1,395 @@
+package jp.co.future.uroborosql.sample.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import jp.co.future.uroborosql.sample.export.ColumnarFormat.Output;
+
+/**
+ * Writes rows to a columnar file.
+ * <p>
+ * The rows are buffered by column up to the row group size, then each column of the group is encoded and written as
+ * a chunk, so the memory used does not depend on the number of rows. The values of a chunk are encoded by type
+ * (see {@link ColumnType}) and the chunk is deflated when that makes it smaller. The footer holds the schema and the
+ * offset of every chunk, so a reader can read only the columns it needs.
+ *
+ * <pre>
+ * file      = "UCOL" version(1 byte) chunk* footer footerLength(4 bytes) "UCOL"
+ * chunk     = encoding(1 byte) flags(1 byte) rawLength(varint) storedLength(varint) data
+ * data      = nulls values           (deflated when flags has 1)
+ * nulls     = 0 | 1 bitmap           (bit set for a null, values are written for non-null rows only)
+ * footer    = columnCount(varint) (name(varint length, UTF-8) type(1 byte))*
+ *             rowGroupCount(varint) (rowCount(varint) (offset(varint) length(varint))* )*
+ * </pre>
+ *
+ * <pre>
+ * try (var writer = new ColumnarWriter(Files.newOutputStream(file), ColumnarSchema.of(Employee.class))) {
+ * 	writer.write(1L, "Bob", "Smith", LocalDate.of(1970, 1, 2), Gender.MALE, 0L);
+ * }
+ * </pre>
+ */
+public class ColumnarWriter implements AutoCloseable {
+	private final OutputStream out;
+	private final ColumnarSchema schema;
+	private final int rowGroupSize;
+	private final ColumnBuffer[] columns;
+	private final Output encoded = new Output(64 * 1024);
+	private final Deflater deflater;
+	private final List<long[]> rowGroups = new ArrayList<>();
+	private byte[] deflated = new byte[64 * 1024];
+	private long position = 0L;
+	private int rows = 0;
+	private long rowCount = 0L;
+	private boolean closed = false;
+
+	/**
+	 * Create a writer with 65536 rows per row group and compression.
+	 *
+	 * @param out output. closed by {@link #close()}.
+	 * @param schema schema
+	 * @throws IOException I/O error
+	 */
+	public ColumnarWriter(final OutputStream out, final ColumnarSchema schema) throws IOException {
+		this(out, schema, 65_536, true);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out output. closed by {@link #close()}.
+	 * @param schema schema
+	 * @param rowGroupSize rows per row group
+	 * @param compression deflate the chunks when that makes them smaller
+	 * @throws IOException I/O error
+	 */
+	public ColumnarWriter(final OutputStream out, final ColumnarSchema schema, final int rowGroupSize,
+			final boolean compression) throws IOException {
+		if (rowGroupSize < 1) {
+			throw new IllegalArgumentException("rowGroupSize must be positive. rowGroupSize=" + rowGroupSize);
+		}
+		this.out = out;
+		this.schema = schema;
+		this.rowGroupSize = rowGroupSize;
+		this.deflater = compression ? new Deflater(Deflater.BEST_SPEED) : null;
+		this.columns = new ColumnBuffer[schema.size()];
+		for (var i = 0; i < columns.length; i++) {
+			columns[i] = new ColumnBuffer(schema.getName(i), schema.getType(i), rowGroupSize);
+		}
+		write(ColumnarFormat.MAGIC, 0, ColumnarFormat.MAGIC.length);
+		write(new byte[] { ColumnarFormat.VERSION }, 0, 1);
+	}
+
+	/**
+	 * Write a row.
+	 *
+	 * @param values values in the order of the schema. enums are written by name.
+	 * @throws IOException I/O error
+	 */
+	public void write(final Object... values) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("ColumnarWriter is closed.");
+		}
+		if (values.length != columns.length) {
+			throw new IllegalArgumentException("Number of values does not match the schema. expected="
+					+ columns.length + ", actual=" + values.length);
+		}
+		for (var i = 0; i < columns.length; i++) {
+			columns[i].add(values[i]);
+		}
+		rows++;
+		rowCount++;
+		if (rows == rowGroupSize) {
+			flushRowGroup();
+		}
+	}
+
+	/**
+	 * @return number of rows written
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Write the last row group and the footer, and close the output.
+	 *
+	 * @throws IOException I/O error
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (rows > 0) {
+				flushRowGroup();
+			}
+			var footer = new Output(1024);
+			footer.writeVarLong(columns.length);
+			for (var i = 0; i < columns.length; i++) {
+				footer.writeBytes(schema.getName(i).getBytes(StandardCharsets.UTF_8));
+				footer.write(schema.getType(i).getId());
+			}
+			footer.writeVarLong(rowGroups.size());
+			for (var group : rowGroups) {
+				for (var value : group) {
+					footer.writeVarLong(value);
+				}
+			}
+			write(footer.array(), 0, footer.size());
+			var length = footer.size();
+			var lengthBytes = new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+					(byte) length };
+			write(lengthBytes, 0, lengthBytes.length);
+			write(ColumnarFormat.MAGIC, 0, ColumnarFormat.MAGIC.length);
+			out.flush();
+		} finally {
+			if (deflater != null) {
+				deflater.end();
+			}
+			out.close();
+		}
+	}
+
+	private void flushRowGroup() throws IOException {
+		// rowCount, then offset and length of each chunk
+		var group = new long[1 + columns.length * 2];
+		group[0] = rows;
+		for (var i = 0; i < columns.length; i++) {
+			var offset = position;
+			writeChunk(columns[i]);
+			group[1 + i * 2] = offset;
+			group[2 + i * 2] = position - offset;
+			columns[i].clear();
+		}
+		rowGroups.add(group);
+		rows = 0;
+	}
+
+	private void writeChunk(final ColumnBuffer column) throws IOException {
+		encoded.reset();
+		var encoding = column.encode(encoded);
+		var data = encoded.array();
+		var length = encoded.size();
+		var flags = 0;
+		if (deflater != null) {
+			deflater.reset();
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			var size = 0;
+			while (!deflater.finished()) {
+				if (size == deflated.length) {
+					deflated = Arrays.copyOf(deflated, deflated.length * 2);
+				}
+				size += deflater.deflate(deflated, size, deflated.length - size);
+			}
+			if (size < length) {
+				data = deflated;
+				length = size;
+				flags |= ColumnarFormat.FLAG_DEFLATED;
+			}
+		}
+		var header = new Output(24);
+		header.write(encoding);
+		header.write(flags);
+		header.writeVarLong(encoded.size());
+		header.writeVarLong(length);
+		write(header.array(), 0, header.size());
+		write(data, 0, length);
+	}
+
+	private void write(final byte[] b, final int offset, final int length) throws IOException {
+		out.write(b, offset, length);
+		position += length;
+	}
+
+	/**
+	 * Values of one column of the current row group.
+	 */
+	private static final class ColumnBuffer {
+		private final String name;
+		private final ColumnType type;
+		private final boolean[] nulls;
+		private final long[] longs;
+		private final double[] doubles;
+		private final boolean[] booleans;
+		private final String[] strings;
+		private int size = 0;
+		private boolean hasNull = false;
+
+		private ColumnBuffer(final String name, final ColumnType type, final int capacity) {
+			this.name = name;
+			this.type = type;
+			this.nulls = new boolean[capacity];
+			this.longs = type == ColumnType.LONG || type == ColumnType.DATE || type == ColumnType.TIMESTAMP
+					? new long[capacity]
+					: null;
+			this.doubles = type == ColumnType.DOUBLE ? new double[capacity] : null;
+			this.booleans = type == ColumnType.BOOLEAN ? new boolean[capacity] : null;
+			this.strings = type == ColumnType.STRING ? new String[capacity] : null;
+		}
+
+		private void add(final Object value) {
+			if (value == null) {
+				nulls[size++] = true;
+				hasNull = true;
+				return;
+			}
+			nulls[size] = false;
+			try {
+				switch (type) {
+				case LONG:
+					longs[size] = ((Number) value).longValue();
+					break;
+				case DOUBLE:
+					doubles[size] = ((Number) value).doubleValue();
+					break;
+				case BOOLEAN:
+					booleans[size] = (Boolean) value;
+					break;
+				case DATE:
+					longs[size] = (value instanceof Date ? ((Date) value).toLocalDate()
+							: (LocalDate) value).toEpochDay();
+					break;
+				case TIMESTAMP:
+					var dateTime = value instanceof Timestamp
+							? ((Timestamp) value).toLocalDateTime()
+							: (LocalDateTime) value;
+					var seconds = dateTime.toEpochSecond(ZoneOffset.UTC);
+					longs[size] = Math.addExact(Math.multiplyExact(seconds, 1_000_000L), dateTime.getNano() / 1_000);
+					break;
+				default:
+					strings[size] = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+					break;
+				}
+			} catch (ClassCastException ex) {
+				throw new IllegalArgumentException("Value does not match the column type. column=" + name
+						+ ", type=" + type + ", value=" + value.getClass().getName(), ex);
+			}
+			size++;
+		}
+
+		private void clear() {
+			if (strings != null) {
+				Arrays.fill(strings, 0, size, null);
+			}
+			size = 0;
+			hasNull = false;
+		}
+
+		/**
+		 * Write the nulls and the values.
+		 *
+		 * @param out output
+		 * @return encoding
+		 */
+		private int encode(final Output out) {
+			if (hasNull) {
+				out.write(1);
+				writeBitmap(out, nulls);
+			} else {
+				out.write(0);
+			}
+			switch (type) {
+			case LONG:
+			case DATE:
+			case TIMESTAMP:
+				var previous = 0L;
+				for (var i = 0; i < size; i++) {
+					if (!nulls[i]) {
+						out.writeVarLong(ColumnarFormat.zigzag(longs[i] - previous));
+						previous = longs[i];
+					}
+				}
+				return ColumnarFormat.ENCODING_DELTA;
+			case DOUBLE:
+				for (var i = 0; i < size; i++) {
+					if (!nulls[i]) {
+						out.writeLong(Double.doubleToLongBits(doubles[i]));
+					}
+				}
+				return ColumnarFormat.ENCODING_PLAIN;
+			case BOOLEAN:
+				var values = new boolean[size];
+				var count = 0;
+				for (var i = 0; i < size; i++) {
+					if (!nulls[i]) {
+						values[count++] = booleans[i];
+					}
+				}
+				writeBitmap(out, Arrays.copyOf(values, count));
+				return ColumnarFormat.ENCODING_PLAIN;
+			default:
+				return encodeStrings(out);
+			}
+		}
+
+		private int encodeStrings(final Output out) {
+			Map<String, Integer> indexes = new HashMap<>();
+			List<byte[]> dictionary = new ArrayList<>();
+			long plainSize = 0L;
+			long indexSize = 0L;
+			for (var i = 0; i < size; i++) {
+				if (nulls[i]) {
+					continue;
+				}
+				var index = indexes.get(strings[i]);
+				if (index == null) {
+					index = dictionary.size();
+					indexes.put(strings[i], index);
+					dictionary.add(strings[i].getBytes(StandardCharsets.UTF_8));
+				}
+				var length = dictionary.get(index).length;
+				plainSize += ColumnarFormat.varLongSize(length) + length;
+				indexSize += ColumnarFormat.varLongSize(index);
+			}
+			var dictionarySize = ColumnarFormat.varLongSize(dictionary.size()) + indexSize;
+			for (var entry : dictionary) {
+				dictionarySize += ColumnarFormat.varLongSize(entry.length) + entry.length;
+			}
+
+			if (dictionarySize < plainSize) {
+				out.writeVarLong(dictionary.size());
+				dictionary.forEach(out::writeBytes);
+				for (var i = 0; i < size; i++) {
+					if (!nulls[i]) {
+						out.writeVarLong(indexes.get(strings[i]));
+					}
+				}
+				return ColumnarFormat.ENCODING_DICTIONARY;
+			}
+			for (var i = 0; i < size; i++) {
+				if (!nulls[i]) {
+					out.writeBytes(dictionary.get(indexes.get(strings[i])));
+				}
+			}
+			return ColumnarFormat.ENCODING_PLAIN;
+		}
+
+		private void writeBitmap(final Output out, final boolean[] bits) {
+			var length = Math.min(bits.length, size);
+			for (var i = 0; i < length; i += 8) {
+				var b = 0;
+				for (var j = 0; j < 8 && i + j < length; j++) {
+					if (bits[i + j]) {
+						b |= 1 << j;
+					}
+				}
+				out.write(b);
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package jp.co.future.uroborosql.sample.loader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of {@link ParallelTsvLoader#load()}.
+ * <p>
+ * Throughput is reported per table (wall clock time from the first to the last partition of the table)
+ * and per worker (time the worker spent loading partitions).
+ */
+public final class LoadReport {
+	private final List<Entry> tables;
+	private final List<Entry> workers;
+
+	LoadReport(final List<PartitionResult> results) {
+		Map<String, long[]> tableTimes = new LinkedHashMap<>();
+		Map<String, long[]> workerTimes = new LinkedHashMap<>();
+		for (var result : results) {
+			// table : {rows, first start, last end}
+			var table = tableTimes.computeIfAbsent(result.table,
+					k -> new long[] { 0L, Long.MAX_VALUE, Long.MIN_VALUE });
+			table[0] += result.rows;
+			table[1] = Math.min(table[1], result.startNanos);
+			table[2] = Math.max(table[2], result.endNanos);
+
+			// worker : {rows, busy time}
+			var worker = workerTimes.computeIfAbsent(result.worker, k -> new long[2]);
+			worker[0] += result.rows;
+			worker[1] += result.endNanos - result.startNanos;
+		}
+
+		List<Entry> tableEntries = new ArrayList<>();
+		tableTimes.forEach((name, t) -> tableEntries.add(new Entry(name, t[0], t[2] - t[1])));
+		this.tables = Collections.unmodifiableList(tableEntries);
+
+		List<Entry> workerEntries = new ArrayList<>();
+		workerTimes.forEach((name, t) -> workerEntries.add(new Entry(name, t[0], t[1])));
+		this.workers = Collections.unmodifiableList(workerEntries);
+	}
+
+	/**
+	 * Statistics per table.
+	 *
+	 * @return table statistics in load order
+	 */
+	public List<Entry> getTables() {
+		return tables;
+	}
+
+	/**
+	 * Statistics per worker thread.
+	 *
+	 * @return worker statistics
+	 */
+	public List<Entry> getWorkers() {
+		return workers;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadReport [tables=" + tables + ", workers=" + workers + "]";
+	}
+
+	/**
+	 * Rows and elapsed time of a table or a worker.
+	 */
+	public static final class Entry {
+		private final String name;
+		private final long rows;
+		private final long elapsedNanos;
+
+		Entry(final String name, final long rows, final long elapsedNanos) {
+			this.name = name;
+			this.rows = rows;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		}
+
+		public double getRowsPerSecond() {
+			return elapsedNanos > 0 ? rows * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0.0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: rows=%d, elapsed=%dms, rows/s=%.1f", name, rows, getElapsedMillis(),
+					getRowsPerSecond());
+		}
+	}
+
+	/**
+	 * Result of one partition load.
+	 */
+	static final class PartitionResult {
+		final String table;
+		final String worker;
+		final long rows;
+		final long startNanos;
+		final long endNanos;
+
+		PartitionResult(final String table, final String worker, final long rows, final long startNanos,
+				final long endNanos) {
+			this.table = table;
+			this.worker = worker;
+			this.rows = rows;
+			this.startNanos = startNanos;
+			this.endNanos = endNanos;
+		}
+	}
+}
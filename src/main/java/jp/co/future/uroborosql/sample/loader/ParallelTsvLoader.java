@@ -0,0 +1,193 @@
+package jp.co.future.uroborosql.sample.loader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.co.future.uroborosql.config.SqlConfig;
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+import jp.co.future.uroborosql.sample.batch.AdaptiveBatchPolicy;
+
+/**
+ * Parallel bulk loader for TSV files.
+ * <p>
+ * Each file is split into byte ranges (see {@link TsvReader#partitions(Path, int)}) and the ranges are
+ * inserted at the same time by worker threads, each with its own {@link jp.co.future.uroborosql.SqlAgent}
+ * from the same {@link SqlConfig}. A partition is loaded in its own transaction and committed when it is done.
+ * <p>
+ * Targets added by one {@link #addStage(Target...)} call are loaded concurrently, and stages are loaded in the
+ * order they are added. Put tables that reference other tables' keys (e.g. dept_emp) in a later stage.
+ * Note that a generated key is assigned in insert order, which differs from the file order when the file is
+ * split, so key values referenced by a later stage should be present in the file itself.
+ * <p>
+ * When a partition fails, partitions already committed are kept. Load into empty tables so that a failed
+ * load can be cleared and retried.
+ */
+public class ParallelTsvLoader {
+	/** smallest partition worth a worker of its own */
+	private static final long MIN_PARTITION_SIZE = 1024L * 1024L;
+
+	private final SqlConfig config;
+	private final List<List<Target>> stages = new ArrayList<>();
+	private int workerCount = Runtime.getRuntime().availableProcessors();
+	private int batchSize = 1000;
+
+	public ParallelTsvLoader(final SqlConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * Set the number of worker threads. default is the number of available processors.
+	 *
+	 * @param workerCount number of worker threads
+	 * @return ParallelTsvLoader
+	 */
+	public ParallelTsvLoader setWorkerCount(final int workerCount) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("workerCount must be positive. workerCount=" + workerCount);
+		}
+		this.workerCount = workerCount;
+		return this;
+	}
+
+	/**
+	 * Set the maximum number of rows sent in one JDBC batch. default is 1000.
+	 * Each partition adjusts its batch size up to this limit with {@link AdaptiveBatchPolicy}.
+	 *
+	 * @param batchSize maximum rows per batch
+	 * @return ParallelTsvLoader
+	 */
+	public ParallelTsvLoader setBatchSize(final int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive. batchSize=" + batchSize);
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Add targets loaded concurrently after the targets of the previous stages.
+	 *
+	 * @param targets load targets
+	 * @return ParallelTsvLoader
+	 */
+	public ParallelTsvLoader addStage(final Target... targets) {
+		stages.add(Arrays.asList(targets));
+		return this;
+	}
+
+	/**
+	 * Load all stages.
+	 *
+	 * @return rows per second for each table and each worker
+	 */
+	public LoadReport load() {
+		var threadNo = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount, r -> {
+			var thread = new Thread(r, "tsv-loader-" + threadNo.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<LoadReport.PartitionResult> results = new ArrayList<>();
+			for (var stage : stages) {
+				List<Future<LoadReport.PartitionResult>> futures = new ArrayList<>();
+				for (var target : stage) {
+					var bounds = partitions(target.filePath);
+					for (var i = 0; i < bounds.length - 1; i++) {
+						var start = bounds[i];
+						var end = bounds[i + 1];
+						futures.add(executor.submit(() -> loadPartition(target, start, end)));
+					}
+				}
+				results.addAll(await(futures));
+			}
+			return new LoadReport(results);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private long[] partitions(final Path filePath) {
+		try {
+			var size = Files.size(filePath);
+			var count = (int) Math.max(1L, Math.min(workerCount, size / MIN_PARTITION_SIZE));
+			return TsvReader.partitions(filePath, count);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private LoadReport.PartitionResult loadPartition(final Target target, final long start, final long end)
+			throws IOException {
+		var startNanos = System.nanoTime();
+		try (var agent = config.agent();
+				var rows = TsvReader.stream(target.filePath, start, end)) {
+			var policy = new AdaptiveBatchPolicy().setMaxBatchSize(batchSize);
+			int count = agent.required(() -> agent.batch(target.sqlName)
+					.paramStream(rows)
+					.by(policy::test)
+					.count());
+			return new LoadReport.PartitionResult(target.tableName, Thread.currentThread().getName(), count,
+					startNanos, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Wait for all partitions of a stage. The next stage is not started when one of them failed.
+	 */
+	private List<LoadReport.PartitionResult> await(final List<Future<LoadReport.PartitionResult>> futures) {
+		List<LoadReport.PartitionResult> results = new ArrayList<>();
+		RuntimeException failure = null;
+		for (var future : futures) {
+			try {
+				results.add(future.get());
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new UroborosqlRuntimeException(ex);
+			} catch (ExecutionException ex) {
+				if (failure == null) {
+					failure = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause()
+							: new UroborosqlRuntimeException(ex.getCause());
+				} else {
+					failure.addSuppressed(ex.getCause());
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/**
+	 * TSV file and the SQL that inserts one of its rows.
+	 */
+	public static final class Target {
+		private final String tableName;
+		private final String sqlName;
+		private final Path filePath;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param tableName table name used in the report
+		 * @param sqlName insert SQL name. bind parameter names must match the TSV header.
+		 * @param filePath TSV file path
+		 */
+		public Target(final String tableName, final String sqlName, final Path filePath) {
+			this.tableName = tableName;
+			this.sqlName = sqlName;
+			this.filePath = filePath;
+		}
+	}
+}
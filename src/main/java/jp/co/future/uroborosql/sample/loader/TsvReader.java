@@ -0,0 +1,284 @@
+package jp.co.future.uroborosql.sample.loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming reader for TSV files.
+ * <p>
+ * The file is memory-mapped one window at a time and split on TAB bytes without regular expressions,
+ * so only the current window and the current row are held, however large the file is.
+ * The first line of the file is used as the header, and each following line is returned as a Map
+ * keyed by the header names.
+ * <p>
+ * A reader can also be limited to a byte range of the file, see {@link #partitions(Path, int)}.
+ * A range owns every line that starts inside it, so adjacent ranges never share or lose a line.
+ */
+public final class TsvReader implements Iterator<Map<String, Object>>, Closeable {
+	/** default size of the mapped window */
+	private static final int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+
+	private static final byte TAB = '\t';
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final long end;
+	private final String[] header;
+
+	private int windowSize = DEFAULT_WINDOW_SIZE;
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long position;
+	private byte[] fieldBuffer = new byte[256];
+	private Map<String, Object> next;
+
+	private TsvReader(final Path filePath, final long start, final long end) throws IOException {
+		this.channel = FileChannel.open(filePath, StandardOpenOption.READ);
+		try {
+			this.fileSize = channel.size();
+			this.end = Math.min(end, fileSize);
+			this.position = 0L;
+			var headerLine = readLine(fileSize);
+			this.header = headerLine != null ? headerLine : new String[0];
+			if (start >= fileSize) {
+				position = fileSize;
+			} else if (start > position) {
+				// skip the line that belongs to the previous range
+				position = start;
+				ensureMapped(position - 1);
+				if (window.get((int) (position - 1 - windowStart)) != LF) {
+					skipLine();
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Open TSV file as a lazy row stream.
+	 * <p>
+	 * The returned stream should be closed when it is not read to the end.
+	 *
+	 * @param filePath TSV file path.
+	 * @return row stream
+	 * @throws IOException when the file cannot be opened
+	 */
+	public static Stream<Map<String, Object>> stream(final Path filePath) throws IOException {
+		return stream(filePath, 0L, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Open a byte range of TSV file as a lazy row stream.
+	 * <p>
+	 * The header is always read from the top of the file.
+	 *
+	 * @param filePath TSV file path.
+	 * @param start start offset of the range (inclusive)
+	 * @param end end offset of the range (exclusive)
+	 * @return row stream of the lines starting in the range
+	 * @throws IOException when the file cannot be opened
+	 */
+	public static Stream<Map<String, Object>> stream(final Path filePath, final long start, final long end)
+			throws IOException {
+		var reader = new TsvReader(filePath, start, end);
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(reader::close);
+	}
+
+	/**
+	 * Split TSV file into byte ranges of almost equal size.
+	 *
+	 * @param filePath TSV file path.
+	 * @param count number of ranges
+	 * @return range boundaries. range <code>i</code> is <code>[bounds[i], bounds[i + 1])</code>
+	 * @throws IOException when the file size cannot be read
+	 */
+	public static long[] partitions(final Path filePath, final int count) throws IOException {
+		if (count < 1) {
+			throw new IllegalArgumentException("count must be positive. count=" + count);
+		}
+		var size = Files.size(filePath);
+		var bounds = new long[count + 1];
+		for (var i = 0; i <= count; i++) {
+			bounds[i] = size * i / count;
+		}
+		return bounds;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = readRow();
+		}
+		return next != null;
+	}
+
+	@Override
+	public Map<String, Object> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		var row = next;
+		next = null;
+		return row;
+	}
+
+	@Override
+	public void close() {
+		window = null;
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private Map<String, Object> readRow() {
+		try {
+			String[] data;
+			do {
+				data = readLine(end);
+			} while (data != null && data.length == 1 && data[0].isEmpty());
+
+			if (data == null) {
+				close();
+				return null;
+			}
+
+			// initial capacity avoids rehash for the known column count
+			Map<String, Object> row = new HashMap<>(header.length * 4 / 3 + 1);
+			for (var i = 0; i < header.length; i++) {
+				row.put(header[i], i < data.length ? data[i] : null);
+			}
+			return row;
+		} catch (IOException ex) {
+			close();
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Read the line at the current position and split it into fields.
+	 *
+	 * @param limit offset where no more line may start
+	 * @return fields of the line. <code>null</code> when no line starts before the limit.
+	 * @throws IOException I/O error
+	 */
+	private String[] readLine(final long limit) throws IOException {
+		if (position >= limit) {
+			return null;
+		}
+
+		var lineEnd = locateLineEnd();
+		var lineStart = (int) (position - windowStart);
+		var contentEnd = lineEnd >= 0 ? lineEnd : window.limit();
+		position = windowStart + (lineEnd >= 0 ? lineEnd + 1 : window.limit());
+		if (contentEnd > lineStart && window.get(contentEnd - 1) == CR) {
+			contentEnd--;
+		}
+
+		var fieldCount = 1;
+		for (var i = lineStart; i < contentEnd; i++) {
+			if (window.get(i) == TAB) {
+				fieldCount++;
+			}
+		}
+
+		var fields = new String[fieldCount];
+		var fieldStart = lineStart;
+		var index = 0;
+		for (var i = lineStart; i <= contentEnd; i++) {
+			if (i == contentEnd || window.get(i) == TAB) {
+				fields[index++] = decode(fieldStart, i - fieldStart);
+				fieldStart = i + 1;
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Move the current position to the start of the next line.
+	 *
+	 * @throws IOException I/O error
+	 */
+	private void skipLine() throws IOException {
+		if (position >= fileSize) {
+			return;
+		}
+		var lineEnd = locateLineEnd();
+		position = windowStart + (lineEnd >= 0 ? lineEnd + 1 : window.limit());
+	}
+
+	/**
+	 * Map the line at the current position and find its line feed, remapping when the line crosses the window boundary.
+	 *
+	 * @return index of the line feed in the window. <code>-1</code> when the line ends at end of file.
+	 * @throws IOException I/O error
+	 */
+	private int locateLineEnd() throws IOException {
+		var lineEnd = -1;
+		while (true) {
+			ensureMapped(position);
+			var from = (int) (position - windowStart);
+			var limit = window.limit();
+			for (var i = from; i < limit; i++) {
+				if (window.get(i) == LF) {
+					lineEnd = i;
+					break;
+				}
+			}
+			if (lineEnd >= 0 || windowStart + limit >= fileSize) {
+				break;
+			}
+			if (from == 0) {
+				// the line is longer than the window
+				windowSize = (int) Math.min(Integer.MAX_VALUE, windowSize * 2L);
+			}
+			window = null;
+		}
+		return lineEnd;
+	}
+
+	private String decode(final int offset, final int length) {
+		if (length == 0) {
+			return "";
+		}
+		if (fieldBuffer.length < length) {
+			fieldBuffer = new byte[Math.max(length, fieldBuffer.length * 2)];
+		}
+		for (var i = 0; i < length; i++) {
+			fieldBuffer[i] = window.get(offset + i);
+		}
+		return new String(fieldBuffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private void ensureMapped(final long pos) throws IOException {
+		if (window != null && pos >= windowStart && pos < windowStart + window.limit()) {
+			return;
+		}
+		windowStart = pos;
+		var size = Math.min(windowSize, fileSize - pos);
+		window = channel.map(MapMode.READ_ONLY, windowStart, size);
+	}
+}
@@ -0,0 +1,218 @@
+package jp.co.future.uroborosql.sample.mapping;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+import jp.co.future.uroborosql.mapping.annotations.GeneratedValue;
+import jp.co.future.uroborosql.mapping.annotations.Id;
+import jp.co.future.uroborosql.mapping.annotations.Table;
+import jp.co.future.uroborosql.mapping.annotations.Transient;
+import jp.co.future.uroborosql.mapping.annotations.Version;
+import jp.co.future.uroborosql.utils.CaseFormat;
+
+/**
+ * Table and column mapping of an entity class, read from its annotations once per class.
+ * <p>
+ * The mapping follows the rules of the entity API: the table name comes from {@link Table},
+ * and every non-static, non-{@link Transient} field maps to the column named by its snake case name
+ * (or {@link jp.co.future.uroborosql.mapping.annotations.Column} when present).
+ *
+ * @param <E> entity type
+ */
+public final class EntityMetadata<E> {
+	private static final ClassValue<EntityMetadata<?>> CACHE = new ClassValue<>() {
+		@Override
+		protected EntityMetadata<?> computeValue(final Class<?> type) {
+			return new EntityMetadata<>(type);
+		}
+	};
+
+	private final Class<E> entityType;
+	private final String tableName;
+	private final List<Column> columns;
+
+	private EntityMetadata(final Class<E> entityType) {
+		this.entityType = entityType;
+		var table = entityType.getAnnotation(Table.class);
+		this.tableName = table != null && !table.name().isEmpty() ? table.name()
+				: CaseFormat.LOWER_SNAKE_CASE.convert(entityType.getSimpleName());
+
+		List<Column> cols = new ArrayList<>();
+		for (var field : entityType.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(Transient.class)) {
+				continue;
+			}
+			if (!field.trySetAccessible()) {
+				throw new UroborosqlRuntimeException("Cannot access field. field=" + field);
+			}
+			cols.add(new Column(field));
+		}
+		this.columns = Collections.unmodifiableList(cols);
+	}
+
+	/**
+	 * Get the metadata of the entity class.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @return EntityMetadata
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> EntityMetadata<E> of(final Class<E> entityType) {
+		return (EntityMetadata<E>) CACHE.get(entityType);
+	}
+
+	public Class<E> getEntityType() {
+		return entityType;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * All mapped columns in declaration order.
+	 *
+	 * @return columns
+	 */
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Columns that an insert statement sets. Key columns generated by the database are excluded.
+	 *
+	 * @return insert columns
+	 */
+	public List<Column> getInsertColumns() {
+		return columns.stream().filter(c -> !c.isGenerated()).collect(Collectors.toList());
+	}
+
+	/**
+	 * Columns annotated with {@link Id}.
+	 *
+	 * @return key columns
+	 */
+	public List<Column> getIdColumns() {
+		return columns.stream().filter(Column::isId).collect(Collectors.toList());
+	}
+
+	/**
+	 * Column annotated with {@link Version}.
+	 *
+	 * @return version column
+	 */
+	public Optional<Column> getVersionColumn() {
+		return columns.stream().filter(Column::isVersion).findFirst();
+	}
+
+	/**
+	 * Find a column by its property name or column name.
+	 *
+	 * @param name property name or column name
+	 * @return column
+	 */
+	public Optional<Column> getColumn(final String name) {
+		return columns.stream()
+				.filter(c -> c.getName().equals(name) || c.getColumnName().equalsIgnoreCase(name))
+				.findFirst();
+	}
+
+	@Override
+	public String toString() {
+		return "EntityMetadata [entityType=" + entityType.getName() + ", tableName=" + tableName + "]";
+	}
+
+	/**
+	 * Mapping of an entity field to a column.
+	 */
+	public static final class Column {
+		private final Field field;
+		private final String columnName;
+		private final boolean id;
+		private final boolean generated;
+		private final boolean version;
+
+		private Column(final Field field) {
+			this.field = field;
+			var column = field.getAnnotation(jp.co.future.uroborosql.mapping.annotations.Column.class);
+			this.columnName = column != null ? column.name()
+					: CaseFormat.LOWER_SNAKE_CASE.convert(field.getName());
+			this.id = field.isAnnotationPresent(Id.class);
+			this.generated = id && field.isAnnotationPresent(GeneratedValue.class);
+			this.version = field.isAnnotationPresent(Version.class);
+		}
+
+		/**
+		 * Property (field) name.
+		 *
+		 * @return property name
+		 */
+		public String getName() {
+			return field.getName();
+		}
+
+		public String getColumnName() {
+			return columnName;
+		}
+
+		public Class<?> getType() {
+			return field.getType();
+		}
+
+		public Field getField() {
+			return field;
+		}
+
+		public boolean isId() {
+			return id;
+		}
+
+		public boolean isGenerated() {
+			return generated;
+		}
+
+		public boolean isVersion() {
+			return version;
+		}
+
+		/**
+		 * Read the value of the column from an entity.
+		 *
+		 * @param entity entity
+		 * @return value
+		 */
+		public Object getValue(final Object entity) {
+			try {
+				return field.get(entity);
+			} catch (IllegalAccessException ex) {
+				throw new UroborosqlRuntimeException(ex);
+			}
+		}
+
+		/**
+		 * Write the value of the column to an entity.
+		 *
+		 * @param entity entity
+		 * @param value value
+		 */
+		public void setValue(final Object entity, final Object value) {
+			try {
+				field.set(entity, value);
+			} catch (IllegalAccessException ex) {
+				throw new UroborosqlRuntimeException(ex);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return getName() + "(" + columnName + ")";
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package jp.co.future.uroborosql.sample.mapping;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import jp.co.future.uroborosql.converter.ResultSetConverter;
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+
+/**
+ * {@link ResultSetConverter} that writes the columns of a row directly into the fields of an entity.
+ * <p>
+ * The field writers are built once per entity class from {@link EntityMetadata} as {@link MethodHandle}s typed with
+ * the primitive field type, so <code>long</code> fields are read with {@link ResultSet#getLong(int)} and set without
+ * boxing. The column indexes are resolved from the {@link java.sql.ResultSetMetaData} of the first row, so no
+ * per-row lookup by name is made. Enum fields are resolved by their <code>toString()</code> value or name through a
+ * prebuilt table. Other types (<code>LocalDate</code> etc.) are read with {@link ResultSet#getObject(int, Class)}.
+ * <p>
+ * An instance binds itself to one ResultSet at a time. Create an instance for each query with {@link #of(Class)}.
+ *
+ * <pre>
+ * agent.queryWith("select * from employee").stream(EntityRowMapper.of(Employee.class))
+ * </pre>
+ *
+ * @param <E> entity type
+ */
+public final class EntityRowMapper<E> implements ResultSetConverter<E> {
+	private static final ClassValue<Plan> PLANS = new ClassValue<>() {
+		@Override
+		protected Plan computeValue(final Class<?> type) {
+			return new Plan(EntityMetadata.of(type));
+		}
+	};
+
+	private final Plan plan;
+	private ResultSet boundResultSet;
+	private int[] indexes;
+	private FieldWriter[] writers;
+
+	private EntityRowMapper(final Plan plan) {
+		this.plan = plan;
+	}
+
+	/**
+	 * Create a mapper of the entity class.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @return EntityRowMapper
+	 */
+	public static <E> EntityRowMapper<E> of(final Class<E> entityType) {
+		return new EntityRowMapper<>(PLANS.get(entityType));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E createRecord(final ResultSet rs) throws SQLException {
+		if (rs != boundResultSet) {
+			bind(rs);
+		}
+		try {
+			var entity = plan.constructor.invokeExact();
+			for (var i = 0; i < writers.length; i++) {
+				writers[i].write(rs, indexes[i], entity);
+			}
+			return (E) entity;
+		} catch (SQLException | RuntimeException | Error ex) {
+			throw ex;
+		} catch (Throwable th) {
+			throw new UroborosqlRuntimeException(th);
+		}
+	}
+
+	private void bind(final ResultSet rs) throws SQLException {
+		var meta = rs.getMetaData();
+		List<Integer> boundIndexes = new ArrayList<>();
+		List<FieldWriter> boundWriters = new ArrayList<>();
+		for (var i = 1; i <= meta.getColumnCount(); i++) {
+			var writer = plan.writers.get(normalize(meta.getColumnLabel(i)));
+			if (writer != null) {
+				boundIndexes.add(i);
+				boundWriters.add(writer);
+			}
+		}
+		this.indexes = boundIndexes.stream().mapToInt(Integer::intValue).toArray();
+		this.writers = boundWriters.toArray(new FieldWriter[0]);
+		this.boundResultSet = rs;
+	}
+
+	/**
+	 * Key that matches both the column name (<code>EMP_NO</code>) and the property name (<code>empNo</code>).
+	 */
+	private static String normalize(final String name) {
+		return name.replace("_", "").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Constructor and field writers of an entity class.
+	 */
+	private static final class Plan {
+		private final MethodHandle constructor;
+		private final Map<String, FieldWriter> writers = new HashMap<>();
+
+		private Plan(final EntityMetadata<?> metadata) {
+			var entityType = metadata.getEntityType();
+			try {
+				var lookup = MethodHandles.privateLookupIn(entityType, MethodHandles.lookup());
+				this.constructor = lookup.findConstructor(entityType, MethodType.methodType(void.class))
+						.asType(MethodType.methodType(Object.class));
+				for (var column : metadata.getColumns()) {
+					var setter = lookup.unreflectSetter(column.getField());
+					var writer = FieldWriter.of(column.getType(), setter);
+					writers.put(normalize(column.getColumnName()), writer);
+					writers.put(normalize(column.getName()), writer);
+				}
+			} catch (NoSuchMethodException | IllegalAccessException ex) {
+				throw new UroborosqlRuntimeException("Cannot create row mapper. entity=" + entityType.getName(), ex);
+			}
+		}
+	}
+
+	/**
+	 * Reads a column and writes it to a field. Primitive fields are read with the primitive getter of the ResultSet,
+	 * and SQL NULL leaves the default value.
+	 */
+	private abstract static class FieldWriter {
+		protected final MethodHandle setter;
+
+		private FieldWriter(final MethodHandle setter, final Class<?> valueType) {
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, valueType));
+		}
+
+		abstract void write(ResultSet rs, int index, Object entity) throws Throwable;
+
+		static FieldWriter of(final Class<?> type, final MethodHandle setter) {
+			if (type == long.class) {
+				return new LongWriter(setter);
+			} else if (type == int.class) {
+				return new IntWriter(setter);
+			} else if (type == short.class) {
+				return new ShortWriter(setter);
+			} else if (type == byte.class) {
+				return new ByteWriter(setter);
+			} else if (type == double.class) {
+				return new DoubleWriter(setter);
+			} else if (type == float.class) {
+				return new FloatWriter(setter);
+			} else if (type == boolean.class) {
+				return new BooleanWriter(setter);
+			} else if (type == String.class) {
+				return new StringWriter(setter);
+			} else if (type == BigDecimal.class) {
+				return new BigDecimalWriter(setter);
+			} else if (type == Long.class) {
+				return new BoxedLongWriter(setter);
+			} else if (type == Integer.class) {
+				return new BoxedIntWriter(setter);
+			} else if (type.isEnum()) {
+				return new EnumWriter(setter, type);
+			}
+			// LocalDate, LocalDateTime, etc. are converted by the JDBC driver
+			return new TypedObjectWriter(setter, type);
+		}
+	}
+
+	private static final class LongWriter extends FieldWriter {
+		private LongWriter(final MethodHandle setter) {
+			super(setter, long.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getLong(index));
+		}
+	}
+
+	private static final class IntWriter extends FieldWriter {
+		private IntWriter(final MethodHandle setter) {
+			super(setter, int.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getInt(index));
+		}
+	}
+
+	private static final class ShortWriter extends FieldWriter {
+		private ShortWriter(final MethodHandle setter) {
+			super(setter, short.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getShort(index));
+		}
+	}
+
+	private static final class ByteWriter extends FieldWriter {
+		private ByteWriter(final MethodHandle setter) {
+			super(setter, byte.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getByte(index));
+		}
+	}
+
+	private static final class DoubleWriter extends FieldWriter {
+		private DoubleWriter(final MethodHandle setter) {
+			super(setter, double.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getDouble(index));
+		}
+	}
+
+	private static final class FloatWriter extends FieldWriter {
+		private FloatWriter(final MethodHandle setter) {
+			super(setter, float.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getFloat(index));
+		}
+	}
+
+	private static final class BooleanWriter extends FieldWriter {
+		private BooleanWriter(final MethodHandle setter) {
+			super(setter, boolean.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getBoolean(index));
+		}
+	}
+
+	private static final class StringWriter extends FieldWriter {
+		private StringWriter(final MethodHandle setter) {
+			super(setter, String.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getString(index));
+		}
+	}
+
+	private static final class BigDecimalWriter extends FieldWriter {
+		private BigDecimalWriter(final MethodHandle setter) {
+			super(setter, BigDecimal.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, rs.getBigDecimal(index));
+		}
+	}
+
+	private static final class BoxedLongWriter extends FieldWriter {
+		private BoxedLongWriter(final MethodHandle setter) {
+			super(setter, Long.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			var value = rs.getLong(index);
+			setter.invokeExact(entity, rs.wasNull() ? (Long) null : Long.valueOf(value));
+		}
+	}
+
+	private static final class BoxedIntWriter extends FieldWriter {
+		private BoxedIntWriter(final MethodHandle setter) {
+			super(setter, Integer.class);
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			var value = rs.getInt(index);
+			setter.invokeExact(entity, rs.wasNull() ? (Integer) null : Integer.valueOf(value));
+		}
+	}
+
+	private static final class EnumWriter extends FieldWriter {
+		private final Map<String, Object> constants = new HashMap<>();
+
+		private EnumWriter(final MethodHandle setter, final Class<?> type) {
+			super(setter, Object.class);
+			// the toString() value (stored value, e.g. "M" of Gender.MALE) wins over the name of another constant
+			for (var constant : type.getEnumConstants()) {
+				constants.put(((Enum<?>) constant).name(), constant);
+			}
+			for (var constant : type.getEnumConstants()) {
+				constants.put(constant.toString(), constant);
+			}
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			var value = rs.getString(index);
+			if (value != null) {
+				var constant = constants.get(value.trim());
+				if (constant == null) {
+					throw new UroborosqlRuntimeException("Unknown enum value. value=" + value);
+				}
+				setter.invokeExact(entity, constant);
+			}
+		}
+	}
+
+	private static final class TypedObjectWriter extends FieldWriter {
+		private final Class<?> type;
+
+		private TypedObjectWriter(final MethodHandle setter, final Class<?> type) {
+			super(setter, Object.class);
+			this.type = type;
+		}
+
+		@Override
+		void write(final ResultSet rs, final int index, final Object entity) throws Throwable {
+			setter.invokeExact(entity, (Object) rs.getObject(index, type));
+		}
+	}
+}
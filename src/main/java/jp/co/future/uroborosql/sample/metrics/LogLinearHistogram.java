@@ -0,0 +1,106 @@
+package jp.co.future.uroborosql.sample.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values with a relative error of about 3%.
+ * <p>
+ * Like an HDR histogram, each power of two is divided into 32 linear sub-buckets, so the buckets cover the whole
+ * <code>long</code> range with a fixed array of counters and recording is a single atomic increment.
+ */
+public final class LogLinearHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+	/**
+	 * Record a value. Negative values are recorded as 0.
+	 *
+	 * @param value value
+	 */
+	public void record(final long value) {
+		var v = Math.max(value, 0L);
+		counts.incrementAndGet(indexOf(v));
+		count.increment();
+		sum.add(v);
+		max.accumulate(v);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Mean of the recorded values.
+	 *
+	 * @return mean. 0 when nothing is recorded.
+	 */
+	public double getMean() {
+		var n = count.sum();
+		return n == 0 ? 0.0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Value at the percentile. The upper bound of the bucket is returned, limited by the max value.
+	 *
+	 * @param percentile percentile (0.0 - 100.0)
+	 * @return value at the percentile. 0 when nothing is recorded.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		var total = 0L;
+		var snapshot = new long[BUCKETS];
+		for (var i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0L;
+		}
+		var rank = (long) Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * total);
+		rank = Math.max(rank, 1L);
+		var seen = 0L;
+		for (var i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int indexOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		var exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBoundOf(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		var exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		var subBucket = index % SUB_BUCKETS;
+		var shift = exponent - SUB_BUCKET_BITS;
+		var lower = (long) (SUB_BUCKETS + subBucket) << shift;
+		var width = 1L << shift;
+		return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+	}
+}
@@ -0,0 +1,113 @@
+package jp.co.future.uroborosql.sample.metrics;
+
+/**
+ * Execution time, rows and batch sizes recorded for a SQL.
+ */
+public final class SqlMetrics implements SqlMetricsMXBean {
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+	private final String name;
+	private final LogLinearHistogram latency = new LogLinearHistogram();
+	private final LogLinearHistogram rowsReturned = new LogLinearHistogram();
+	private final LogLinearHistogram rowsAffected = new LogLinearHistogram();
+	private final LogLinearHistogram batchSize = new LogLinearHistogram();
+
+	public SqlMetrics(final String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return execution time in nanoseconds
+	 */
+	public LogLinearHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return rows returned per query
+	 */
+	public LogLinearHistogram getRowsReturnedHistogram() {
+		return rowsReturned;
+	}
+
+	/**
+	 * @return rows affected per execution
+	 */
+	public LogLinearHistogram getRowsAffectedHistogram() {
+		return rowsAffected;
+	}
+
+	/**
+	 * @return statements per batch
+	 */
+	public LogLinearHistogram getBatchSizeHistogram() {
+		return batchSize;
+	}
+
+	@Override
+	public long getExecutionCount() {
+		return latency.getCount();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		return latency.getMean() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return latency.getValueAtPercentile(50.0) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP90Millis() {
+		return latency.getValueAtPercentile(90.0) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return latency.getValueAtPercentile(99.0) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return latency.getMax() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getRowsReturned() {
+		return rowsReturned.getSum();
+	}
+
+	@Override
+	public long getRowsAffected() {
+		return rowsAffected.getSum();
+	}
+
+	@Override
+	public long getBatchCount() {
+		return batchSize.getCount();
+	}
+
+	@Override
+	public double getMeanBatchSize() {
+		return batchSize.getMean();
+	}
+
+	@Override
+	public long getMaxBatchSize() {
+		return batchSize.getMax();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s [count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms, max=%.3fms, rowsReturned=%d, "
+				+ "rowsAffected=%d, batches=%d]", name, getExecutionCount(), getMeanMillis(), getP50Millis(),
+				getP99Millis(), getMaxMillis(), getRowsReturned(), getRowsAffected(), getBatchCount());
+	}
+}
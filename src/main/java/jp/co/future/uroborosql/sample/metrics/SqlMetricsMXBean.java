@@ -0,0 +1,45 @@
+package jp.co.future.uroborosql.sample.metrics;
+
+/**
+ * JMX view of the metrics of a SQL.
+ */
+public interface SqlMetricsMXBean {
+	/**
+	 * @return SQL name, SQL ID or <code>operation:table</code>
+	 */
+	String getName();
+
+	/**
+	 * @return number of executions
+	 */
+	long getExecutionCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	/**
+	 * @return total number of rows read from the result sets
+	 */
+	long getRowsReturned();
+
+	/**
+	 * @return total number of rows inserted, updated or deleted
+	 */
+	long getRowsAffected();
+
+	/**
+	 * @return number of executed batches
+	 */
+	long getBatchCount();
+
+	double getMeanBatchSize();
+
+	long getMaxBatchSize();
+}
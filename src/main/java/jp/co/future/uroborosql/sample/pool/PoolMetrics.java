@@ -0,0 +1,121 @@
+package jp.co.future.uroborosql.sample.pool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of {@link PooledDataSource} metrics.
+ */
+public final class PoolMetrics {
+	private final int active;
+	private final int idle;
+	private final long created;
+	private final long borrowed;
+	private final long totalWaitNanos;
+	private final long maxWaitNanos;
+	private final long timeouts;
+	private final long invalidated;
+	private final long leaks;
+
+	PoolMetrics(final int active, final int idle, final long created, final long borrowed,
+			final long totalWaitNanos, final long maxWaitNanos, final long timeouts, final long invalidated,
+			final long leaks) {
+		this.active = active;
+		this.idle = idle;
+		this.created = created;
+		this.borrowed = borrowed;
+		this.totalWaitNanos = totalWaitNanos;
+		this.maxWaitNanos = maxWaitNanos;
+		this.timeouts = timeouts;
+		this.invalidated = invalidated;
+		this.leaks = leaks;
+	}
+
+	/**
+	 * Number of connections currently borrowed.
+	 *
+	 * @return active connections
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * Number of connections waiting in the pool.
+	 *
+	 * @return idle connections
+	 */
+	public int getIdle() {
+		return idle;
+	}
+
+	/**
+	 * Number of physical connections opened so far.
+	 *
+	 * @return created connections
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Number of successful borrows so far.
+	 *
+	 * @return borrow count
+	 */
+	public long getBorrowed() {
+		return borrowed;
+	}
+
+	/**
+	 * Average time a borrower waited for a connection.
+	 *
+	 * @return average wait time in milliseconds
+	 */
+	public double getAverageWaitMillis() {
+		return borrowed > 0 ? totalWaitNanos / (double) borrowed / TimeUnit.MILLISECONDS.toNanos(1) : 0.0;
+	}
+
+	/**
+	 * Longest time a borrower waited for a connection.
+	 *
+	 * @return max wait time in milliseconds
+	 */
+	public double getMaxWaitMillis() {
+		return maxWaitNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Number of borrows that timed out.
+	 *
+	 * @return timeout count
+	 */
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * Number of idle connections discarded by validation.
+	 *
+	 * @return invalidated count
+	 */
+	public long getInvalidated() {
+		return invalidated;
+	}
+
+	/**
+	 * Number of detected connection leaks.
+	 *
+	 * @return leak count
+	 */
+	public long getLeaks() {
+		return leaks;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"PoolMetrics [active=%d, idle=%d, created=%d, borrowed=%d, avgWait=%.3fms, maxWait=%.3fms, timeouts=%d, invalidated=%d, leaks=%d]",
+				active, idle, created, borrowed, getAverageWaitMillis(), getMaxWaitMillis(), timeouts, invalidated,
+				leaks);
+	}
+}
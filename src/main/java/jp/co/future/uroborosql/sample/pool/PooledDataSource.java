@@ -0,0 +1,424 @@
+package jp.co.future.uroborosql.sample.pool;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small connection pool backed by {@link DriverManager}.
+ * <p>
+ * It is passed to <code>UroboroSQL.builder(DataSource)</code> so that <code>config.agent()</code> borrows
+ * a pooled connection instead of opening a physical one.
+ *
+ * <ul>
+ * <li>At most <code>maxTotal</code> connections are borrowed at a time. Borrowers wait up to <code>maxWait</code>.</li>
+ * <li>Returned connections are kept while there are fewer than <code>maxIdle</code> idle ones, and a background
+ * task keeps at least <code>minIdle</code> idle connections.</li>
+ * <li>An idle connection is validated with {@link Connection#isValid(int)} when it is borrowed.</li>
+ * <li>A connection borrowed longer than the leak detection threshold is logged with the stack trace of the borrower.</li>
+ * </ul>
+ */
+public class PooledDataSource implements DataSource, AutoCloseable {
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(PooledDataSource.class);
+
+	private final String url;
+	private final String user;
+	private final String password;
+
+	private int minIdle = 1;
+	private int maxIdle = 8;
+	private int maxTotal = 8;
+	private long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+	private int validationTimeoutSeconds = 5;
+	private long leakDetectionThresholdNanos = 0L;
+
+	private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+	private final Map<Connection, Borrow> borrowed = new ConcurrentHashMap<>();
+	private volatile Semaphore permits;
+	private volatile ScheduledExecutorService maintenance;
+	private volatile boolean closed = false;
+
+	private final LongAdder createdCount = new LongAdder();
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAccumulator maxWaitedNanos = new LongAccumulator(Math::max, 0L);
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder invalidCount = new LongAdder();
+	private final LongAdder leakCount = new LongAdder();
+
+	public PooledDataSource(final String url, final String user, final String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * Set the number of idle connections kept open. default is 1.
+	 *
+	 * @param minIdle minimum idle connections
+	 * @return PooledDataSource
+	 */
+	public PooledDataSource setMinIdle(final int minIdle) {
+		this.minIdle = minIdle;
+		return this;
+	}
+
+	/**
+	 * Set the number of idle connections kept when they are returned. default is 8.
+	 *
+	 * @param maxIdle maximum idle connections
+	 * @return PooledDataSource
+	 */
+	public PooledDataSource setMaxIdle(final int maxIdle) {
+		this.maxIdle = maxIdle;
+		return this;
+	}
+
+	/**
+	 * Set the number of connections that can be borrowed at a time. default is 8.
+	 *
+	 * @param maxTotal maximum borrowed connections
+	 * @return PooledDataSource
+	 */
+	public PooledDataSource setMaxTotal(final int maxTotal) {
+		if (maxTotal < 1) {
+			throw new IllegalArgumentException("maxTotal must be positive. maxTotal=" + maxTotal);
+		}
+		this.maxTotal = maxTotal;
+		return this;
+	}
+
+	/**
+	 * Set how long a borrower waits for a connection. default is 30 seconds.
+	 *
+	 * @param maxWait maximum wait time
+	 * @return PooledDataSource
+	 */
+	public PooledDataSource setMaxWait(final Duration maxWait) {
+		this.maxWaitNanos = maxWait.toNanos();
+		return this;
+	}
+
+	/**
+	 * Set the timeout of the validation on borrow. default is 5 seconds.
+	 *
+	 * @param validationTimeoutSeconds validation timeout in seconds
+	 * @return PooledDataSource
+	 */
+	public PooledDataSource setValidationTimeoutSeconds(final int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		return this;
+	}
+
+	/**
+	 * Set how long a connection may be borrowed before it is reported as a leak. default is disabled (zero).
+	 *
+	 * @param leakDetectionThreshold leak detection threshold
+	 * @return PooledDataSource
+	 */
+	public PooledDataSource setLeakDetectionThreshold(final Duration leakDetectionThreshold) {
+		this.leakDetectionThresholdNanos = leakDetectionThreshold.toNanos();
+		return this;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("PooledDataSource is closed.");
+		}
+		var semaphore = start();
+
+		var waitStart = System.nanoTime();
+		try {
+			if (!semaphore.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+				timeoutCount.increment();
+				throw new SQLTransientConnectionException(
+						"Timeout waiting for a connection. active=" + borrowed.size() + ", maxTotal=" + maxTotal);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted waiting for a connection.", ex);
+		}
+		var waited = System.nanoTime() - waitStart;
+		waitNanos.add(waited);
+		maxWaitedNanos.accumulate(waited);
+
+		try {
+			var physical = pollValid();
+			if (physical == null) {
+				physical = create();
+			}
+			var proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new PooledConnectionHandler(physical));
+			borrowed.put(proxy, new Borrow(System.nanoTime(),
+					leakDetectionThresholdNanos > 0 ? new Throwable("Connection borrowed here") : null));
+			borrowCount.increment();
+			return proxy;
+		} catch (SQLException | RuntimeException ex) {
+			semaphore.release();
+			throw ex;
+		}
+	}
+
+	@Override
+	public Connection getConnection(final String username, final String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("PooledDataSource uses the user given to the constructor.");
+	}
+
+	/**
+	 * Current pool metrics.
+	 *
+	 * @return PoolMetrics
+	 */
+	public PoolMetrics getMetrics() {
+		return new PoolMetrics(borrowed.size(), idle.size(), createdCount.sum(), borrowCount.sum(),
+				waitNanos.sum(), maxWaitedNanos.get(), timeoutCount.sum(), invalidCount.sum(), leakCount.sum());
+	}
+
+	/**
+	 * Maximum number of connections that can be borrowed at a time.
+	 *
+	 * @return maxTotal
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * Close idle connections and stop the background task. Borrowed connections are closed when they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		var executor = maintenance;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		Connection conn;
+		while ((conn = idle.pollFirst()) != null) {
+			closeQuietly(conn);
+		}
+	}
+
+	private Semaphore start() {
+		var semaphore = permits;
+		if (semaphore == null) {
+			synchronized (this) {
+				semaphore = permits;
+				if (semaphore == null) {
+					semaphore = new Semaphore(maxTotal, true);
+					var executor = Executors.newSingleThreadScheduledExecutor(r -> {
+						var thread = new Thread(r, "pooled-datasource-maintenance");
+						thread.setDaemon(true);
+						return thread;
+					});
+					executor.scheduleWithFixedDelay(this::maintain, 0L, 1L, TimeUnit.SECONDS);
+					maintenance = executor;
+					permits = semaphore;
+				}
+			}
+		}
+		return semaphore;
+	}
+
+	private Connection pollValid() {
+		Connection conn;
+		while ((conn = idle.pollFirst()) != null) {
+			try {
+				if (conn.isValid(validationTimeoutSeconds)) {
+					return conn;
+				}
+			} catch (SQLException ex) {
+				LOG.debug("Connection validation failed.", ex);
+			}
+			invalidCount.increment();
+			closeQuietly(conn);
+		}
+		return null;
+	}
+
+	private Connection create() throws SQLException {
+		var conn = DriverManager.getConnection(url, user, password);
+		createdCount.increment();
+		return conn;
+	}
+
+	private void release(final Connection proxy, final Connection physical) {
+		borrowed.remove(proxy);
+		try {
+			if (!closed && reset(physical) && idle.size() < maxIdle) {
+				idle.offerFirst(physical);
+			} else {
+				closeQuietly(physical);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	private boolean reset(final Connection physical) {
+		try {
+			if (physical.isClosed()) {
+				return false;
+			}
+			if (!physical.getAutoCommit()) {
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+			if (physical.isReadOnly()) {
+				physical.setReadOnly(false);
+			}
+			physical.clearWarnings();
+			return true;
+		} catch (SQLException ex) {
+			LOG.debug("Failed to reset connection.", ex);
+			return false;
+		}
+	}
+
+	private void maintain() {
+		try {
+			while (!closed && idle.size() < Math.min(minIdle, maxIdle)
+					&& borrowed.size() + idle.size() < maxTotal) {
+				idle.offerLast(create());
+			}
+		} catch (SQLException ex) {
+			LOG.warn("Failed to create idle connection.", ex);
+		}
+
+		if (leakDetectionThresholdNanos > 0) {
+			var now = System.nanoTime();
+			borrowed.values().forEach(b -> {
+				if (!b.reported && now - b.borrowedAt > leakDetectionThresholdNanos) {
+					b.reported = true;
+					leakCount.increment();
+					LOG.warn("Connection leak detection triggered. borrowed for {}ms.",
+							TimeUnit.NANOSECONDS.toMillis(now - b.borrowedAt), b.stackTrace);
+				}
+			});
+		}
+	}
+
+	private static void closeQuietly(final Connection conn) {
+		try {
+			conn.close();
+		} catch (SQLException ex) {
+			LOG.debug("Failed to close connection.", ex);
+		}
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(final PrintWriter out) throws SQLException {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(final int seconds) throws SQLException {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(final Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	/**
+	 * Borrow record used by leak detection.
+	 */
+	private static final class Borrow {
+		private final long borrowedAt;
+		private final Throwable stackTrace;
+		private volatile boolean reported = false;
+
+		private Borrow(final long borrowedAt, final Throwable stackTrace) {
+			this.borrowedAt = borrowedAt;
+			this.stackTrace = stackTrace;
+		}
+	}
+
+	/**
+	 * Connection handed to the borrower. <code>close()</code> returns the physical connection to the pool.
+	 */
+	private final class PooledConnectionHandler implements InvocationHandler {
+		private final Connection physical;
+		private final AtomicBoolean closedFlag = new AtomicBoolean();
+
+		private PooledConnectionHandler(final Connection physical) {
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (closedFlag.compareAndSet(false, true)) {
+					release((Connection) proxy, physical);
+				}
+				return null;
+			case "isClosed":
+				return closedFlag.get() || physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "PooledConnection[" + physical + "]";
+			default:
+				if (closedFlag.get()) {
+					throw new SQLException("Connection is closed.");
+				}
+				try {
+					return method.invoke(physical, args);
+				} catch (InvocationTargetException ex) {
+					throw ex.getCause();
+				}
+			}
+		}
+	}
+}
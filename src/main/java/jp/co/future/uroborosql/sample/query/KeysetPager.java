@@ -0,0 +1,185 @@
+package jp.co.future.uroborosql.sample.query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.fluent.SqlEntityQuery;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+
+/**
+ * Keyset (seek) pagination.
+ * <p>
+ * A page is read with <code>sort key &gt; last key of the previous page</code>, ordered by the sort key and limited
+ * to the page size, so a page deep in the table costs the same as the first page as long as the sort key is indexed.
+ * The sort key must be unique (the <code>@Id</code> column by default). The last key is returned as an opaque
+ * continuation token, bound to the entity type or the SQL name and the sort key.
+ * <ul>
+ * <li>Entity API: <code>greaterThan(sortKey, last)</code>, <code>asc(sortKey)</code> and <code>limit()</code> are
+ * added to the query.</li>
+ * <li>SQL file: the last key is bound to <code>cursor</code> (<code>null</code> for the first page) and the number of
+ * rows to <code>limit</code>. The SQL file must compare the sort key with <code>cursor</code>, order by it and limit
+ * the rows (see <code>employee/select_employee_page.sql</code>).</li>
+ * </ul>
+ *
+ * <pre>
+ * var page = new KeysetPager(agent).page(Employee.class, 20, token);
+ * page.getItems().forEach(...);
+ * token = page.getNextToken();
+ * </pre>
+ */
+public class KeysetPager {
+	/** bind parameter name of the last key of the previous page */
+	public static final String CURSOR = "cursor";
+	/** bind parameter name of the number of rows to read */
+	public static final String LIMIT = "limit";
+
+	private final SqlAgent agent;
+
+	public KeysetPager(final SqlAgent agent) {
+		this.agent = agent;
+	}
+
+	/**
+	 * Get a page of the entities ordered by the <code>@Id</code> column.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param pageSize number of entities per page
+	 * @param token token of the previous page. <code>null</code> for the first page.
+	 * @return page
+	 */
+	public <E> Page<E> page(final Class<E> entityType, final int pageSize, final String token) {
+		var ids = EntityMetadata.of(entityType).getIdColumns();
+		if (ids.size() != 1) {
+			throw new IllegalArgumentException("Entity must have one @Id column. entityType=" + entityType.getName());
+		}
+		return page(agent.query(entityType), entityType, ids.get(0).getName(), pageSize, token);
+	}
+
+	/**
+	 * Get a page of the entity query ordered by the sort key.
+	 *
+	 * @param <E> entity type
+	 * @param query entity query with the conditions (e.g. <code>agent.query(Employee.class).equal(...)</code>)
+	 * @param entityType entity class
+	 * @param sortKey unique property to order by
+	 * @param pageSize number of entities per page
+	 * @param token token of the previous page. <code>null</code> for the first page.
+	 * @return page
+	 */
+	public <E> Page<E> page(final SqlEntityQuery<E> query, final Class<E> entityType, final String sortKey,
+			final int pageSize, final String token) {
+		checkPageSize(pageSize);
+		var column = EntityMetadata.of(entityType).getColumn(sortKey)
+				.orElseThrow(() -> new IllegalArgumentException(
+						"Unknown property. entityType=" + entityType.getName() + ", sortKey=" + sortKey));
+		var scope = entityType.getName() + "#" + column.getName();
+		if (token != null) {
+			query.greaterThan(column.getName(), decode(scope, token));
+		}
+		// one more row tells whether there is a next page
+		var items = new ArrayList<>(query.asc(column.getName()).limit(pageSize + 1L).collect());
+		return toPage(items, pageSize, scope, column::getValue);
+	}
+
+	/**
+	 * Get a page of the SQL file.
+	 *
+	 * @param sqlName SQL name (e.g. <code>employee/select_employee_page</code>)
+	 * @param params bind parameters of the conditions
+	 * @param sortKey unique key of the rows to order by (e.g. <code>empNo</code>)
+	 * @param pageSize number of rows per page
+	 * @param token token of the previous page. <code>null</code> for the first page.
+	 * @return page
+	 */
+	public Page<Map<String, Object>> page(final String sqlName, final Map<String, Object> params,
+			final String sortKey, final int pageSize, final String token) {
+		checkPageSize(pageSize);
+		var scope = sqlName + "#" + sortKey;
+		Map<String, Object> pageParams = new HashMap<>(params);
+		pageParams.put(CURSOR, token != null ? decode(scope, token) : null);
+		pageParams.put(LIMIT, pageSize + 1);
+		var items = new ArrayList<>(agent.query(sqlName).paramMap(pageParams).collect());
+		return toPage(items, pageSize, scope, row -> {
+			if (!row.containsKey(sortKey)) {
+				throw new IllegalArgumentException("Sort key is not selected. sqlName=" + sqlName
+						+ ", sortKey=" + sortKey);
+			}
+			return row.get(sortKey);
+		});
+	}
+
+	private static void checkPageSize(final int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive. pageSize=" + pageSize);
+		}
+	}
+
+	private static <T> Page<T> toPage(final List<T> items, final int pageSize, final String scope,
+			final Function<T, Object> keyOf) {
+		if (items.size() <= pageSize) {
+			return new Page<>(items, null);
+		}
+		items.remove(pageSize);
+		return new Page<>(items, encode(scope, keyOf.apply(items.get(pageSize - 1))));
+	}
+
+	/**
+	 * Token is the URL safe Base64 of <code>scope \n type \n value</code>.
+	 */
+	private static String encode(final String scope, final Object key) {
+		String type;
+		if (key instanceof Long || key instanceof Integer || key instanceof Short) {
+			type = "L";
+		} else if (key instanceof String) {
+			type = "S";
+		} else if (key instanceof LocalDate) {
+			type = "D";
+		} else if (key instanceof LocalDateTime) {
+			type = "T";
+		} else {
+			throw new IllegalArgumentException("Unsupported sort key type. type="
+					+ (key != null ? key.getClass().getName() : null));
+		}
+		var text = scope + "\n" + type + "\n" + key;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Object decode(final String scope, final String token) {
+		String text;
+		try {
+			text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("Invalid token. token=" + token, ex);
+		}
+		var parts = text.split("\n", 3);
+		if (parts.length != 3 || !parts[0].equals(scope)) {
+			throw new IllegalArgumentException("Token is not for this query. token=" + token);
+		}
+		try {
+			switch (parts[1]) {
+			case "L":
+				return Long.valueOf(parts[2]);
+			case "S":
+				return parts[2];
+			case "D":
+				return LocalDate.parse(parts[2]);
+			case "T":
+				return LocalDateTime.parse(parts[2]);
+			default:
+				break;
+			}
+		} catch (RuntimeException ex) {
+			throw new IllegalArgumentException("Invalid token. token=" + token, ex);
+		}
+		throw new IllegalArgumentException("Invalid token. token=" + token);
+	}
+}
@@ -0,0 +1,39 @@
+package jp.co.future.uroborosql.sample.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of rows and the token to get the next page.
+ *
+ * @param <T> row type
+ */
+public class Page<T> {
+	private final List<T> items;
+	private final String nextToken;
+
+	public Page(final List<T> items, final String nextToken) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextToken = nextToken;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return token of the next page. <code>null</code> when this is the last page.
+	 */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+
+	@Override
+	public String toString() {
+		return "Page [size=" + items.size() + ", nextToken=" + nextToken + "]";
+	}
+}
@@ -0,0 +1,257 @@
+package jp.co.future.uroborosql.sample.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+
+/**
+ * Projection and aggregate queries on the table of an entity, executed by the database.
+ * <p>
+ * <code>agent.query(Employee.class)</code> selects every column and aggregates one column at a time
+ * (<code>count()</code>, <code>sum()</code>, <code>min()</code>, <code>max()</code>). This class selects a subset of
+ * the columns and aggregates grouped by columns, so only the result rows are transferred. The properties are mapped to
+ * the columns with {@link EntityMetadata} and the SQL is executed with <code>agent.queryWith()</code>, so the values
+ * are bound as parameters. The rows are returned as Maps (with the map key case format of the SqlAgent) or as
+ * instances of a class with the properties of the selected columns and aliases.
+ *
+ * <pre>
+ * // select gender, count(*) as count, min(birth_date) as oldest from employee group by gender order by gender
+ * var rows = new ProjectionQuery&lt;&gt;(agent, Employee.class)
+ * 		.groupBy("gender")
+ * 		.count("count")
+ * 		.min("birthDate", "oldest")
+ * 		.asc("gender")
+ * 		.collect();
+ * </pre>
+ *
+ * @param <E> entity type
+ */
+public class ProjectionQuery<E> {
+	private static final Pattern ALIAS = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	private final SqlAgent agent;
+	private final EntityMetadata<E> metadata;
+	private final List<String> selects = new ArrayList<>();
+	private final List<String> groupBys = new ArrayList<>();
+	private final List<String> wheres = new ArrayList<>();
+	private final List<String> orderBys = new ArrayList<>();
+	private final Map<String, Object> params = new HashMap<>();
+
+	public ProjectionQuery(final SqlAgent agent, final Class<E> entityType) {
+		this.agent = agent;
+		this.metadata = EntityMetadata.of(entityType);
+	}
+
+	/**
+	 * Select the columns of the properties.
+	 *
+	 * @param properties properties
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> select(final String... properties) {
+		for (var property : properties) {
+			selects.add(column(property));
+		}
+		return this;
+	}
+
+	/**
+	 * Group by the columns of the properties. The columns are selected too.
+	 *
+	 * @param properties properties
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> groupBy(final String... properties) {
+		for (var property : properties) {
+			var column = column(property);
+			groupBys.add(column);
+			selects.add(column);
+		}
+		return this;
+	}
+
+	/**
+	 * Select the number of rows.
+	 *
+	 * @param alias alias of the result column
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> count(final String alias) {
+		selects.add("count(*) as " + alias(alias));
+		return this;
+	}
+
+	/**
+	 * Select the sum of the column.
+	 *
+	 * @param property property
+	 * @param alias alias of the result column
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> sum(final String property, final String alias) {
+		return aggregate("sum", property, alias);
+	}
+
+	/**
+	 * Select the minimum of the column.
+	 *
+	 * @param property property
+	 * @param alias alias of the result column
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> min(final String property, final String alias) {
+		return aggregate("min", property, alias);
+	}
+
+	/**
+	 * Select the maximum of the column.
+	 *
+	 * @param property property
+	 * @param alias alias of the result column
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> max(final String property, final String alias) {
+		return aggregate("max", property, alias);
+	}
+
+	public ProjectionQuery<E> equal(final String property, final Object value) {
+		return where(property, "=", value);
+	}
+
+	public ProjectionQuery<E> notEqual(final String property, final Object value) {
+		return where(property, "<>", value);
+	}
+
+	public ProjectionQuery<E> greaterThan(final String property, final Object value) {
+		return where(property, ">", value);
+	}
+
+	public ProjectionQuery<E> greaterEqual(final String property, final Object value) {
+		return where(property, ">=", value);
+	}
+
+	public ProjectionQuery<E> lessThan(final String property, final Object value) {
+		return where(property, "<", value);
+	}
+
+	public ProjectionQuery<E> lessEqual(final String property, final Object value) {
+		return where(property, "<=", value);
+	}
+
+	public ProjectionQuery<E> in(final String property, final Collection<?> values) {
+		if (values.isEmpty()) {
+			// nothing matches an empty list
+			wheres.add("1 = 0");
+			return this;
+		}
+		var name = paramName();
+		wheres.add(column(property) + " in /*" + name + "*/()");
+		params.put(name, values);
+		return this;
+	}
+
+	/**
+	 * Order by the column of the property or by the alias of an aggregate.
+	 *
+	 * @param propertyOrAlias property or alias
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> asc(final String propertyOrAlias) {
+		orderBys.add(orderColumn(propertyOrAlias));
+		return this;
+	}
+
+	/**
+	 * Order by the column of the property or by the alias of an aggregate, in descending order.
+	 *
+	 * @param propertyOrAlias property or alias
+	 * @return ProjectionQuery
+	 */
+	public ProjectionQuery<E> desc(final String propertyOrAlias) {
+		orderBys.add(orderColumn(propertyOrAlias) + " desc");
+		return this;
+	}
+
+	/**
+	 * Execute the query.
+	 *
+	 * @return rows
+	 */
+	public List<Map<String, Object>> collect() {
+		return agent.queryWith(toSql()).paramMap(params).collect();
+	}
+
+	/**
+	 * Execute the query and map the rows to the class.
+	 *
+	 * @param <T> row type
+	 * @param type class with the properties of the selected columns and aliases
+	 * @return rows
+	 */
+	public <T> List<T> collect(final Class<T> type) {
+		return agent.queryWith(toSql()).paramMap(params).collect(type);
+	}
+
+	/**
+	 * @return 2-way SQL of the query
+	 */
+	public String toSql() {
+		if (selects.isEmpty()) {
+			throw new IllegalStateException("No column is selected. entityType="
+					+ metadata.getEntityType().getName());
+		}
+		var sql = new StringBuilder("select ").append(String.join(", ", selects))
+				.append(" from ").append(metadata.getTableName());
+		if (!wheres.isEmpty()) {
+			sql.append(" where ").append(String.join(" and ", wheres));
+		}
+		if (!groupBys.isEmpty()) {
+			sql.append(" group by ").append(String.join(", ", groupBys));
+		}
+		if (!orderBys.isEmpty()) {
+			sql.append(" order by ").append(String.join(", ", orderBys));
+		}
+		return sql.toString();
+	}
+
+	private ProjectionQuery<E> aggregate(final String function, final String property, final String alias) {
+		selects.add(function + "(" + column(property) + ") as " + alias(alias));
+		return this;
+	}
+
+	private ProjectionQuery<E> where(final String property, final String operator, final Object value) {
+		var name = paramName();
+		wheres.add(column(property) + " " + operator + " /*" + name + "*/''");
+		params.put(name, value);
+		return this;
+	}
+
+	private String paramName() {
+		return "p" + params.size();
+	}
+
+	private String column(final String property) {
+		return metadata.getColumn(property)
+				.orElseThrow(() -> new IllegalArgumentException("Unknown property. entityType="
+						+ metadata.getEntityType().getName() + ", property=" + property))
+				.getColumnName();
+	}
+
+	private String orderColumn(final String propertyOrAlias) {
+		var column = metadata.getColumn(propertyOrAlias);
+		return column.isPresent() ? column.get().getColumnName() : alias(propertyOrAlias);
+	}
+
+	private static String alias(final String alias) {
+		if (alias == null || !ALIAS.matcher(alias).matches()) {
+			throw new IllegalArgumentException("Invalid alias. alias=" + alias);
+		}
+		return alias;
+	}
+}
@@ -0,0 +1,132 @@
+package jp.co.future.uroborosql.sample.query;
+
+import java.sql.ResultSet;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.converter.ResultSetConverter;
+import jp.co.future.uroborosql.fluent.SqlEntityQuery;
+import jp.co.future.uroborosql.fluent.SqlFluent;
+import jp.co.future.uroborosql.fluent.SqlQuery;
+import jp.co.future.uroborosql.sample.mapping.EntityRowMapper;
+
+/**
+ * Streams queries with a <code>TYPE_FORWARD_ONLY</code>, <code>CONCUR_READ_ONLY</code> ResultSet and a fetch size of
+ * its own.
+ * <p>
+ * The samples configure forward-only ResultSets and a fetch size as the defaults of the SqlConfig
+ * (<code>ExecutionContextProviderImpl#setDefaultResultSetType</code> and
+ * <code>SqlAgentProviderImpl#setFetchSize</code>), so <code>agent.query(...).stream()</code> and
+ * <code>agent.query(Employee.class).stream()</code> are already read in chunks while the stream is consumed. This class
+ * is only needed to use another fetch size for a query, or to stream with a forward-only ResultSet on a SqlConfig whose
+ * default ResultSet type is scrollable.
+ * <p>
+ * The returned streams hold an open ResultSet. Close them (or the SqlAgent) when they are not consumed to the end.
+ *
+ * <pre>
+ * try (var rows = new StreamingQuery(agent).stream(agent.query("employee/select_employee"))) {
+ * 	rows.forEach(...);
+ * }
+ * try (var female = new StreamingQuery(agent).stream(agent.query(Employee.class).equal("gender", Gender.FEMALE))) {
+ * 	female.forEach(...);
+ * }
+ * </pre>
+ */
+public class StreamingQuery {
+	private final SqlAgent agent;
+	private int fetchSize = 1000;
+
+	public StreamingQuery(final SqlAgent agent) {
+		this.agent = agent;
+	}
+
+	/**
+	 * Set the fetch size of the streaming queries. default is 1000.
+	 *
+	 * @param fetchSize fetch size
+	 * @return StreamingQuery
+	 */
+	public StreamingQuery setFetchSize(final int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("fetchSize must be greater than 0.");
+		}
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Stream the rows with a forward-only ResultSet.
+	 *
+	 * @param query query
+	 * @return rows
+	 */
+	public Stream<Map<String, Object>> stream(final SqlQuery query) {
+		return withFetchSize(() -> forwardOnly(query).stream());
+	}
+
+	/**
+	 * Stream the converted rows with a forward-only ResultSet.
+	 *
+	 * @param <T> record type
+	 * @param query query
+	 * @param converter row converter (e.g. {@link EntityRowMapper})
+	 * @return records
+	 */
+	public <T> Stream<T> stream(final SqlQuery query, final ResultSetConverter<T> converter) {
+		return withFetchSize(() -> forwardOnly(query).stream(converter));
+	}
+
+	/**
+	 * Execute the query with a forward-only ResultSet, e.g. to read its metadata before the first row.
+	 *
+	 * @param query query
+	 * @return ResultSet. Closing it closes the statement.
+	 */
+	public ResultSet resultSet(final SqlQuery query) {
+		return withFetchSize(() -> forwardOnly(query).resultSet());
+	}
+
+	/**
+	 * Stream the entities of the entity query with a forward-only ResultSet.
+	 *
+	 * @param <E> entity type
+	 * @param query entity query with its conditions (e.g. <code>agent.query(Employee.class).equal(...)</code>)
+	 * @return entities
+	 */
+	public <E> Stream<E> stream(final SqlEntityQuery<E> query) {
+		return withFetchSize(() -> forwardOnly(query).stream());
+	}
+
+	/**
+	 * Scan all rows of the entity table with a forward-only ResultSet.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @return entities
+	 */
+	public <E> Stream<E> stream(final Class<E> entityType) {
+		return stream(agent.query(entityType));
+	}
+
+	private static <T extends SqlFluent<?>> T forwardOnly(final T query) {
+		query.context()
+				.setResultSetType(ResultSet.TYPE_FORWARD_ONLY)
+				.setResultSetConcurrency(ResultSet.CONCUR_READ_ONLY);
+		return query;
+	}
+
+	/**
+	 * The statement is created when the stream is requested, so the fetch size of the agent is only changed for it.
+	 */
+	private <T> T withFetchSize(final Supplier<T> execution) {
+		var original = agent.getFetchSize();
+		agent.setFetchSize(fetchSize);
+		try {
+			return execution.get();
+		} finally {
+			agent.setFetchSize(original);
+		}
+	}
+}
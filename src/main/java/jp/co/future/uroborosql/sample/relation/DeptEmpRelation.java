@@ -0,0 +1,43 @@
+package jp.co.future.uroborosql.sample.relation;
+
+import jp.co.future.uroborosql.sample.entity.Department;
+import jp.co.future.uroborosql.sample.entity.DeptEmp;
+import jp.co.future.uroborosql.sample.entity.Employee;
+
+/**
+ * A dept_emp row with the employee and the department it refers to.
+ */
+public class DeptEmpRelation {
+	private final DeptEmp deptEmp;
+	private final Employee employee;
+	private final Department department;
+
+	public DeptEmpRelation(final DeptEmp deptEmp, final Employee employee, final Department department) {
+		this.deptEmp = deptEmp;
+		this.employee = employee;
+		this.department = department;
+	}
+
+	public DeptEmp getDeptEmp() {
+		return deptEmp;
+	}
+
+	/**
+	 * @return employee. <code>null</code> when the employee does not exist.
+	 */
+	public Employee getEmployee() {
+		return employee;
+	}
+
+	/**
+	 * @return department. <code>null</code> when the department does not exist.
+	 */
+	public Department getDepartment() {
+		return department;
+	}
+
+	@Override
+	public String toString() {
+		return "DeptEmpRelation [deptEmp=" + deptEmp + ", employee=" + employee + ", department=" + department + "]";
+	}
+}
@@ -0,0 +1,163 @@
+package jp.co.future.uroborosql.sample.relation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.sample.batch.BindParameterLimits;
+import jp.co.future.uroborosql.sample.entity.Department;
+import jp.co.future.uroborosql.sample.entity.DeptEmp;
+import jp.co.future.uroborosql.sample.entity.Employee;
+import jp.co.future.uroborosql.sample.mapping.EntityMetadata;
+
+/**
+ * Loads related entities with <code>IN (...)</code> queries instead of one query per row.
+ * <p>
+ * The keys are deduplicated and split into chunks of at most <code>chunkSize</code> values (and never more than the
+ * bind parameter limit of the database, see {@link BindParameterLimits}), and each chunk is fetched with
+ * <code>agent.query(entityType).in(property, chunk)</code>.
+ *
+ * <pre>
+ * try (var relations = new RelationLoader(agent).loadDeptEmps(agent.query(DeptEmp.class).stream())) {
+ * 	relations.forEach(r -&gt; ...);
+ * }
+ * </pre>
+ */
+public class RelationLoader {
+	private final SqlAgent agent;
+	private final int parameterLimit;
+	private int chunkSize = 1000;
+
+	public RelationLoader(final SqlAgent agent) {
+		this.agent = agent;
+		this.parameterLimit = BindParameterLimits.of(agent.getSqlConfig().getDialect());
+	}
+
+	/**
+	 * Set the max number of keys per query. default is 1000.
+	 *
+	 * @param chunkSize keys per query
+	 * @return RelationLoader
+	 */
+	public RelationLoader setChunkSize(final int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive. chunkSize=" + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Fetch the entities whose unique property value is one of the keys.
+	 *
+	 * @param <E> entity type
+	 * @param entityType entity class
+	 * @param property unique property compared with the keys (e.g. <code>empNo</code>)
+	 * @param keys keys. duplicates and <code>null</code> are ignored.
+	 * @return entities by their property value
+	 */
+	public <E> Map<Object, E> findAll(final Class<E> entityType, final String property, final Collection<?> keys) {
+		var column = EntityMetadata.of(entityType).getColumn(property)
+				.orElseThrow(() -> new IllegalArgumentException(
+						"Unknown property. entityType=" + entityType.getName() + ", property=" + property));
+		Set<Object> distinct = new LinkedHashSet<>(keys);
+		distinct.remove(null);
+
+		Map<Object, E> entities = new HashMap<>(distinct.size() * 4 / 3 + 1);
+		var size = Math.min(chunkSize, parameterLimit);
+		List<Object> chunk = new ArrayList<>(Math.min(size, distinct.size()));
+		for (var key : distinct) {
+			chunk.add(key);
+			if (chunk.size() == size) {
+				fetch(entityType, column, chunk, entities);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			fetch(entityType, column, chunk, entities);
+		}
+		return entities;
+	}
+
+	/**
+	 * Stitch the employee and the department to each dept_emp row.
+	 * <p>
+	 * The rows are read in chunks, so two queries are executed per chunk and the memory used does not depend on the
+	 * number of rows. Departments are kept across chunks because there are few of them.
+	 *
+	 * @param deptEmps dept_emp rows
+	 * @return relations in the order of the rows
+	 */
+	public Stream<DeptEmpRelation> loadDeptEmps(final Stream<DeptEmp> deptEmps) {
+		var iterator = new Iterator<DeptEmpRelation>() {
+			private final Iterator<DeptEmp> rows = deptEmps.iterator();
+			private final Map<Object, Department> departments = new HashMap<>();
+			private Iterator<DeptEmpRelation> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				if (!current.hasNext() && rows.hasNext()) {
+					current = loadChunk(rows, departments).iterator();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public DeptEmpRelation next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+				.onClose(deptEmps::close);
+	}
+
+	private List<DeptEmpRelation> loadChunk(final Iterator<DeptEmp> rows, final Map<Object, Department> departments) {
+		var size = Math.min(chunkSize, parameterLimit);
+		List<DeptEmp> chunk = new ArrayList<>(size);
+		Set<Object> empNos = new LinkedHashSet<>();
+		Set<Object> deptNos = new LinkedHashSet<>();
+		while (chunk.size() < size && rows.hasNext()) {
+			var row = rows.next();
+			chunk.add(row);
+			empNos.add(row.getEmpNo());
+			if (!departments.containsKey(row.getDeptNo())) {
+				deptNos.add(row.getDeptNo());
+			}
+		}
+
+		var employees = findAll(Employee.class, "empNo", empNos);
+		if (!deptNos.isEmpty()) {
+			var found = findAll(Department.class, "deptNo", deptNos);
+			// remember missing departments too, so that they are not queried again
+			deptNos.forEach(deptNo -> departments.put(deptNo, found.get(deptNo)));
+		}
+
+		List<DeptEmpRelation> relations = new ArrayList<>(chunk.size());
+		for (var row : chunk) {
+			relations.add(new DeptEmpRelation(row, employees.get(row.getEmpNo()), departments.get(row.getDeptNo())));
+		}
+		return relations;
+	}
+
+	private <E> void fetch(final Class<E> entityType, final EntityMetadata.Column column, final List<Object> keys,
+			final Map<Object, E> entities) {
+		for (var entity : agent.query(entityType).in(column.getName(), keys).collect()) {
+			entities.put(column.getValue(entity), entity);
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package jp.co.future.uroborosql.sample.routing;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.config.SqlConfig;
+import jp.co.future.uroborosql.exception.UroborosqlRuntimeException;
+
+/**
+ * Splits the reads and the writes between a primary database and its read replicas.
+ * <p>
+ * {@link #agent()} returns a SqlAgent that opens the SqlAgents of the primary and of a replica lazily, and routes each
+ * call to one of them.
+ * <ul>
+ * <li><code>query()</code>, <code>queryWith()</code>, the entity <code>query(Class)</code> and <code>find()</code> go
+ * to a replica, chosen once per SqlAgent by {@link Balancing}.</li>
+ * <li>The writes (<code>update</code>, <code>batch</code>, <code>insert</code>, <code>inserts</code>,
+ * <code>merge</code>, <code>delete</code>, <code>truncate</code>, <code>proc</code>, ...) go to the primary, and so
+ * does every call inside <code>agent.required(...)</code> and <code>agent.requiresNew(...)</code>.</li>
+ * <li>The other calls (<code>setRollbackOnly</code>, <code>commit</code>, <code>getSqlConfig</code>, ...) go to the
+ * primary without counting as a write.</li>
+ * <li>Read your writes: once the SqlAgent has written to the primary, its reads go to the primary too, and so do the
+ * reads of the same thread during the sticky window after the write (default 1 second, which should be longer than
+ * the replication lag).</li>
+ * <li>Settings of the SqlAgent (<code>setFetchSize</code>, ...) are applied to both SqlAgents.</li>
+ * </ul>
+ *
+ * <pre>
+ * var routing = new ReadWriteSqlConfig(primaryConfig)
+ * 		.addReplica(replicaConfig1)
+ * 		.addReplica(replicaConfig2)
+ * 		.setBalancing(ReadWriteSqlConfig.Balancing.LEAST_LOADED);
+ * try (var agent = routing.agent()) {
+ * 	agent.query("department/select_department").collect(); // replica
+ * 	agent.required(() -&gt; agent.update("department/insert_department").param("deptName", "sales").count()); // primary
+ * }
+ * </pre>
+ */
+public class ReadWriteSqlConfig {
+	/**
+	 * How a replica is chosen for a SqlAgent.
+	 */
+	public enum Balancing {
+		/** each replica in turn */
+		ROUND_ROBIN,
+		/** the replica with the fewest open SqlAgents */
+		LEAST_LOADED
+	}
+
+	/** calls routed to a replica */
+	private static final Set<String> READS = Set.of("query", "queryWith", "find");
+	/** calls that write to the primary */
+	private static final Set<String> WRITES = Set.of("update", "updateWith", "updateAndReturn", "batch",
+			"batchWith", "insert", "insertAndReturn", "inserts", "insertsAndReturn", "updates", "updatesAndReturn",
+			"merge", "mergeAndReturn", "mergeWithLocking", "mergeWithLockingAndReturn", "delete", "deleteWith",
+			"truncate", "proc", "procWith");
+	/** calls whose callback runs in a transaction of the primary */
+	private static final Set<String> TRANSACTIONS = Set.of("required", "requiresNew");
+	/** settings applied to the SqlAgents of both sides */
+	private static final Set<String> SETTINGS = Set.of("setFetchSize", "setQueryTimeout", "setMapKeyCaseFormat",
+			"setInsertsType");
+
+	private final SqlConfig primary;
+	private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+	private final AtomicInteger next = new AtomicInteger();
+	private final LongAdder primaryReads = new LongAdder();
+	/** System.nanoTime() of the last write of the thread */
+	private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+	private Balancing balancing = Balancing.ROUND_ROBIN;
+	private long stickyWindowNanos = Duration.ofSeconds(1).toNanos();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param primary SqlConfig of the primary database
+	 */
+	public ReadWriteSqlConfig(final SqlConfig primary) {
+		this.primary = primary;
+	}
+
+	/**
+	 * Add a read replica. Without replicas all calls go to the primary.
+	 *
+	 * @param replica SqlConfig of the replica
+	 * @return ReadWriteSqlConfig
+	 */
+	public ReadWriteSqlConfig addReplica(final SqlConfig replica) {
+		if (replica == null) {
+			throw new IllegalArgumentException("replica must not be null.");
+		}
+		replicas.add(new Replica(replica));
+		return this;
+	}
+
+	/**
+	 * Set how a replica is chosen. default is {@link Balancing#ROUND_ROBIN}.
+	 *
+	 * @param balancing Balancing
+	 * @return ReadWriteSqlConfig
+	 */
+	public ReadWriteSqlConfig setBalancing(final Balancing balancing) {
+		if (balancing == null) {
+			throw new IllegalArgumentException("balancing must not be null.");
+		}
+		this.balancing = balancing;
+		return this;
+	}
+
+	/**
+	 * Set how long the reads of a thread stay on the primary after it has written. default is 1 second.
+	 *
+	 * @param stickyWindow sticky window. {@link Duration#ZERO} routes the reads of the next SqlAgent to the replicas
+	 *            right after the write.
+	 * @return ReadWriteSqlConfig
+	 */
+	public ReadWriteSqlConfig setStickyWindow(final Duration stickyWindow) {
+		if (stickyWindow.isNegative()) {
+			throw new IllegalArgumentException("stickyWindow must not be negative. stickyWindow=" + stickyWindow);
+		}
+		this.stickyWindowNanos = stickyWindow.toNanos();
+		return this;
+	}
+
+	/**
+	 * Create a SqlAgent that routes the reads to a replica and the writes to the primary. It must be used by one thread
+	 * like the SqlAgent of a SqlConfig.
+	 *
+	 * @return SqlAgent
+	 */
+	public SqlAgent agent() {
+		return (SqlAgent) Proxy.newProxyInstance(SqlAgent.class.getClassLoader(), new Class<?>[] { SqlAgent.class },
+				new RoutingAgent());
+	}
+
+	/**
+	 * @return SqlConfig of the primary database
+	 */
+	public SqlConfig getPrimary() {
+		return primary;
+	}
+
+	/**
+	 * @return number of the <code>query</code> calls routed to the primary
+	 */
+	public long getPrimaryReadCount() {
+		return primaryReads.sum();
+	}
+
+	/**
+	 * @return number of the <code>query</code> calls routed to each replica, in the order they were added
+	 */
+	public List<Long> getReplicaReadCounts() {
+		return replicas.stream().map(r -> r.reads.sum()).collect(Collectors.toList());
+	}
+
+	/**
+	 * Keep the reads of the current thread on the primary for the sticky window, e.g. after a write made without this
+	 * class.
+	 */
+	public void markWritten() {
+		lastWrite.set(System.nanoTime());
+	}
+
+	private boolean isSticky() {
+		var last = lastWrite.get();
+		if (last == null) {
+			return false;
+		}
+		if (System.nanoTime() - last < stickyWindowNanos) {
+			return true;
+		}
+		lastWrite.remove();
+		return false;
+	}
+
+	private Replica chooseReplica() {
+		var candidates = replicas;
+		if (balancing == Balancing.LEAST_LOADED) {
+			Replica chosen = null;
+			// start at a rotating position so that ties are spread
+			var start = Math.floorMod(next.getAndIncrement(), candidates.size());
+			for (var i = 0; i < candidates.size(); i++) {
+				var replica = candidates.get((start + i) % candidates.size());
+				if (chosen == null || replica.open.get() < chosen.open.get()) {
+					chosen = replica;
+				}
+			}
+			return chosen;
+		}
+		return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+	}
+
+	/**
+	 * A replica and its load.
+	 */
+	private static final class Replica {
+		private final SqlConfig config;
+		/** number of open SqlAgents */
+		private final AtomicInteger open = new AtomicInteger();
+		private final LongAdder reads = new LongAdder();
+
+		private Replica(final SqlConfig config) {
+			this.config = config;
+		}
+	}
+
+	/**
+	 * The SqlAgent returned by {@link ReadWriteSqlConfig#agent()}.
+	 */
+	private final class RoutingAgent implements InvocationHandler {
+		private final List<Object[]> settings = new ArrayList<>();
+		private SqlAgent primaryAgent;
+		private SqlAgent replicaAgent;
+		private Replica replica;
+		private int transactionDepth = 0;
+		private boolean written = false;
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			var name = method.getName();
+			if (method.getDeclaringClass() == Object.class) {
+				switch (name) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return "RoutingAgent [replica=" + (replica != null) + ", written=" + written + "]";
+				}
+			}
+			if ("close".equals(name)) {
+				close();
+				return null;
+			}
+			if (SETTINGS.contains(name)) {
+				settings.add(new Object[] { method, args });
+				for (var agent : new SqlAgent[] { primaryAgent, replicaAgent }) {
+					if (agent != null) {
+						call(agent, method, args);
+					}
+				}
+				return method.getReturnType() == SqlAgent.class ? proxy : null;
+			}
+			if (READS.contains(name) && readFromReplica()) {
+				var agent = replica();
+				replica.reads.increment();
+				return call(agent, method, args);
+			}
+			if (TRANSACTIONS.contains(name)) {
+				transactionDepth++;
+				try {
+					return call(primary(), method, args);
+				} finally {
+					transactionDepth--;
+					if (transactionDepth == 0 && written) {
+						markWritten();
+					}
+				}
+			}
+			if (READS.contains(name)) {
+				primaryReads.increment();
+			} else if (WRITES.contains(name)) {
+				written = true;
+				markWritten();
+			}
+			return call(primary(), method, args);
+		}
+
+		private boolean readFromReplica() {
+			return !replicas.isEmpty() && transactionDepth == 0 && !written && !isSticky();
+		}
+
+		private SqlAgent primary() {
+			if (primaryAgent == null) {
+				primaryAgent = applySettings(primary.agent());
+			}
+			return primaryAgent;
+		}
+
+		private SqlAgent replica() {
+			if (replicaAgent == null) {
+				var chosen = chooseReplica();
+				chosen.open.incrementAndGet();
+				try {
+					replicaAgent = applySettings(chosen.config.agent());
+				} catch (RuntimeException ex) {
+					chosen.open.decrementAndGet();
+					throw ex;
+				}
+				replica = chosen;
+			}
+			return replicaAgent;
+		}
+
+		private SqlAgent applySettings(final SqlAgent agent) {
+			for (var setting : settings) {
+				call(agent, (Method) setting[0], (Object[]) setting[1]);
+			}
+			return agent;
+		}
+
+		private void close() {
+			try {
+				if (replicaAgent != null) {
+					replicaAgent.close();
+				}
+			} finally {
+				if (replica != null) {
+					replica.open.decrementAndGet();
+				}
+				replicaAgent = null;
+				replica = null;
+				if (primaryAgent != null) {
+					// the local transaction of the SqlAgent is committed here
+					primaryAgent.close();
+					primaryAgent = null;
+					if (written) {
+						markWritten();
+					}
+				}
+			}
+		}
+
+		private Object call(final SqlAgent agent, final Method method, final Object[] args) {
+			try {
+				return method.invoke(agent, args);
+			} catch (InvocationTargetException ex) {
+				var cause = ex.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new UroborosqlRuntimeException(cause);
+			} catch (IllegalAccessException ex) {
+				throw new UroborosqlRuntimeException(ex);
+			}
+		}
+	}
+}
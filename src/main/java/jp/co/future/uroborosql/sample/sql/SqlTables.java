@@ -0,0 +1,141 @@
+package jp.co.future.uroborosql.sample.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Extracts the operation and the table names from a SQL statement.
+ * <p>
+ * Comments (including the 2-way SQL comments) and string literals are ignored. Tables are taken from the names that
+ * follow <code>FROM</code> (including comma separated lists), <code>JOIN</code>, <code>INTO</code>,
+ * <code>UPDATE</code> and <code>TABLE</code>. The result is meant for grouping and invalidation, where an extra name
+ * is harmless: a keyword-like identifier after <code>FROM</code> (e.g. <code>extract(year from birth_date)</code>)
+ * is reported as a table.
+ */
+public final class SqlTables {
+	private static final Set<String> TABLE_KEYWORDS = Set.of("from", "join", "into", "update", "table");
+	private static final Set<String> CLAUSE_KEYWORDS = Set.of("where", "group", "order", "having", "join", "inner",
+			"left", "right", "full", "outer", "cross", "natural", "on", "using", "union", "intersect", "except",
+			"minus", "limit", "offset", "fetch", "for", "set", "values", "select", "when", "then", "connect", "start",
+			"window", "returning");
+
+	private SqlTables() {
+	}
+
+	/**
+	 * Get the operation of the SQL.
+	 *
+	 * @param sql SQL
+	 * @return first keyword in lower case (<code>select</code>, <code>insert</code>, ...). empty string for an empty
+	 *         SQL.
+	 */
+	public static String operation(final String sql) {
+		for (var token : tokenize(sql)) {
+			if (Character.isLetter(token.charAt(0))) {
+				return token.toLowerCase(Locale.ROOT);
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Get the tables referenced by the SQL.
+	 *
+	 * @param sql SQL
+	 * @return table names in lower case, in order of appearance
+	 */
+	public static Set<String> tables(final String sql) {
+		var tokens = tokenize(sql);
+		Set<String> tables = new LinkedHashSet<>();
+		for (var i = 0; i < tokens.size(); i++) {
+			var keyword = tokens.get(i).toLowerCase(Locale.ROOT);
+			if (!TABLE_KEYWORDS.contains(keyword)) {
+				continue;
+			}
+			if ("update".equals(keyword) && i > 0 && "for".equalsIgnoreCase(tokens.get(i - 1))) {
+				// select ... for update
+				continue;
+			}
+			var pos = i + 1;
+			while (pos < tokens.size() && isName(tokens.get(pos))) {
+				tables.add(unquote(tokens.get(pos)));
+				pos++;
+				if (!"from".equals(keyword)) {
+					break;
+				}
+				// skip the alias of "from a x, b y"
+				if (pos < tokens.size() && "as".equalsIgnoreCase(tokens.get(pos))) {
+					pos++;
+				}
+				if (pos < tokens.size() && isName(tokens.get(pos))) {
+					pos++;
+				}
+				if (pos < tokens.size() && ",".equals(tokens.get(pos))) {
+					pos++;
+				} else {
+					break;
+				}
+			}
+		}
+		return Collections.unmodifiableSet(tables);
+	}
+
+	private static boolean isName(final String token) {
+		var c = token.charAt(0);
+		return (Character.isLetter(c) || c == '_' || c == '"')
+				&& !CLAUSE_KEYWORDS.contains(token.toLowerCase(Locale.ROOT));
+	}
+
+	private static String unquote(final String name) {
+		return name.replace("\"", "").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Split the SQL into names (<code>schema.table</code> is one token) and single punctuation characters.
+	 */
+	private static List<String> tokenize(final String sql) {
+		List<String> tokens = new ArrayList<>();
+		var len = sql.length();
+		var i = 0;
+		while (i < len) {
+			var c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '/' && sql.startsWith("/*", i)) {
+				var end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? len : end + 2;
+			} else if (c == '-' && sql.startsWith("--", i)) {
+				var end = sql.indexOf('\n', i);
+				i = end < 0 ? len : end + 1;
+			} else if (c == '\'') {
+				var end = i + 1;
+				while (end < len && (sql.charAt(end) != '\'' || end + 1 < len && sql.charAt(end + 1) == '\'')) {
+					end += sql.charAt(end) == '\'' ? 2 : 1;
+				}
+				i = end + 1;
+			} else if (Character.isLetterOrDigit(c) || c == '_' || c == '"') {
+				var start = i;
+				while (i < len) {
+					var ch = sql.charAt(i);
+					if (ch == '"') {
+						var end = sql.indexOf('"', i + 1);
+						i = end < 0 ? len : end + 1;
+					} else if (Character.isLetterOrDigit(ch) || ch == '_' || ch == '$' || ch == '.') {
+						i++;
+					} else {
+						break;
+					}
+				}
+				tokens.add(sql.substring(start, i));
+			} else {
+				tokens.add(String.valueOf(c));
+				i++;
+			}
+		}
+		return tokens;
+	}
+}
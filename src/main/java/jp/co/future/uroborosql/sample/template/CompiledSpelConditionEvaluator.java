@@ -0,0 +1,166 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * {@link ConditionEvaluator} that compiles each distinct condition to bytecode with the SpEL compiler.
+ * <p>
+ * The condition is rewritten so that bind parameters are referenced as variables
+ * (<code>SF.isNotEmpty(empNo)</code> becomes <code>#SF.isNotEmpty(#empNo)</code>), because the compiler emits typed
+ * code for variable references while properties of a Map root can not be compiled.
+ * The parsed expression is cached per condition, and is compiled right after an evaluation that reached every node
+ * (e.g. <code>#female</code> of <code>#female != null and #female</code> is only typed once female is given).
+ * <p>
+ * The compiled code is typed by the values seen at the first evaluation. When a later value has another type, the
+ * expression falls back to interpretation and is compiled again by SpEL after enough evaluations
+ * ({@link SpelCompilerMode#MIXED}).
+ */
+public class CompiledSpelConditionEvaluator implements ConditionEvaluator {
+	/** evaluations that try to compile the expression. SpEL itself retries after that in MIXED mode. */
+	private static final int COMPILE_ATTEMPTS = 16;
+
+	private static final Set<String> KEYWORDS = Set.of("and", "or", "not", "null", "true", "false", "eq", "ne", "lt",
+			"gt", "le", "ge", "div", "mod", "matches", "between", "instanceof", "new");
+
+	private final SpelExpressionParser parser;
+	private final boolean compile;
+	private final EvaluationContext shared;
+	private final Map<String, Compiled> expressions = new ConcurrentHashMap<>();
+	private final LongAdder compiledCount = new LongAdder();
+
+	public CompiledSpelConditionEvaluator() {
+		this(SpelCompilerMode.MIXED);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param compilerMode compiler mode. {@link SpelCompilerMode#OFF} only interprets the rewritten conditions (e.g. to
+	 *            measure the effect of the compiler).
+	 */
+	public CompiledSpelConditionEvaluator(final SpelCompilerMode compilerMode) {
+		this.parser = new SpelExpressionParser(new SpelParserConfiguration(compilerMode, getClass().getClassLoader()));
+		this.compile = compilerMode != SpelCompilerMode.OFF;
+		var context = new StandardEvaluationContext();
+		context.addPropertyAccessor(ParamsPropertyAccessor.INSTANCE);
+		this.shared = context;
+	}
+
+	@Override
+	public boolean evaluate(final String condition, final Map<String, Object> params) {
+		var compiled = expressions.computeIfAbsent(condition,
+				c -> new Compiled((SpelExpression) parser.parseExpression(toVariables(c))));
+		var result = compiled.expression.getValue(new ParamsEvaluationContext(shared, params), Boolean.class);
+		if (compile && compiled.attempts < COMPILE_ATTEMPTS) {
+			// exit types of the nodes are known after they are evaluated
+			if (compiled.expression.compileExpression()) {
+				compiled.attempts = COMPILE_ATTEMPTS;
+				compiledCount.increment();
+			} else {
+				compiled.attempts++;
+			}
+		}
+		return Boolean.TRUE.equals(result);
+	}
+
+	/**
+	 * @return number of conditions compiled to bytecode
+	 */
+	public long getCompiledCount() {
+		return compiledCount.sum();
+	}
+
+	/**
+	 * Rewrite the parameter references of the condition to variable references.
+	 *
+	 * @param condition condition
+	 * @return condition referencing the parameters as <code>#name</code>
+	 */
+	static String toVariables(final String condition) {
+		var sb = new StringBuilder(condition.length() + 8);
+		var len = condition.length();
+		var typeDepth = 0;
+		var i = 0;
+		while (i < len) {
+			var c = condition.charAt(i);
+			if (c == '\'' || c == '"') {
+				var end = condition.indexOf(c, i + 1);
+				while (end > 0 && end + 1 < len && condition.charAt(end + 1) == c) {
+					end = condition.indexOf(c, end + 2);
+				}
+				end = end < 0 ? len : end + 1;
+				sb.append(condition, i, end);
+				i = end;
+			} else if (Character.isDigit(c)) {
+				var start = i;
+				while (i < len && (Character.isLetterOrDigit(condition.charAt(i)) || condition.charAt(i) == '.')) {
+					i++;
+				}
+				sb.append(condition, start, i);
+			} else if (Character.isJavaIdentifierStart(c)) {
+				var start = i;
+				while (i < len && Character.isJavaIdentifierPart(condition.charAt(i))) {
+					i++;
+				}
+				var word = condition.substring(start, i);
+				var next = nextNonSpace(condition, i);
+				if ("T".equals(word) && next == '(') {
+					typeDepth++;
+				} else if (typeDepth == 0 && next != '(' && !KEYWORDS.contains(word.toLowerCase(Locale.ROOT))
+						&& isReferenceStart(sb)) {
+					sb.append('#');
+				}
+				sb.append(word);
+			} else {
+				if (typeDepth > 0 && c == ')') {
+					typeDepth--;
+				}
+				sb.append(c);
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return <code>true</code> when the identifier is not a member of an object, a variable or a bean reference
+	 */
+	private static boolean isReferenceStart(final CharSequence sb) {
+		for (var i = sb.length() - 1; i >= 0; i--) {
+			var c = sb.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				return c != '.' && c != '#' && c != '@' && c != '$' && c != '&';
+			}
+		}
+		return true;
+	}
+
+	private static char nextNonSpace(final String str, final int from) {
+		for (var i = from; i < str.length(); i++) {
+			if (!Character.isWhitespace(str.charAt(i))) {
+				return str.charAt(i);
+			}
+		}
+		return 0;
+	}
+
+	private static final class Compiled {
+		private final SpelExpression expression;
+		private volatile int attempts = 0;
+
+		private Compiled(final SpelExpression expression) {
+			this.expression = expression;
+		}
+	}
+}
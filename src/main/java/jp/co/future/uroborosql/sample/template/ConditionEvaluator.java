@@ -0,0 +1,18 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.util.Map;
+
+/**
+ * Evaluates the condition of <code>/*IF*&#47;</code> and <code>/*ELIF*&#47;</code> nodes.
+ */
+@FunctionalInterface
+public interface ConditionEvaluator {
+	/**
+	 * Evaluate the condition.
+	 *
+	 * @param condition condition expression (e.g. <code>SF.isNotEmpty(empNo)</code>)
+	 * @param params bind parameters
+	 * @return result of the condition
+	 */
+	boolean evaluate(String condition, Map<String, Object> params);
+}
@@ -0,0 +1,77 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Functions available as <code>SF</code> in <code>/*IF*&#47;</code> conditions.
+ */
+public final class ConditionFunctions {
+	/** shared instance */
+	public static final ConditionFunctions INSTANCE = new ConditionFunctions();
+
+	private ConditionFunctions() {
+	}
+
+	/**
+	 * Check that the value is null or empty.
+	 *
+	 * @param value value
+	 * @return <code>true</code> when the value is null, an empty string, an empty collection or an empty array
+	 */
+	public boolean isEmpty(final Object value) {
+		if (value == null) {
+			return true;
+		} else if (value instanceof CharSequence) {
+			return ((CharSequence) value).length() == 0;
+		} else if (value instanceof Collection) {
+			return ((Collection<?>) value).isEmpty();
+		} else if (value instanceof Map) {
+			return ((Map<?, ?>) value).isEmpty();
+		} else if (value.getClass().isArray()) {
+			return Array.getLength(value) == 0;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Negation of {@link #isEmpty(Object)}.
+	 *
+	 * @param value value
+	 * @return <code>true</code> when the value is not empty
+	 */
+	public boolean isNotEmpty(final Object value) {
+		return !isEmpty(value);
+	}
+
+	/**
+	 * Check that the value is empty or consists of whitespace only.
+	 *
+	 * @param value value
+	 * @return <code>true</code> when the value is blank
+	 */
+	public boolean isBlank(final Object value) {
+		if (value instanceof CharSequence) {
+			var cs = (CharSequence) value;
+			for (var i = 0; i < cs.length(); i++) {
+				if (!Character.isWhitespace(cs.charAt(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return isEmpty(value);
+	}
+
+	/**
+	 * Negation of {@link #isBlank(Object)}.
+	 *
+	 * @param value value
+	 * @return <code>true</code> when the value is not blank
+	 */
+	public boolean isNotBlank(final Object value) {
+		return !isBlank(value);
+	}
+}
@@ -0,0 +1,222 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Shape of the bind parameters that decides the result of <code>/*IF*&#47;</code> conditions.
+ * <p>
+ * A condition is shape-determined when it only combines the following with <code>and</code>, <code>or</code>,
+ * <code>not</code> and parentheses:
+ * <ul>
+ * <li><code>name != null</code>, <code>name == null</code></li>
+ * <li><code>name == true</code>, <code>name == false</code>, <code>name</code></li>
+ * <li><code>SF.isEmpty(name)</code>, <code>SF.isNotEmpty(name)</code>, <code>SF.isBlank(name)</code>,
+ * <code>SF.isNotBlank(name)</code></li>
+ * </ul>
+ * For such conditions every parameter Map of the same shape (null, empty, blank, true, false or other value for each
+ * referenced parameter) gives the same result, so the rendered SQL can be shared.
+ */
+final class ParameterShape {
+	private ParameterShape() {
+	}
+
+	/**
+	 * Collect the parameter names referenced by the condition.
+	 *
+	 * @param condition condition
+	 * @return referenced names. <code>null</code> when the condition is not shape-determined.
+	 */
+	static Set<String> referencedNames(final String condition) {
+		try {
+			var parser = new Parser(tokenize(condition));
+			parser.parseOr();
+			if (parser.pos != parser.tokens.size()) {
+				return null;
+			}
+			return parser.names;
+		} catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Build the shape key of the parameters.
+	 *
+	 * @param names names referenced by the conditions, in a fixed order
+	 * @param params bind parameters
+	 * @return shape key
+	 */
+	static String of(final List<String> names, final Map<String, Object> params) {
+		var shape = new char[names.size()];
+		for (var i = 0; i < shape.length; i++) {
+			shape[i] = classify(params.get(names.get(i)));
+		}
+		return new String(shape);
+	}
+
+	private static char classify(final Object value) {
+		if (value == null) {
+			return 'N';
+		} else if (value instanceof Boolean) {
+			return (Boolean) value ? 'T' : 'F';
+		} else if (value instanceof CharSequence) {
+			var str = value.toString();
+			if (str.isEmpty()) {
+				return 'E';
+			} else if (str.isBlank()) {
+				return 'W';
+			} else if ("true".equalsIgnoreCase(str)) {
+				return 't';
+			} else if ("false".equalsIgnoreCase(str)) {
+				return 'f';
+			}
+			return 'P';
+		} else if (value instanceof Collection) {
+			return ((Collection<?>) value).isEmpty() ? 'E' : 'P';
+		} else if (value instanceof Map) {
+			return ((Map<?, ?>) value).isEmpty() ? 'E' : 'P';
+		} else if (value.getClass().isArray()) {
+			return Array.getLength(value) == 0 ? 'E' : 'P';
+		}
+		return 'P';
+	}
+
+	private static List<String> tokenize(final String condition) {
+		List<String> tokens = new ArrayList<>();
+		var i = 0;
+		var len = condition.length();
+		while (i < len) {
+			var c = condition.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (Character.isJavaIdentifierStart(c)) {
+				var start = i;
+				while (i < len && Character.isJavaIdentifierPart(condition.charAt(i))) {
+					i++;
+				}
+				tokens.add(condition.substring(start, i));
+			} else if (i + 1 < len && (condition.startsWith("==", i) || condition.startsWith("!=", i)
+					|| condition.startsWith("&&", i) || condition.startsWith("||", i))) {
+				tokens.add(condition.substring(i, i + 2));
+				i += 2;
+			} else if (c == '(' || c == ')' || c == '.' || c == '!') {
+				tokens.add(String.valueOf(c));
+				i++;
+			} else {
+				throw new IllegalArgumentException("unsupported character. " + c);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Recursive descent parser that accepts the shape-determined subset of the expression language.
+	 */
+	private static final class Parser {
+		private static final Set<String> FUNCTIONS = Set.of("isEmpty", "isNotEmpty", "isBlank", "isNotBlank");
+		private static final Set<String> KEYWORDS = Set.of("and", "or", "not", "null", "true", "false");
+
+		private final List<String> tokens;
+		private final Set<String> names = new TreeSet<>();
+		private int pos = 0;
+
+		private Parser(final List<String> tokens) {
+			this.tokens = tokens;
+		}
+
+		private void parseOr() {
+			parseAnd();
+			while (pos < tokens.size() && (keyword("or") || tokens.get(pos).equals("||"))) {
+				pos++;
+				parseAnd();
+			}
+		}
+
+		private void parseAnd() {
+			parseUnary();
+			while (pos < tokens.size() && (keyword("and") || tokens.get(pos).equals("&&"))) {
+				pos++;
+				parseUnary();
+			}
+		}
+
+		private void parseUnary() {
+			if (keyword("not") || tokens.get(pos).equals("!")) {
+				pos++;
+				parseUnary();
+			} else {
+				parsePrimary();
+			}
+		}
+
+		private void parsePrimary() {
+			var token = tokens.get(pos);
+			if (token.equals("(")) {
+				pos++;
+				parseOr();
+				expect(")");
+			} else if (keyword("null")) {
+				// null == name
+				pos++;
+				expectEquality();
+				names.add(identifier());
+			} else if (token.equals(SpelConditionEvaluator.FUNCTIONS_NAME) && pos + 1 < tokens.size()
+					&& tokens.get(pos + 1).equals(".")) {
+				// SF.isNotEmpty(name)
+				pos += 2;
+				if (!FUNCTIONS.contains(tokens.get(pos))) {
+					throw new IllegalArgumentException("unsupported function. " + tokens.get(pos));
+				}
+				pos++;
+				expect("(");
+				names.add(identifier());
+				expect(")");
+			} else {
+				names.add(identifier());
+				if (pos < tokens.size() && (tokens.get(pos).equals("==") || tokens.get(pos).equals("!="))) {
+					pos++;
+					if (!keyword("null") && !keyword("true") && !keyword("false")) {
+						throw new IllegalArgumentException("unsupported operand. " + tokens.get(pos));
+					}
+					pos++;
+				}
+			}
+		}
+
+		private String identifier() {
+			var token = tokens.get(pos);
+			if (!Character.isJavaIdentifierStart(token.charAt(0)) || KEYWORDS.contains(token.toLowerCase(Locale.ROOT))
+					|| pos + 1 < tokens.size() && tokens.get(pos + 1).equals(".")) {
+				throw new IllegalArgumentException("identifier expected. " + token);
+			}
+			pos++;
+			return token;
+		}
+
+		private void expectEquality() {
+			var token = tokens.get(pos);
+			if (!token.equals("==") && !token.equals("!=")) {
+				throw new IllegalArgumentException("equality expected. " + token);
+			}
+			pos++;
+		}
+
+		private void expect(final String expected) {
+			if (!tokens.get(pos).equals(expected)) {
+				throw new IllegalArgumentException(expected + " expected. " + tokens.get(pos));
+			}
+			pos++;
+		}
+
+		private boolean keyword(final String keyword) {
+			return pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(keyword);
+		}
+	}
+}
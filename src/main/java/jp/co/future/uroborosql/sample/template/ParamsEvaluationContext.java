@@ -0,0 +1,86 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.ConstructorResolver;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.OperatorOverloader;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypeLocator;
+import org.springframework.expression.TypedValue;
+
+/**
+ * EvaluationContext that exposes the bind parameters as variables (<code>#name</code>).
+ * <p>
+ * Everything except the root object and the variables is delegated to a shared context, so that creating it for each
+ * evaluation costs a single small object.
+ */
+final class ParamsEvaluationContext implements EvaluationContext {
+	private final EvaluationContext shared;
+	private final Map<String, Object> params;
+
+	ParamsEvaluationContext(final EvaluationContext shared, final Map<String, Object> params) {
+		this.shared = shared;
+		this.params = params;
+	}
+
+	@Override
+	public TypedValue getRootObject() {
+		return new TypedValue(params);
+	}
+
+	@Override
+	public Object lookupVariable(final String name) {
+		return ParamsPropertyAccessor.param(params, name);
+	}
+
+	@Override
+	public void setVariable(final String name, final Object value) {
+		throw new UnsupportedOperationException("Bind parameters are read only.");
+	}
+
+	@Override
+	public List<PropertyAccessor> getPropertyAccessors() {
+		return shared.getPropertyAccessors();
+	}
+
+	@Override
+	public List<ConstructorResolver> getConstructorResolvers() {
+		return shared.getConstructorResolvers();
+	}
+
+	@Override
+	public List<MethodResolver> getMethodResolvers() {
+		return shared.getMethodResolvers();
+	}
+
+	@Override
+	public BeanResolver getBeanResolver() {
+		return shared.getBeanResolver();
+	}
+
+	@Override
+	public TypeLocator getTypeLocator() {
+		return shared.getTypeLocator();
+	}
+
+	@Override
+	public TypeConverter getTypeConverter() {
+		return shared.getTypeConverter();
+	}
+
+	@Override
+	public TypeComparator getTypeComparator() {
+		return shared.getTypeComparator();
+	}
+
+	@Override
+	public OperatorOverloader getOperatorOverloader() {
+		return shared.getOperatorOverloader();
+	}
+}
@@ -0,0 +1,61 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.util.Map;
+
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
+
+/**
+ * Reads bind parameters from the root Map. A missing parameter is <code>null</code>.
+ */
+final class ParamsPropertyAccessor implements PropertyAccessor {
+	/** shared instance */
+	static final PropertyAccessor INSTANCE = new ParamsPropertyAccessor();
+
+	private ParamsPropertyAccessor() {
+	}
+
+	@Override
+	public Class<?>[] getSpecificTargetClasses() {
+		return new Class<?>[] { Map.class };
+	}
+
+	@Override
+	public boolean canRead(final EvaluationContext context, final Object target, final String name) {
+		return target instanceof Map;
+	}
+
+	@Override
+	public TypedValue read(final EvaluationContext context, final Object target, final String name)
+			throws AccessException {
+		return new TypedValue(param((Map<?, ?>) target, name));
+	}
+
+	@Override
+	public boolean canWrite(final EvaluationContext context, final Object target, final String name) {
+		return false;
+	}
+
+	@Override
+	public void write(final EvaluationContext context, final Object target, final String name,
+			final Object newValue) throws AccessException {
+		throw new AccessException("Bind parameters are read only.");
+	}
+
+	/**
+	 * Get the bind parameter. <code>SF</code> is {@link ConditionFunctions} unless it is passed as a parameter.
+	 *
+	 * @param params bind parameters
+	 * @param name parameter name
+	 * @return parameter value
+	 */
+	static Object param(final Map<?, ?> params, final String name) {
+		var value = params.get(name);
+		if (value == null && SpelConditionEvaluator.FUNCTIONS_NAME.equals(name) && !params.containsKey(name)) {
+			return ConditionFunctions.INSTANCE;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,32 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * {@link ConditionEvaluator} that interprets the condition with SpEL.
+ * <p>
+ * The parsed expression is cached per condition, and is interpreted at each evaluation.
+ * <p>
+ * Bind parameters are resolved as properties of the root object, and <code>SF</code> refers to
+ * {@link ConditionFunctions}.
+ */
+public class SpelConditionEvaluator implements ConditionEvaluator {
+	/** property name of the functions */
+	static final String FUNCTIONS_NAME = "SF";
+
+	private final SpelExpressionParser parser = new SpelExpressionParser();
+	private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+	@Override
+	public boolean evaluate(final String condition, final Map<String, Object> params) {
+		var context = new StandardEvaluationContext(params);
+		context.addPropertyAccessor(ParamsPropertyAccessor.INSTANCE);
+		var expression = expressions.computeIfAbsent(condition, parser::parseExpression);
+		return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+	}
+}
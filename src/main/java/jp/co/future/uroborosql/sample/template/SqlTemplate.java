@@ -0,0 +1,312 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Node tree of a 2-way SQL, parsed once and rendered for each parameter set.
+ * <p>
+ * <code>/*IF*&#47;</code>, <code>/*ELIF*&#47;</code>, <code>/*ELSE*&#47;</code>, <code>/*BEGIN*&#47;</code> and
+ * <code>/*END*&#47;</code> are resolved here. Every other comment (bind parameters, constants and
+ * <code>_SQL_ID_</code>) is kept as text and is processed by uroboroSQL when the rendered SQL is executed.
+ */
+final class SqlTemplate {
+	/** AND/OR left right after WHERE when the first condition of a BEGIN block is dropped */
+	private static final Pattern WHERE_AND_OR = Pattern.compile("(?i)(\\bwhere\\s+(?:#+\\s*)*)(?:and|or)\\b");
+	/** comma left right after SELECT, SET, ORDER BY, GROUP BY or '(' when the first item is dropped */
+	private static final Pattern FIRST_COMMA = Pattern
+			.compile("(?i)((?:\\b(?:select|set|order\\s+by|group\\s+by)\\s+|\\(\\s*)(?:#+\\s*)*),");
+	/** lines left empty by the removed nodes */
+	private static final Pattern BLANK_LINE = Pattern.compile("(?m)^[ \\t]*\\r?\\n");
+	/** replaces the characters of comments in the mask of the SQL */
+	private static final char MASKED_COMMENT = '#';
+	/** replaces the characters of string literals in the mask of the SQL */
+	private static final char MASKED_LITERAL = '$';
+
+	private final List<Node> nodes;
+	private final List<String> shapeNames;
+	private final List<String> conditions;
+
+	private SqlTemplate(final List<Node> nodes, final List<String> conditions, final List<String> shapeNames) {
+		this.nodes = nodes;
+		this.conditions = conditions;
+		this.shapeNames = shapeNames;
+	}
+
+	/**
+	 * Parse the 2-way SQL.
+	 *
+	 * @param sql 2-way SQL
+	 * @return SqlTemplate
+	 */
+	static SqlTemplate parse(final String sql) {
+		Deque<List<Node>> stack = new ArrayDeque<>();
+		Deque<Object> owners = new ArrayDeque<>();
+		List<Node> root = new ArrayList<>();
+		List<String> conditions = new ArrayList<>();
+		var current = root;
+		var text = new StringBuilder();
+		// the text with its literals and comments masked, so that the cleanup of render() leaves them as they are
+		var mask = new StringBuilder();
+
+		var i = 0;
+		var len = sql.length();
+		while (i < len) {
+			var c = sql.charAt(i);
+			if (c == '\'') {
+				// string literal
+				var end = i + 1;
+				while (end < len) {
+					if (sql.charAt(end) == '\'') {
+						if (end + 1 < len && sql.charAt(end + 1) == '\'') {
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					end++;
+				}
+				end = Math.min(end + 1, len);
+				appendMasked(text, mask, sql, i, end, MASKED_LITERAL);
+				i = end;
+			} else if (c == '-' && sql.startsWith("--", i)) {
+				var end = sql.indexOf('\n', i);
+				end = end < 0 ? len : end;
+				var body = sql.substring(i + 2, end).trim();
+				if ("ELSE".equals(body) && owners.peek() instanceof IfNode) {
+					flush(text, mask, current);
+					current = ((IfNode) owners.peek()).elseBranch();
+				} else {
+					appendMasked(text, mask, sql, i, end, MASKED_COMMENT);
+				}
+				i = end;
+			} else if (c == '/' && sql.startsWith("/*", i)) {
+				var end = sql.indexOf("*/", i + 2);
+				if (end < 0) {
+					throw new IllegalArgumentException("Unclosed comment. position=" + i);
+				}
+				var body = sql.substring(i + 2, end).trim();
+				if (body.startsWith("IF ")) {
+					flush(text, mask, current);
+					var condition = body.substring(3).trim();
+					conditions.add(condition);
+					var node = new IfNode();
+					current.add(node);
+					stack.push(current);
+					owners.push(node);
+					current = node.addBranch(condition);
+				} else if (body.startsWith("ELIF ") && owners.peek() instanceof IfNode) {
+					flush(text, mask, current);
+					var condition = body.substring(5).trim();
+					conditions.add(condition);
+					current = ((IfNode) owners.peek()).addBranch(condition);
+				} else if ("ELSE".equals(body) && owners.peek() instanceof IfNode) {
+					flush(text, mask, current);
+					current = ((IfNode) owners.peek()).elseBranch();
+				} else if ("BEGIN".equals(body)) {
+					flush(text, mask, current);
+					var node = new BeginNode();
+					current.add(node);
+					stack.push(current);
+					owners.push(node);
+					current = node.children;
+				} else if ("END".equals(body)) {
+					if (owners.isEmpty()) {
+						throw new IllegalArgumentException("END without IF or BEGIN. position=" + i);
+					}
+					flush(text, mask, current);
+					owners.pop();
+					current = stack.pop();
+				} else {
+					appendMasked(text, mask, sql, i, end + 2, MASKED_COMMENT);
+				}
+				i = end + 2;
+			} else {
+				text.append(c);
+				mask.append(c);
+				i++;
+			}
+		}
+		if (!owners.isEmpty()) {
+			throw new IllegalArgumentException("IF or BEGIN without END.");
+		}
+		flush(text, mask, current);
+
+		Set<String> names = new TreeSet<>();
+		for (var condition : conditions) {
+			var referenced = ParameterShape.referencedNames(condition);
+			if (referenced == null) {
+				names = null;
+				break;
+			}
+			names.addAll(referenced);
+		}
+		return new SqlTemplate(root, conditions, names != null ? new ArrayList<>(names) : null);
+	}
+
+	private static void appendMasked(final StringBuilder text, final StringBuilder mask, final String sql,
+			final int start, final int end, final char masked) {
+		text.append(sql, start, end);
+		for (var i = start; i < end; i++) {
+			mask.append(masked);
+		}
+	}
+
+	private static void flush(final StringBuilder text, final StringBuilder mask, final List<Node> nodes) {
+		if (text.length() > 0) {
+			nodes.add(new TextNode(text.toString(), mask.toString()));
+			text.setLength(0);
+			mask.setLength(0);
+		}
+	}
+
+	/**
+	 * Whether the rendered SQL depends only on the shape of the parameters.
+	 *
+	 * @return <code>true</code> when the rendered SQL can be cached by shape
+	 */
+	boolean isCacheable() {
+		return shapeNames != null;
+	}
+
+	/**
+	 * Shape key of the parameters. Only valid for cacheable templates.
+	 *
+	 * @param params bind parameters
+	 * @return shape key
+	 */
+	String shapeOf(final Map<String, Object> params) {
+		return ParameterShape.of(shapeNames, params);
+	}
+
+	/**
+	 * Conditions used in the template, in order of appearance.
+	 *
+	 * @return conditions
+	 */
+	List<String> getConditions() {
+		return conditions;
+	}
+
+	/**
+	 * Resolve the IF/BEGIN nodes.
+	 *
+	 * @param params bind parameters
+	 * @param evaluator condition evaluator
+	 * @return SQL without IF/BEGIN nodes
+	 */
+	String render(final Map<String, Object> params, final ConditionEvaluator evaluator) {
+		var sql = new StringBuilder();
+		var mask = new StringBuilder();
+		renderNodes(nodes, params, evaluator, sql, mask);
+		removeAll(sql, mask, BLANK_LINE, 0);
+		removeAll(sql, mask, WHERE_AND_OR, 1);
+		removeAll(sql, mask, FIRST_COMMA, 1);
+		return sql.toString();
+	}
+
+	/**
+	 * Remove the matches of the pattern in the mask from the SQL and the mask. String literals and comments are masked,
+	 * so they are never changed. Comments (e.g. bind parameters) are masked with <code>#</code>, so that the patterns
+	 * can skip them as uroboroSQL does.
+	 *
+	 * @param sql rendered SQL
+	 * @param mask mask of the rendered SQL
+	 * @param pattern pattern to remove
+	 * @param keepGroup group kept at the start of the match, or 0
+	 */
+	private static void removeAll(final StringBuilder sql, final StringBuilder mask, final Pattern pattern,
+			final int keepGroup) {
+		var matcher = pattern.matcher(mask.toString());
+		List<int[]> ranges = new ArrayList<>();
+		while (matcher.find()) {
+			ranges.add(new int[] { keepGroup == 0 ? matcher.start() : matcher.end(keepGroup), matcher.end() });
+		}
+		for (var i = ranges.size() - 1; i >= 0; i--) {
+			var range = ranges.get(i);
+			sql.delete(range[0], range[1]);
+			mask.delete(range[0], range[1]);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> when an IF branch was taken
+	 */
+	private static boolean renderNodes(final List<Node> nodes, final Map<String, Object> params,
+			final ConditionEvaluator evaluator, final StringBuilder sql, final StringBuilder mask) {
+		var taken = false;
+		for (var node : nodes) {
+			if (node instanceof TextNode) {
+				sql.append(((TextNode) node).text);
+				mask.append(((TextNode) node).mask);
+			} else if (node instanceof IfNode) {
+				var ifNode = (IfNode) node;
+				List<Node> branch = null;
+				for (var i = 0; i < ifNode.conditions.size(); i++) {
+					if (evaluator.evaluate(ifNode.conditions.get(i), params)) {
+						branch = ifNode.branches.get(i);
+						break;
+					}
+				}
+				if (branch == null) {
+					branch = ifNode.elseBranch;
+				}
+				if (branch != null) {
+					renderNodes(branch, params, evaluator, sql, mask);
+					taken = true;
+				}
+			} else {
+				// BEGIN is dropped unless one of the IF nodes in it is taken
+				var begin = new StringBuilder();
+				var beginMask = new StringBuilder();
+				if (renderNodes(((BeginNode) node).children, params, evaluator, begin, beginMask)) {
+					sql.append(begin);
+					mask.append(beginMask);
+					taken = true;
+				}
+			}
+		}
+		return taken;
+	}
+
+	private interface Node {
+	}
+
+	private static final class TextNode implements Node {
+		private final String text;
+		private final String mask;
+
+		private TextNode(final String text, final String mask) {
+			this.text = text;
+			this.mask = mask;
+		}
+	}
+
+	private static final class IfNode implements Node {
+		private final List<String> conditions = new ArrayList<>();
+		private final List<List<Node>> branches = new ArrayList<>();
+		private List<Node> elseBranch;
+
+		private List<Node> addBranch(final String condition) {
+			List<Node> branch = new ArrayList<>();
+			conditions.add(condition);
+			branches.add(branch);
+			return branch;
+		}
+
+		private List<Node> elseBranch() {
+			elseBranch = new ArrayList<>();
+			return elseBranch;
+		}
+	}
+
+	private static final class BeginNode implements Node {
+		private final List<Node> children = new ArrayList<>();
+	}
+}
@@ -0,0 +1,318 @@
+package jp.co.future.uroborosql.sample.template;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.config.SqlConfig;
+import jp.co.future.uroborosql.fluent.SqlQuery;
+import jp.co.future.uroborosql.fluent.SqlUpdate;
+
+/**
+ * Cache of SQL files whose <code>/*IF*&#47;</code> and <code>/*BEGIN*&#47;</code> nodes are already resolved.
+ * <p>
+ * Each SQL file is parsed once into a {@link SqlTemplate}. The SQL rendered for a parameter Map is cached by the SQL
+ * name and the shape of the parameters referenced by the conditions, and is executed with
+ * <code>agent.queryWith()</code> / <code>agent.updateWith()</code>. Bind parameters, constants and
+ * <code>_SQL_ID_</code> are left in the rendered SQL and are processed by uroboroSQL as usual.
+ * <p>
+ * uroboroSQL still parses the rendered SQL on each execution, so the cache saves the evaluation of the
+ * <code>/*IF*&#47;</code> conditions and the removal of the nodes, not the parsing itself. Whether that is faster than
+ * <code>agent.query(sqlName)</code> depends on the SQL; compare <code>findOne</code> and
+ * <code>findOneTemplateCache</code> of SqlFileApiBenchmark.
+ * <p>
+ * SQL files having a condition whose result does not depend only on the shape of the parameters (comparison with a
+ * value, method calls other than <code>SF</code>, etc.) are executed with <code>agent.query(sqlName)</code> as is.
+ *
+ * <pre>
+ * try (var cache = new SqlTemplateCache(config).watch(Paths.get("src/main/resources/sql"))) {
+ * 	cache.query(agent, "employee/select_employee", params).collect();
+ * }
+ * </pre>
+ */
+public class SqlTemplateCache implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(SqlTemplateCache.class);
+
+	private static final String FILE_EXTENSION = ".sql";
+
+	private final SqlConfig config;
+	private final Map<String, SqlTemplate> templates = new ConcurrentHashMap<>();
+	private final Map<String, String> rendered;
+
+	private int maxSize = 256;
+	private ConditionEvaluator conditionEvaluator = new CompiledSpelConditionEvaluator();
+	private volatile Path root;
+	private volatile WatchService watchService;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder bypassCount = new LongAdder();
+
+	public SqlTemplateCache(final SqlConfig config) {
+		this.config = config;
+		this.rendered = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Set the max number of rendered SQL kept in the cache. default is 256.
+	 *
+	 * @param maxSize max number of rendered SQL
+	 * @return SqlTemplateCache
+	 */
+	public SqlTemplateCache setMaxSize(final int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be greater than 0.");
+		}
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * Set the evaluator of the conditions. default is {@link CompiledSpelConditionEvaluator}.
+	 *
+	 * @param conditionEvaluator condition evaluator
+	 * @return SqlTemplateCache
+	 */
+	public SqlTemplateCache setConditionEvaluator(final ConditionEvaluator conditionEvaluator) {
+		this.conditionEvaluator = conditionEvaluator;
+		invalidateAll();
+		return this;
+	}
+
+	/**
+	 * Read SQL files from the directory and invalidate the cache when a file under it is changed.
+	 *
+	 * @param root root directory of the SQL files (e.g. <code>src/main/resources/sql</code>)
+	 * @return SqlTemplateCache
+	 */
+	public SqlTemplateCache watch(final Path root) {
+		if (watchService != null) {
+			throw new IllegalStateException("Already watching " + this.root);
+		}
+		try {
+			var service = FileSystems.getDefault().newWatchService();
+			try (var dirs = Files.walk(root)) {
+				for (var dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+					register(service, dir);
+				}
+			}
+			this.root = root.toAbsolutePath().normalize();
+			this.watchService = service;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		invalidateAll();
+
+		var thread = new Thread(this::watchLoop, "sql-template-watcher");
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * Create SqlQuery of the SQL file.
+	 *
+	 * @param agent SqlAgent
+	 * @param sqlName SQL name
+	 * @param params bind parameters
+	 * @return SqlQuery
+	 */
+	public SqlQuery query(final SqlAgent agent, final String sqlName, final Map<String, Object> params) {
+		var sql = resolve(sqlName, params);
+		if (sql == null) {
+			return agent.query(sqlName).paramMap(params);
+		}
+		return agent.queryWith(sql).paramMap(params).sqlId(sqlName);
+	}
+
+	/**
+	 * Create SqlUpdate of the SQL file.
+	 *
+	 * @param agent SqlAgent
+	 * @param sqlName SQL name
+	 * @param params bind parameters
+	 * @return SqlUpdate
+	 */
+	public SqlUpdate update(final SqlAgent agent, final String sqlName, final Map<String, Object> params) {
+		var sql = resolve(sqlName, params);
+		if (sql == null) {
+			return agent.update(sqlName).paramMap(params);
+		}
+		return agent.updateWith(sql).paramMap(params).sqlId(sqlName);
+	}
+
+	/**
+	 * Remove the parsed and rendered SQL of the SQL name.
+	 *
+	 * @param sqlName SQL name
+	 */
+	public void invalidate(final String sqlName) {
+		templates.remove(sqlName);
+		var prefix = sqlName + '\0';
+		synchronized (rendered) {
+			rendered.keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Remove all parsed and rendered SQL.
+	 */
+	public void invalidateAll() {
+		templates.clear();
+		synchronized (rendered) {
+			rendered.clear();
+		}
+	}
+
+	/**
+	 * @return number of queries served by the cached SQL
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return number of queries that rendered the SQL
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return number of queries executed without the cache
+	 */
+	public long getBypassCount() {
+		return bypassCount.sum();
+	}
+
+	/**
+	 * @return number of rendered SQL in the cache
+	 */
+	public int size() {
+		synchronized (rendered) {
+			return rendered.size();
+		}
+	}
+
+	@Override
+	public void close() {
+		var service = watchService;
+		if (service != null) {
+			try {
+				service.close();
+			} catch (IOException ex) {
+				LOG.debug("Failed to close watch service.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Get the rendered SQL.
+	 *
+	 * @return rendered SQL. <code>null</code> when the SQL file can not be cached.
+	 */
+	private String resolve(final String sqlName, final Map<String, Object> params) {
+		var template = templates.computeIfAbsent(sqlName, name -> SqlTemplate.parse(load(name)));
+		if (!template.isCacheable()) {
+			bypassCount.increment();
+			return null;
+		}
+		var key = sqlName + '\0' + template.shapeOf(params);
+		synchronized (rendered) {
+			var sql = rendered.get(key);
+			if (sql != null) {
+				hitCount.increment();
+				return sql;
+			}
+		}
+		missCount.increment();
+		var sql = template.render(params, conditionEvaluator);
+		synchronized (rendered) {
+			// skip when the SQL file was invalidated while rendering
+			if (templates.get(sqlName) == template) {
+				rendered.put(key, sql);
+			}
+		}
+		return sql;
+	}
+
+	private String load(final String sqlName) {
+		var dir = root;
+		if (dir == null) {
+			var sql = config.getSqlResourceManager().getSql(sqlName);
+			if (sql == null) {
+				throw new IllegalArgumentException("SQL not found. sqlName=" + sqlName);
+			}
+			return sql;
+		}
+		try {
+			return Files.readString(dir.resolve(sqlName + FILE_EXTENSION), StandardCharsets.UTF_8);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private void watchLoop() {
+		var service = watchService;
+		try {
+			while (true) {
+				var key = service.take();
+				var dir = (Path) key.watchable();
+				for (var event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						invalidateAll();
+						continue;
+					}
+					var path = dir.resolve((Path) event.context());
+					if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+						register(service, path);
+					} else if (path.getFileName().toString().endsWith(FILE_EXTENSION)) {
+						var sqlName = toSqlName(path);
+						LOG.debug("SQL file changed. sqlName={}, kind={}", sqlName, event.kind());
+						invalidate(sqlName);
+					}
+				}
+				key.reset();
+			}
+		} catch (ClosedWatchServiceException ex) {
+			// closed
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (IOException ex) {
+			LOG.warn("Stop watching SQL files.", ex);
+		}
+	}
+
+	private String toSqlName(final Path path) {
+		var relative = root.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+		return relative.substring(0, relative.length() - FILE_EXTENSION.length());
+	}
+
+	private static void register(final WatchService service, final Path dir) throws IOException {
+		WatchEvent.Kind<?>[] kinds = { StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE };
+		dir.toAbsolutePath().normalize().register(service, kinds);
+	}
+}
@@ -0,0 +1,160 @@
+package jp.co.future.uroborosql.sample.pool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PooledDataSourceTest {
+	private String url;
+	private PooledDataSource dataSource;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		// a database per test, kept open while the pool has no connection.
+		// the pool is configured by each test before its first borrow.
+		url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+		try (var conn = DriverManager.getConnection(url, "sa", ""); var stmt = conn.createStatement()) {
+			stmt.execute("create table test (id int primary key)");
+		}
+		dataSource = new PooledDataSource(url, "sa", "").setMinIdle(0);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		dataSource.close();
+		try (var conn = DriverManager.getConnection(url, "sa", ""); var stmt = conn.createStatement()) {
+			stmt.execute("shutdown");
+		}
+	}
+
+	@Test
+	public void testBorrowBlocksAtMaxTotal() throws Exception {
+		dataSource.setMaxTotal(2).setMaxWait(Duration.ofMillis(200));
+		try (var conn1 = dataSource.getConnection(); var conn2 = dataSource.getConnection()) {
+			var start = System.nanoTime();
+			assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+			assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(200L));
+			assertThat(dataSource.getMetrics().getTimeouts(), is(1L));
+
+			// a waiting borrower gets the connection returned by another one
+			dataSource.setMaxWait(Duration.ofSeconds(10));
+			var waiting = CompletableFuture.supplyAsync(() -> {
+				try (var conn3 = dataSource.getConnection()) {
+					return conn3.isValid(1);
+				} catch (SQLException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+			Thread.sleep(100L);
+			assertThat(waiting.isDone(), is(false));
+			conn1.close();
+			assertThat(waiting.get(5, TimeUnit.SECONDS), is(true));
+		}
+		assertThat(dataSource.getMetrics().getActive(), is(0));
+	}
+
+	@Test
+	public void testBrokenConnectionIsEvictedOnBorrow() throws Exception {
+		int sessionId;
+		try (var conn = dataSource.getConnection(); var stmt = conn.createStatement();
+				var rs = stmt.executeQuery("select session_id()")) {
+			rs.next();
+			sessionId = rs.getInt(1);
+		}
+		assertThat(dataSource.getMetrics().getIdle(), is(1));
+
+		// break the idle connection from another session
+		try (var conn = DriverManager.getConnection(url, "sa", ""); var stmt = conn.createStatement()) {
+			stmt.execute("call abort_session(" + sessionId + ")");
+		}
+
+		var created = dataSource.getMetrics().getCreated();
+		try (var conn = dataSource.getConnection(); var stmt = conn.createStatement();
+				var rs = stmt.executeQuery("select count(*) from test")) {
+			assertThat(rs.next(), is(true));
+		}
+		var metrics = dataSource.getMetrics();
+		assertThat(metrics.getInvalidated(), is(1L));
+		assertThat(metrics.getCreated(), is(created + 1));
+	}
+
+	@Test
+	public void testStateIsResetOnReturn() throws Exception {
+		dataSource.setMaxIdle(1);
+		try (var conn = dataSource.getConnection(); var stmt = conn.createStatement()) {
+			conn.setAutoCommit(false);
+			stmt.executeUpdate("insert into test values (1)");
+			conn.setReadOnly(true);
+			// returned without commit
+		}
+
+		try (var conn = dataSource.getConnection(); var stmt = conn.createStatement();
+				var rs = stmt.executeQuery("select count(*) from test")) {
+			assertThat(dataSource.getMetrics().getCreated(), is(1L));
+			assertThat(conn.getAutoCommit(), is(true));
+			assertThat(conn.isReadOnly(), is(false));
+			rs.next();
+			assertThat(rs.getInt(1), is(0));
+		}
+	}
+
+	@Test
+	public void testReturnedConnectionIsClosedForTheBorrower() throws Exception {
+		var conn = dataSource.getConnection();
+		conn.close();
+		assertThat(conn.isClosed(), is(true));
+		assertThrows(SQLException.class, conn::createStatement);
+	}
+
+	@Test
+	public void testMaintenanceKeepsMinIdle() throws Exception {
+		dataSource.setMinIdle(3).setMaxIdle(3);
+		// the background task starts with the first borrow
+		dataSource.getConnection().close();
+		await(() -> dataSource.getMetrics().getIdle() == 3);
+
+		// the borrowed connections are replaced in the background
+		try (var conn1 = dataSource.getConnection(); var conn2 = dataSource.getConnection()) {
+			await(() -> dataSource.getMetrics().getIdle() == 3);
+			assertThat(dataSource.getMetrics().getActive(), is(2));
+		}
+	}
+
+	@Test
+	public void testLeakedConnectionIsReported() throws Exception {
+		dataSource.setLeakDetectionThreshold(Duration.ofMillis(100));
+		try (var conn = dataSource.getConnection()) {
+			await(() -> dataSource.getMetrics().getLeaks() == 1L);
+		}
+		// a leak is reported once
+		Thread.sleep(1500L);
+		assertThat(dataSource.getMetrics().getLeaks(), is(1L));
+	}
+
+	/**
+	 * Wait for the background task of the pool, which runs every second.
+	 */
+	private static void await(final BooleanSupplier condition) throws InterruptedException {
+		var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("Condition not met within 10 seconds.");
+			}
+			Thread.sleep(50L);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package jp.co.future.uroborosql.sample.routing;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jp.co.future.uroborosql.SqlAgent;
+import jp.co.future.uroborosql.UroboroSQL;
+import jp.co.future.uroborosql.sample.entity.Department;
+
+/**
+ * Each database holds a department named after it, so a read tells which database it reached.
+ */
+public class ReadWriteSqlConfigTest {
+	private static final String[] DATABASES = { "primary", "replica1", "replica2" };
+
+	private final Map<String, String> urls = new HashMap<>();
+	private ReadWriteSqlConfig routing;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		var suffix = UUID.randomUUID();
+		for (var name : DATABASES) {
+			var url = "jdbc:h2:mem:" + name + "-" + suffix + ";DB_CLOSE_DELAY=-1";
+			try (var conn = DriverManager.getConnection(url, "sa", ""); var stmt = conn.createStatement()) {
+				stmt.execute("create table department (dept_no bigint generated by default as identity primary key,"
+						+ " dept_name varchar(50) not null, lock_version bigint default 0 not null)");
+				stmt.execute("insert into department (dept_name) values ('" + name + "')");
+			}
+			urls.put(name, url);
+		}
+		routing = new ReadWriteSqlConfig(UroboroSQL.builder(urls.get("primary"), "sa", "").build())
+				.addReplica(UroboroSQL.builder(urls.get("replica1"), "sa", "").build())
+				.addReplica(UroboroSQL.builder(urls.get("replica2"), "sa", "").build())
+				.setStickyWindow(Duration.ZERO);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		for (var url : urls.values()) {
+			try (var conn = DriverManager.getConnection(url, "sa", ""); var stmt = conn.createStatement()) {
+				stmt.execute("shutdown");
+			}
+		}
+	}
+
+	@Test
+	public void testReadsGoToReplicaRoundRobin() throws Exception {
+		try (var agent1 = routing.agent(); var agent2 = routing.agent()) {
+			assertThat(readFrom(agent1), is("replica1"));
+			assertThat(readFrom(agent2), is("replica2"));
+			// a SqlAgent keeps its replica
+			assertThat(agent1.query(Department.class).first().get().getDeptName(), is("replica1"));
+			assertThat(agent2.<Department> find(Department.class, 1L).get().getDeptName(), is("replica2"));
+		}
+		assertThat(routing.getReplicaReadCounts(), contains(2L, 2L));
+		assertThat(routing.getPrimaryReadCount(), is(0L));
+	}
+
+	@Test
+	public void testLeastLoaded() throws Exception {
+		routing.setBalancing(ReadWriteSqlConfig.Balancing.LEAST_LOADED);
+		try (var agent1 = routing.agent()) {
+			var first = readFrom(agent1);
+			try (var agent2 = routing.agent(); var agent3 = routing.agent()) {
+				// agent2 goes to the other replica, agent3 to either of them
+				assertThat(readFrom(agent2).equals(first), is(false));
+				readFrom(agent3);
+			}
+		}
+		assertThat(routing.getReplicaReadCounts().stream().mapToLong(Long::longValue).sum(), is(3L));
+	}
+
+	@Test
+	public void testFindDoesNotMoveReadsToPrimary() throws Exception {
+		try (var agent = routing.agent()) {
+			assertThat(agent.<Department> find(Department.class, 1L).get().getDeptName(), is("replica1"));
+			assertThat(readFrom(agent), is("replica1"));
+			agent.getSqlConfig();
+			assertThat(readFrom(agent), is("replica1"));
+		}
+		assertThat(routing.getPrimaryReadCount(), is(0L));
+	}
+
+	@Test
+	public void testWritesGoToPrimary() throws Exception {
+		try (var agent = routing.agent()) {
+			assertThat(readFrom(agent), is("replica1"));
+			var department = new Department();
+			department.setDeptName("sales");
+			agent.insert(department);
+			agent.updateWith("update department set dept_name = 'updated' where dept_no = 1").count();
+			// read your writes
+			assertThat(readFrom(agent), is("updated"));
+		}
+		assertThat(count("primary"), is(2));
+		assertThat(count("replica1"), is(1));
+		assertThat(count("replica2"), is(1));
+		assertThat(routing.getPrimaryReadCount(), is(1L));
+	}
+
+	@Test
+	public void testTransactionGoesToPrimary() throws Exception {
+		try (var agent = routing.agent()) {
+			assertThat(agent.required(() -> {
+				var name = readFrom(agent);
+				// controlling the transaction is not a write
+				agent.setRollbackOnly();
+				return name;
+			}), is("primary"));
+			assertThat(readFrom(agent), is("replica1"));
+		}
+	}
+
+	@Test
+	public void testStickyWindow() throws Exception {
+		routing.setStickyWindow(Duration.ofMinutes(1));
+		try (var agent = routing.agent()) {
+			agent.updateWith("update department set dept_name = 'primary' where dept_no = 1").count();
+		}
+		try (var agent = routing.agent()) {
+			// the thread that wrote reads from the primary during the window
+			assertThat(readFrom(agent), is("primary"));
+		}
+		var other = CompletableFuture.supplyAsync(() -> {
+			try (var agent = routing.agent()) {
+				return readFrom(agent);
+			}
+		});
+		assertThat(other.get().startsWith("replica"), is(true));
+
+		routing.setStickyWindow(Duration.ZERO);
+		try (var agent = routing.agent()) {
+			assertThat(readFrom(agent).startsWith("replica"), is(true));
+		}
+	}
+
+	private static String readFrom(final SqlAgent agent) {
+		return agent.queryWith("select * from department where dept_no = 1").collect(Department.class).get(0)
+				.getDeptName();
+	}
+
+	private int count(final String database) throws SQLException {
+		try (var conn = DriverManager.getConnection(urls.get(database), "sa", "");
+				var stmt = conn.createStatement();
+				var rs = stmt.executeQuery("select count(*) from department")) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package jp.co.future.uroborosql.sample.template;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlTemplateTest {
+	private final ConditionEvaluator evaluator = new SpelConditionEvaluator();
+
+	@Test
+	public void testFirstCommaAfterSetWithLastName() {
+		var sql = render("employee/update_employee", Map.of("empNo", 1, "lastName", "Smith"));
+		assertThat(sql, containsString("set\n\tlast_name\t\t=\t/*lastName*/''"));
+		assertThat(sql, containsString("\n,\tlock_version"));
+		assertThat(sql, not(containsString("first_name")));
+	}
+
+	@Test
+	public void testFirstCommaAfterSetWithBirthDate() {
+		var sql = render("employee/update_employee", Map.of("empNo", 1, "birthDate", LocalDate.of(1971, 12, 1)));
+		assertThat(sql, containsString("set\n\tbirth_date\t\t=\t/*birthDate*/''"));
+		assertThat(sql, containsString("\n,\tlock_version"));
+		assertThat(sql, not(containsString("last_name")));
+	}
+
+	@Test
+	public void testFirstCommaAfterSetWithoutItems() {
+		var sql = render("employee/update_employee", Map.of("empNo", 1));
+		assertThat(sql, containsString("set\n\tlock_version\t=\tlock_version\t+\t1"));
+	}
+
+	@Test
+	public void testFirstCommaKeptAfterFirstItem() {
+		var sql = render("employee/update_employee", Map.of("empNo", 1, "firstName", "Bob", "lastName", "Smith"));
+		assertThat(sql, containsString("set\n\tfirst_name"));
+		assertThat(sql, containsString("\n,\tlast_name"));
+	}
+
+	@Test
+	public void testLiteralsAndCommentsAreKept() {
+		var template = SqlTemplate.parse("select /* first */ ',', 'where and'\n"
+				+ "from t\n"
+				+ "where\n"
+				+ "/*BEGIN*/\n"
+				+ "/*IF a != null */\n"
+				+ "and a = /*a*/1\n"
+				+ "/*END*/\n"
+				+ "/*IF b != null */\n"
+				+ "and b = /*b*/1 -- and\n"
+				+ "/*END*/\n"
+				+ "/*END*/\n"
+				+ "order by /* key */ , c");
+		var sql = template.render(Map.of("b", 1), evaluator);
+		assertThat(sql, is("select /* first */ ',', 'where and'\n"
+				+ "from t\n"
+				+ "where\n"
+				+ " b = /*b*/1 -- and\n"
+				+ "order by /* key */  c"));
+	}
+
+	private String render(final String sqlName, final Map<String, Object> params) {
+		return SqlTemplate.parse(readSql(sqlName)).render(params, evaluator);
+	}
+
+	private static String readSql(final String sqlName) {
+		try (var in = SqlTemplateTest.class.getResourceAsStream("/sql/" + sqlName + ".sql")) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+}